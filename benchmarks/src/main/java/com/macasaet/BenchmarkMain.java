@@ -0,0 +1,29 @@
+package com.macasaet;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the allocation profiler enabled and writes the results as JSON so that throughput and
+ * allocation rate can be compared across commits. Any other standard JMH command line option (e.g. a benchmark filter,
+ * or <code>-p day=12</code>) is honoured.
+ */
+public class BenchmarkMain {
+
+    public static void main(final String... arguments) throws CommandLineOptionException, RunnerException {
+        final var commandLine = new CommandLineOptions(arguments);
+        final var options = new OptionsBuilder()
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result("jmh-result.json")
+                .parent(commandLine)
+                .build();
+        new Runner(options).run();
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,96 @@
+package com.macasaet;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures each day's parsing phase and each part's compute kernel separately. Kernels receive a model that was
+ * parsed once per trial, so their scores exclude parsing entirely.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PuzzleBenchmark {
+
+    @Param({"1", "2", "3", "4", "5", "6", "7", "8", "9", "10", "11", "12", "13", "14", "15", "18", "20", "21", "23"})
+    public int day;
+
+    /**
+     * A directory of inputs named "day-NN.txt", one directory per input size to compare. Blank means the inputs on
+     * the classpath.
+     */
+    @Param({""})
+    public String inputDirectory;
+
+    /**
+     * When positive, a synthetic input this many times the size of a real one is generated for the trial instead
+     * (see {@link InputGenerator}).
+     */
+    @Param({"0"})
+    public int scale;
+
+    private Puzzle<Object> puzzle;
+    private MappedInput input;
+    private Object model;
+    private Path generated;
+
+    @SuppressWarnings("unchecked")
+    @Setup
+    public void setUp() throws IOException {
+        puzzle = (Puzzle<Object>) Puzzle.forDay(day);
+        final var fileName = Puzzle.inputName(day);
+        if (scale > 0) {
+            generated = InputGenerator.write(day, InputGenerator.forDay(day, scale), 0L,
+                    Files.createTempDirectory("advent-of-code-"));
+            input = MappedInput.open(generated);
+        } else {
+            input = inputDirectory.isBlank()
+                    ? MappedInput.open(fileName)
+                    : MappedInput.open(Path.of(inputDirectory, fileName));
+        }
+        model = puzzle.parse(input);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        if (generated != null) {
+            Files.deleteIfExists(generated);
+            Files.deleteIfExists(generated.getParent());
+            generated = null;
+        }
+    }
+
+    @Benchmark
+    public Object parse() {
+        return puzzle.parse(input);
+    }
+
+    @Benchmark
+    public Object part1() {
+        return puzzle.solvePart1(model);
+    }
+
+    @Benchmark
+    public Object part2() {
+        return puzzle.solvePart2(model);
+    }
+
+}
\ No newline at end of file
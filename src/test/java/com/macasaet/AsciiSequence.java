@@ -0,0 +1,101 @@
+package com.macasaet;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+/**
+ * A zero-copy view of a range of ASCII bytes, usually one line of a {@link MappedInput}. Characters are decoded
+ * lazily, one byte at a time, so the underlying bytes are never copied unless {@link #toString()} is called.
+ */
+public final class AsciiSequence implements CharSequence {
+
+    private final ByteBuffer buffer;
+    private final int offset;
+    private final int length;
+
+    /**
+     * @param buffer the bytes backing this sequence, accessed only via absolute reads
+     * @param offset the index in <code>buffer</code> of the first character (inclusive)
+     * @param length the number of characters in this sequence
+     */
+    public AsciiSequence(final ByteBuffer buffer, final int offset, final int length) {
+        Objects.requireNonNull(buffer);
+        Objects.checkFromIndexSize(offset, length, buffer.limit());
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public char charAt(final int index) {
+        Objects.checkIndex(index, length);
+        return (char) (buffer.get(offset + index) & 0xFF);
+    }
+
+    public AsciiSequence subSequence(final int start, final int end) {
+        Objects.checkFromToIndex(start, end, length);
+        return new AsciiSequence(buffer, offset + start, end - start);
+    }
+
+    /**
+     * @param c the character to find
+     * @param fromIndex the index from which to start searching (inclusive)
+     * @return the index of the first occurrence of <code>c</code> at or after <code>fromIndex</code> or -1 if there
+     * is none
+     */
+    public int indexOf(final char c, final int fromIndex) {
+        for (int i = Math.max(fromIndex, 0); i < length; i++) {
+            if (buffer.get(offset + i) == (byte) c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public int indexOf(final char c) {
+        return indexOf(c, 0);
+    }
+
+    /**
+     * @return true if this sequence is empty or contains only bytes that {@link MappedInput#isBlank(byte)} accepts
+     */
+    public boolean isBlank() {
+        for (int i = length; --i >= 0; ) {
+            if (!MappedInput.isBlank(buffer.get(offset + i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parse a signed decimal integer directly from the underlying bytes.
+     *
+     * @param beginIndex the index of the first digit or sign (inclusive)
+     * @param endIndex the index after the last digit (exclusive)
+     * @return the parsed value
+     * @throws NumberFormatException if the range is not a valid decimal integer
+     */
+    public int parseInt(final int beginIndex, final int endIndex) {
+        return MappedInput.parseInt(buffer, offset + beginIndex, offset + endIndex);
+    }
+
+    /**
+     * @return this entire sequence parsed as a signed decimal integer
+     * @throws NumberFormatException if this is not a valid decimal integer
+     */
+    public int parseInt() {
+        return parseInt(0, length);
+    }
+
+    public String toString() {
+        final var bytes = new byte[length];
+        buffer.get(offset, bytes);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,159 @@
+package com.macasaet;
+
+/**
+ * A set of cells in an unbounded two-dimensional grid, stored as one bit per cell in a dense rectangle. The rectangle
+ * grows automatically to hold every cell that is set. Cells outside of it are clear.
+ *
+ * <p>Each row is a whole number of {@code long} words and the first allocated column is always a multiple of 64, so
+ * growing the grid only ever copies whole words.</p>
+ */
+public class BitGrid {
+
+    private static final int MIN_ROW_MARGIN = 8;
+
+    private int minRow;
+    private int rows;
+    private int minColumn;
+    private int rowWords;
+    private long[] words;
+
+    public BitGrid() {
+        this.words = new long[0];
+    }
+
+    /**
+     * Create a grid with room for the given cells before it needs to grow.
+     */
+    public BitGrid(final int minRow, final int minColumn, final int rows, final int columns) {
+        this();
+        if (rows > 0 && columns > 0) {
+            resize(minRow, (long) minRow + rows - 1, minColumn, (long) minColumn + columns - 1);
+        }
+    }
+
+    public BitGrid(final BitGrid other) {
+        this.minRow = other.minRow;
+        this.rows = other.rows;
+        this.minColumn = other.minColumn;
+        this.rowWords = other.rowWords;
+        this.words = other.words.clone();
+    }
+
+    public boolean get(final int row, final int column) {
+        final var r = (long) row - minRow;
+        final var c = (long) column - minColumn;
+        if (r < 0 || r >= rows || c < 0 || c >= (long) rowWords << 6) {
+            return false;
+        }
+        return (words[(int) r * rowWords + (int) (c >>> 6)] & (1L << c)) != 0;
+    }
+
+    /**
+     * @return true if the cell was previously clear
+     */
+    public boolean set(final int row, final int column) {
+        long r = (long) row - minRow;
+        long c = (long) column - minColumn;
+        if (r < 0 || r >= rows || c < 0 || c >= (long) rowWords << 6) {
+            grow(row, column);
+            r = (long) row - minRow;
+            c = (long) column - minColumn;
+        }
+        final var index = (int) r * rowWords + (int) (c >>> 6);
+        final var bit = 1L << c;
+        final var previous = words[index];
+        words[index] = previous | bit;
+        return (previous & bit) == 0;
+    }
+
+    /**
+     * @return true if the cell was previously set
+     */
+    public boolean clear(final int row, final int column) {
+        final var r = (long) row - minRow;
+        final var c = (long) column - minColumn;
+        if (r < 0 || r >= rows || c < 0 || c >= (long) rowWords << 6) {
+            return false;
+        }
+        final var index = (int) r * rowWords + (int) (c >>> 6);
+        final var bit = 1L << c;
+        final var previous = words[index];
+        words[index] = previous & ~bit;
+        return (previous & bit) != 0;
+    }
+
+    /**
+     * @return the number of cells that are set
+     */
+    public long cardinality() {
+        long result = 0;
+        for (final var word : words) {
+            result += Long.bitCount(word);
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of cells in the row that are set
+     */
+    public int cardinality(final int row) {
+        final var r = (long) row - minRow;
+        if (r < 0 || r >= rows) {
+            return 0;
+        }
+        int result = 0;
+        for (int i = (int) r * rowWords, end = i + rowWords; i < end; i++) {
+            result += Long.bitCount(words[i]);
+        }
+        return result;
+    }
+
+    protected void grow(final int row, final int column) {
+        if (rows == 0) {
+            resize(row, row, (long) column - 64, (long) column + 64);
+            return;
+        }
+        long newMinRow = minRow;
+        long newMaxRow = (long) minRow + rows - 1;
+        long newMinColumn = minColumn;
+        long newMaxColumn = (long) minColumn + ((long) rowWords << 6) - 1;
+        // grow geometrically so that a series of cells at the edge costs amortised constant time
+        final var rowMargin = Math.max(MIN_ROW_MARGIN, rows / 2);
+        final var columnMargin = Math.max(64, (long) rowWords << 5);
+        if (row < newMinRow) {
+            newMinRow = (long) row - rowMargin;
+        } else if (row > newMaxRow) {
+            newMaxRow = (long) row + rowMargin;
+        }
+        if (column < newMinColumn) {
+            newMinColumn = (long) column - columnMargin;
+        } else if (column > newMaxColumn) {
+            newMaxColumn = (long) column + columnMargin;
+        }
+        resize(newMinRow, newMaxRow, newMinColumn, newMaxColumn);
+    }
+
+    protected void resize(long newMinRow, long newMaxRow, long newMinColumn, long newMaxColumn) {
+        newMinRow = Math.max(newMinRow, Integer.MIN_VALUE);
+        newMaxRow = Math.min(newMaxRow, Integer.MAX_VALUE);
+        newMinColumn = Math.max(Math.floorDiv(newMinColumn, 64) * 64, Integer.MIN_VALUE);
+        newMaxColumn = Math.min(newMaxColumn, Integer.MAX_VALUE);
+        final var newRows = newMaxRow - newMinRow + 1;
+        final var newRowWords = Math.floorDiv(newMaxColumn - newMinColumn, 64) + 1;
+        if (newRows * newRowWords > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("Grid too large: " + newRows + " rows of " + newRowWords + " words");
+        }
+        final var grown = new long[(int) (newRows * newRowWords)];
+        final var rowOffset = (int) (minRow - newMinRow);
+        final var wordOffset = (int) ((minColumn - newMinColumn) >> 6);
+        for (int r = 0; r < rows; r++) {
+            System.arraycopy(words, r * rowWords, grown, (r + rowOffset) * (int) newRowWords + wordOffset, rowWords);
+        }
+        this.minRow = (int) newMinRow;
+        this.rows = (int) newRows;
+        this.minColumn = (int) newMinColumn;
+        this.rowWords = (int) newRowWords;
+        this.words = grown;
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,149 @@
+package com.macasaet;
+
+/**
+ * A set of cells in an unbounded three-dimensional grid, stored as one bit per cell in a dense box. The box grows
+ * automatically to hold every cell that is set. Cells outside of it are clear.
+ *
+ * <p>Cells are laid out with z varying fastest. The first allocated z is always a multiple of 64 so growing the grid
+ * only ever copies whole words.</p>
+ */
+public class BitGrid3D {
+
+    private static final int MIN_MARGIN = 4;
+
+    private int minX;
+    private int sizeX;
+    private int minY;
+    private int sizeY;
+    private int minZ;
+    private int zWords;
+    private long[] words;
+
+    public BitGrid3D() {
+        this.words = new long[0];
+    }
+
+    public BitGrid3D(final BitGrid3D other) {
+        this.minX = other.minX;
+        this.sizeX = other.sizeX;
+        this.minY = other.minY;
+        this.sizeY = other.sizeY;
+        this.minZ = other.minZ;
+        this.zWords = other.zWords;
+        this.words = other.words.clone();
+    }
+
+    public boolean get(final int x, final int y, final int z) {
+        final var index = index(x, y, z);
+        return index >= 0 && (words[index] & (1L << (z - minZ))) != 0;
+    }
+
+    /**
+     * @return true if the cell was previously clear
+     */
+    public boolean set(final int x, final int y, final int z) {
+        var index = index(x, y, z);
+        if (index < 0) {
+            grow(x, y, z);
+            index = index(x, y, z);
+        }
+        final var bit = 1L << (z - minZ);
+        final var previous = words[index];
+        words[index] = previous | bit;
+        return (previous & bit) == 0;
+    }
+
+    /**
+     * @return true if the cell was previously set
+     */
+    public boolean clear(final int x, final int y, final int z) {
+        final var index = index(x, y, z);
+        if (index < 0) {
+            return false;
+        }
+        final var bit = 1L << (z - minZ);
+        final var previous = words[index];
+        words[index] = previous & ~bit;
+        return (previous & bit) != 0;
+    }
+
+    /**
+     * @return the number of cells that are set
+     */
+    public long cardinality() {
+        long result = 0;
+        for (final var word : words) {
+            result += Long.bitCount(word);
+        }
+        return result;
+    }
+
+    /**
+     * @return the index of the word holding the cell or -1 if the cell is outside of the allocated box
+     */
+    protected int index(final int x, final int y, final int z) {
+        final var i = (long) x - minX;
+        final var j = (long) y - minY;
+        final var k = (long) z - minZ;
+        if (i < 0 || i >= sizeX || j < 0 || j >= sizeY || k < 0 || k >= (long) zWords << 6) {
+            return -1;
+        }
+        return ((int) i * sizeY + (int) j) * zWords + (int) (k >>> 6);
+    }
+
+    protected void grow(final int x, final int y, final int z) {
+        if (sizeX == 0) {
+            resize((long) x - MIN_MARGIN, (long) x + MIN_MARGIN,
+                    (long) y - MIN_MARGIN, (long) y + MIN_MARGIN,
+                    z - 32L, z + 32L);
+            return;
+        }
+        final var xMargin = Math.max(MIN_MARGIN, sizeX / 2);
+        final var yMargin = Math.max(MIN_MARGIN, sizeY / 2);
+        final var zMargin = Math.max(64L, (long) zWords << 5);
+        final var maxX = (long) minX + sizeX - 1;
+        final var maxY = (long) minY + sizeY - 1;
+        final var maxZ = (long) minZ + ((long) zWords << 6) - 1;
+        resize(x < minX ? (long) x - xMargin : minX,
+                x > maxX ? (long) x + xMargin : maxX,
+                y < minY ? (long) y - yMargin : minY,
+                y > maxY ? (long) y + yMargin : maxY,
+                z < minZ ? z - zMargin : minZ,
+                z > maxZ ? z + zMargin : maxZ);
+    }
+
+    protected void resize(long newMinX, long newMaxX, long newMinY, long newMaxY, long newMinZ, long newMaxZ) {
+        newMinX = Math.max(newMinX, Integer.MIN_VALUE);
+        newMaxX = Math.min(newMaxX, Integer.MAX_VALUE);
+        newMinY = Math.max(newMinY, Integer.MIN_VALUE);
+        newMaxY = Math.min(newMaxY, Integer.MAX_VALUE);
+        newMinZ = Math.max(Math.floorDiv(newMinZ, 64) * 64, Integer.MIN_VALUE);
+        newMaxZ = Math.min(newMaxZ, Integer.MAX_VALUE);
+        final var newSizeX = newMaxX - newMinX + 1;
+        final var newSizeY = newMaxY - newMinY + 1;
+        final var newZWords = Math.floorDiv(newMaxZ - newMinZ, 64) + 1;
+        final var length = newSizeX * newSizeY * newZWords;
+        if (length > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("Grid too large: " + newSizeX + "x" + newSizeY + "x" + newZWords * 64);
+        }
+        final var grown = new long[(int) length];
+        final var xOffset = (int) (minX - newMinX);
+        final var yOffset = (int) (minY - newMinY);
+        final var wordOffset = (int) ((minZ - newMinZ) >> 6);
+        for (int i = 0; i < sizeX; i++) {
+            for (int j = 0; j < sizeY; j++) {
+                System.arraycopy(words, (i * sizeY + j) * zWords,
+                        grown, (int) (((i + xOffset) * newSizeY + j + yOffset) * newZWords) + wordOffset,
+                        zWords);
+            }
+        }
+        this.minX = (int) newMinX;
+        this.sizeX = (int) newSizeX;
+        this.minY = (int) newMinY;
+        this.sizeY = (int) newSizeY;
+        this.minZ = (int) newMinZ;
+        this.zWords = (int) newZWords;
+        this.words = grown;
+    }
+
+}
\ No newline at end of file
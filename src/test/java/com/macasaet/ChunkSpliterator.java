@@ -0,0 +1,99 @@
+package com.macasaet;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * A {@link Spliterator} that groups consecutive elements of another into fixed-size chunks, such as three rucksacks
+ * per group of Elves. Chunks are produced as the source is advanced, so only one chunk is held at a time.
+ *
+ * <p>Every chunk must be complete: if the source ends part way through a chunk, advancing fails with an
+ * {@link IllegalStateException} rather than dropping or truncating the final chunk.</p>
+ *
+ * <p>If the source is {@link #SUBSIZED}, this can be split for a parallel stream. The source's split point will
+ * rarely fall on a chunk boundary, so the prefix borrows the elements it needs to finish its last chunk from the
+ * start of the remainder. No chunk is ever divided between two spliterators.</p>
+ *
+ * @param <T> the type of element being grouped
+ */
+public class ChunkSpliterator<T> implements Spliterator<List<T>> {
+
+    private final Spliterator<T> source;
+    private final int size;
+    /**
+     * elements that follow those of the source, borrowed from the spliterator this was split from
+     */
+    private final ArrayDeque<T> tail;
+
+    /**
+     * @param source the elements to group
+     * @param size   the number of elements in each chunk
+     */
+    public ChunkSpliterator(final Spliterator<T> source, final int size) {
+        this(source, size, new ArrayDeque<>());
+    }
+
+    protected ChunkSpliterator(final Spliterator<T> source, final int size, final ArrayDeque<T> tail) {
+        Objects.requireNonNull(source);
+        if (size < 1) {
+            throw new IllegalArgumentException("Invalid chunk size: " + size);
+        }
+        this.source = source;
+        this.size = size;
+        this.tail = tail;
+    }
+
+    public boolean tryAdvance(final Consumer<? super List<T>> action) {
+        final var chunk = new ArrayList<T>(size);
+        while (chunk.size() < size && source.tryAdvance(chunk::add)) ;
+        while (chunk.size() < size && !tail.isEmpty()) {
+            chunk.add(tail.remove());
+        }
+        if (chunk.isEmpty()) {
+            return false;
+        }
+        if (chunk.size() < size) {
+            throw new IllegalStateException("Incomplete chunk, expected " + size + " elements but found "
+                    + chunk.size());
+        }
+        action.accept(Collections.unmodifiableList(chunk));
+        return true;
+    }
+
+    public Spliterator<List<T>> trySplit() {
+        if (!source.hasCharacteristics(SUBSIZED)) {
+            return null;
+        }
+        final var prefix = source.trySplit();
+        if (prefix == null) {
+            return null;
+        }
+        final var borrowed = new ArrayDeque<T>(size);
+        final var remainder = prefix.getExactSizeIfKnown() % size;
+        for (long i = remainder == 0 ? 0 : size - remainder; --i >= 0; ) {
+            if (!source.tryAdvance(borrowed::add)) {
+                if (tail.isEmpty()) {
+                    // the final chunk is incomplete, which the prefix will report when it reaches it
+                    break;
+                }
+                borrowed.add(tail.remove());
+            }
+        }
+        return new ChunkSpliterator<>(prefix, size, borrowed);
+    }
+
+    public long estimateSize() {
+        final var elements = source.estimateSize() + tail.size();
+        return elements == Long.MAX_VALUE ? Long.MAX_VALUE : (elements + size - 1) / size;
+    }
+
+    public int characteristics() {
+        return source.characteristics() & (ORDERED | SIZED | SUBSIZED | IMMUTABLE | CONCURRENT) | NONNULL;
+    }
+
+}
\ No newline at end of file
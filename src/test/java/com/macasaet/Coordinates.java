@@ -0,0 +1,113 @@
+package com.macasaet;
+
+/**
+ * Grid coordinates packed into a single {@code long} so that they can be stored in primitive collections such as
+ * {@link LongHashSet} without allocating an object per cell.
+ *
+ * <p>Two-dimensional coordinates use 32 bits per component, so any pair of {@code int}s can be packed.
+ * Three-dimensional coordinates use 21 bits per component, so each component must be between {@link #MIN_3D} and
+ * {@link #MAX_3D}.</p>
+ *
+ * <p>Neighbours are visited by index rather than through a collection so that iterating over them allocates
+ * nothing:</p>
+ * <pre>
+ * for (int i = 0; i &lt; Coordinates.ORTHOGONAL; i++) {
+ *     final long neighbour = Coordinates.orthogonalNeighbour(coordinate, i);
+ *     ...
+ * }
+ * </pre>
+ */
+public final class Coordinates {
+
+    /**
+     * The number of cells that share an edge with a cell in two dimensions
+     */
+    public static final int ORTHOGONAL = 4;
+    /**
+     * The number of cells that share an edge or a corner with a cell in two dimensions
+     */
+    public static final int ADJACENT = 8;
+    /**
+     * The number of cells that share a face with a cell in three dimensions
+     */
+    public static final int FACES = 6;
+
+    public static final int MIN_3D = -(1 << 20);
+    public static final int MAX_3D = (1 << 20) - 1;
+
+    private static final int[] ORTHOGONAL_X = {-1, 1, 0, 0};
+    private static final int[] ORTHOGONAL_Y = {0, 0, -1, 1};
+    private static final int[] ADJACENT_X = {-1, -1, -1, 0, 0, 1, 1, 1};
+    private static final int[] ADJACENT_Y = {-1, 0, 1, -1, 1, -1, 0, 1};
+    private static final int[] FACE_X = {-1, 1, 0, 0, 0, 0};
+    private static final int[] FACE_Y = {0, 0, -1, 1, 0, 0};
+    private static final int[] FACE_Z = {0, 0, 0, 0, -1, 1};
+    private static final long MASK_3D = (1L << 21) - 1;
+
+    private Coordinates() {
+    }
+
+    public static long pack(final int x, final int y) {
+        return ((long) x << 32) | (y & 0xFFFF_FFFFL);
+    }
+
+    public static int x(final long coordinate) {
+        return (int) (coordinate >> 32);
+    }
+
+    public static int y(final long coordinate) {
+        return (int) coordinate;
+    }
+
+    public static long translate(final long coordinate, final int xOffset, final int yOffset) {
+        return pack(x(coordinate) + xOffset, y(coordinate) + yOffset);
+    }
+
+    /**
+     * @param index between 0 (inclusive) and {@link #ORTHOGONAL} (exclusive)
+     */
+    public static long orthogonalNeighbour(final long coordinate, final int index) {
+        return translate(coordinate, ORTHOGONAL_X[index], ORTHOGONAL_Y[index]);
+    }
+
+    /**
+     * @param index between 0 (inclusive) and {@link #ADJACENT} (exclusive)
+     */
+    public static long adjacentNeighbour(final long coordinate, final int index) {
+        return translate(coordinate, ADJACENT_X[index], ADJACENT_Y[index]);
+    }
+
+    public static int manhattanDistance(final long from, final long to) {
+        return Math.abs(x(from) - x(to)) + Math.abs(y(from) - y(to));
+    }
+
+    /**
+     * @throws IllegalArgumentException if any component is outside of the range that can be packed
+     */
+    public static long pack(final int x, final int y, final int z) {
+        if (x < MIN_3D || x > MAX_3D || y < MIN_3D || y > MAX_3D || z < MIN_3D || z > MAX_3D) {
+            throw new IllegalArgumentException("Coordinate out of range: " + x + "," + y + "," + z);
+        }
+        return ((x - MIN_3D) & MASK_3D) << 42 | ((y - MIN_3D) & MASK_3D) << 21 | ((z - MIN_3D) & MASK_3D);
+    }
+
+    public static int x3(final long coordinate) {
+        return (int) ((coordinate >>> 42) & MASK_3D) + MIN_3D;
+    }
+
+    public static int y3(final long coordinate) {
+        return (int) ((coordinate >>> 21) & MASK_3D) + MIN_3D;
+    }
+
+    public static int z3(final long coordinate) {
+        return (int) (coordinate & MASK_3D) + MIN_3D;
+    }
+
+    /**
+     * @param index between 0 (inclusive) and {@link #FACES} (exclusive)
+     */
+    public static long faceNeighbour(final long coordinate, final int index) {
+        return pack(x3(coordinate) + FACE_X[index], y3(coordinate) + FACE_Y[index], z3(coordinate) + FACE_Z[index]);
+    }
+
+}
\ No newline at end of file
@@ -1,75 +1,640 @@
 package com.macasaet;
 
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.Iterator;
 import java.util.List;
-import java.util.stream.StreamSupport;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
 /**
  * --- Day 1: Calorie Counting ---
  */
-public class Day01 {
-
-    protected Iterator<String> getInput() {
-        return StreamSupport
-                .stream(new LineSpliterator("day-01.txt"),
-                        false)
-                .iterator();
-    }
-
-    protected List<Elf> getElves() {
-        var calories = new ArrayList<BigInteger>();
-        final var elves = new ArrayList<Elf>();
-        for (final var i = getInput(); i.hasNext(); ) {
-            final var line = i.next();
-            if (line.isBlank()) {
-                elves.add(new Elf(Collections.unmodifiableList(calories)));
-                calories = new ArrayList<>();
-            } else {
-                calories.add(new BigInteger(line.strip()));
-            }
-        }
-        if (!calories.isEmpty()) {
-            elves.add(new Elf(Collections.unmodifiableList(calories)));
+public class Day01 implements Puzzle<Day01.TopCalories> {
+
+    /**
+     * The number of Elves whose totals are needed by either part
+     */
+    protected static final int TOP_ELVES = 3;
+
+    protected TopCalories getInput() {
+        return parse(MappedInput.open("day-01.txt"));
+    }
+
+    /**
+     * The smallest range of the input worth handing to another thread
+     */
+    protected static final long MIN_RANGE_BYTES = 1 << 20;
+
+    public TopCalories parse(final MappedInput input) {
+        return topCaloriesInParallel(input, TOP_ELVES);
+    }
+
+    public BigInteger solvePart1(final TopCalories top) {
+        return top.sum(1);
+    }
+
+    public BigInteger solvePart2(final TopCalories top) {
+        return top.sum(3);
+    }
+
+    /**
+     * Total each Elf's inventory in a single pass over the input, retaining only the largest totals. Memory use is
+     * independent of the number of Elves.
+     *
+     * @param input one item per line, with a blank line between Elves
+     * @param k     the number of totals to retain
+     * @return the <code>k</code> largest totals
+     */
+    public static TopCalories topCalories(final MappedInput input, final int k) {
+        return topCalories(input, k, 0, input.size());
+    }
+
+    /**
+     * Like {@link #topCalories(MappedInput, int)}, but the input is divided into byte ranges that are totalled
+     * concurrently. Each range is widened or narrowed to the next group boundary, so that every Elf is counted by
+     * exactly one range, and the totals retained for each range are then merged.
+     *
+     * @param input one item per line, with a blank line between Elves
+     * @param k     the number of totals to retain
+     * @return the <code>k</code> largest totals
+     */
+    public static TopCalories topCaloriesInParallel(final MappedInput input, final int k) {
+        return topCaloriesInParallel(input, k, MIN_RANGE_BYTES);
+    }
+
+    /**
+     * @param minRangeBytes the smallest range of the input to total on a separate thread
+     */
+    protected static TopCalories topCaloriesInParallel(final MappedInput input, final int k,
+                                                       final long minRangeBytes) {
+        final var size = input.size();
+        final var ranges = (int) Math.max(1, Math.min(size / minRangeBytes,
+                4L * ForkJoinPool.getCommonPoolParallelism()));
+        if (ranges == 1) {
+            return topCalories(input, k);
         }
-        return Collections.unmodifiableList(elves);
+        return IntStream.range(0, ranges)
+                .parallel()
+                .mapToObj(i -> topCalories(input, k,
+                        input.nextBlockStart(size * i / ranges),
+                        input.nextBlockStart(size * (i + 1) / ranges)))
+                .reduce((x, y) -> {
+                    x.addAll(y);
+                    return x;
+                })
+                .orElseThrow();
+    }
+
+    /**
+     * @param from the start of a group of lines (inclusive)
+     * @param to   the start of a later group of lines or the input size (exclusive)
+     */
+    protected static TopCalories topCalories(final MappedInput input, final int k, final long from, final long to) {
+        final var inventory = new Inventory(new TopCalories(k));
+        input.forEachLine(from, to, inventory);
+        return inventory.finish();
     }
 
     @Test
     public final void part1() {
-        final var elves = getElves();
-        final var elf = elves.stream()
-                .max(Comparator.comparing(Elf::totalCaloriesCarried))
-                .get();
+        final var result = solvePart1(getInput());
 
-        System.out.println("Part 1: " + elf.totalCaloriesCarried());
+        System.out.println("Part 1: " + result);
     }
 
     @Test
     public final void part2() {
-        final var elves = getElves();
-        final var list = elves.stream()
-                .sorted(Comparator.comparing(Elf::totalCaloriesCarried).reversed())
-                .toList();
+        final var result = solvePart2(getInput());
+
+        System.out.println("Part 2: " + result);
+    }
+
+    @Test
+    public final void testResultCacheHitsAndMisses() throws IOException {
+        final var directory = Files.createTempDirectory("day-01-cache");
+        try {
+            // given
+            final var cache = new ResultCache(directory, ResultCache.DEFAULT_MAX_BYTES);
+            final var digest = ResultCache.digest(MappedInput.wrap("1\n\n2\n".getBytes(StandardCharsets.US_ASCII)));
+            final var key = cache.key(1, 1, this, digest);
+
+            // when
+            final var miss = cache.get(key);
+            cache.put(key, 598367);
+            final var hit = cache.get(key);
+
+            // then
+            Assertions.assertNull(miss);
+            Assertions.assertEquals("598367", hit.result());
+            Assertions.assertEquals(key, cache.key(1, 1, new Day01(), digest));
+            Assertions.assertNull(cache.get(cache.key(1, 2, this, digest)));
+            final var otherDigest = ResultCache.digest(MappedInput.wrap(new byte[]{'3'}));
+            Assertions.assertNull(cache.get(cache.key(1, 1, this, otherDigest)));
+        } finally {
+            deleteRecursively(directory);
+        }
+    }
+
+    @Test
+    public final void testResultCacheKeyTracksSolverCode() {
+        // given
+        final var cache = new ResultCache(Path.of(System.getProperty("java.io.tmpdir")), 1);
+        final var digest = ResultCache.digest(MappedInput.wrap(new byte[]{'1'}));
+
+        // when
+        final var version = ResultCache.solverVersion(this);
+
+        // then
+        Assertions.assertNotEquals(version, ResultCache.solverVersion(new Day02()));
+        Assertions.assertNotEquals(cache.key(1, 1, this, digest), cache.key(1, 1, new Day02(), digest));
+        Assertions.assertTrue(ResultCache.isSolverClass("Day01.class", "Day01"));
+        Assertions.assertTrue(ResultCache.isSolverClass("Day01$Inventory.class", "Day01"));
+        Assertions.assertTrue(ResultCache.isSolverClass("MappedInput.class", "Day01"));
+        Assertions.assertFalse(ResultCache.isSolverClass("Day02.class", "Day01"));
+        Assertions.assertFalse(ResultCache.isSolverClass("Day02$Tally.class", "Day01"));
+        Assertions.assertFalse(ResultCache.isSolverClass("Day01.java", "Day01"));
+    }
+
+    @Test
+    public final void testResultCacheEvictsLeastRecentlyUsed() throws IOException {
+        final var directory = Files.createTempDirectory("day-01-cache");
+        try {
+            // given
+            final var cache = new ResultCache(directory, 10);
+            cache.put("a", "1111");
+            cache.put("b", "2222");
+            final var now = System.currentTimeMillis();
+            Files.setLastModifiedTime(cache.entry("a"), FileTime.fromMillis(now - 7_200_000));
+            Files.setLastModifiedTime(cache.entry("b"), FileTime.fromMillis(now - 3_600_000));
+            cache.get("a");
+
+            // when
+            cache.put("c", "3333");
+
+            // then
+            Assertions.assertEquals("1111", cache.get("a").result());
+            Assertions.assertNull(cache.get("b"));
+            Assertions.assertEquals("3333", cache.get("c").result());
+        } finally {
+            deleteRecursively(directory);
+        }
+    }
+
+    @Test
+    public final void testResultCacheTreatsBadEntriesAsMisses() throws IOException {
+        final var directory = Files.createTempDirectory("day-01-cache");
+        try {
+            // given
+            final var cache = new ResultCache(directory, ResultCache.DEFAULT_MAX_BYTES);
+            cache.put("corrupt", "1");
+            Files.write(cache.entry("corrupt"), new byte[]{(byte) 0xc3, '('});
+            cache.put("empty", "2");
+            Files.write(cache.entry("empty"), new byte[0]);
+            cache.put("evicted", "3");
+            Files.delete(cache.entry("evicted"));
+
+            // when
+            final var corrupt = cache.get("corrupt");
+            final var empty = cache.get("empty");
+            final var evicted = cache.get("evicted");
+
+            // then
+            Assertions.assertNull(corrupt);
+            Assertions.assertNull(empty);
+            Assertions.assertNull(evicted);
+            Assertions.assertFalse(Files.exists(cache.entry("corrupt")));
+            Assertions.assertFalse(Files.exists(cache.entry("empty")));
+        } finally {
+            deleteRecursively(directory);
+        }
+    }
+
+    protected static void deleteRecursively(final Path directory) throws IOException {
+        try (var paths = Files.walk(directory)) {
+            for (final var path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Test
+    public final void testParallelMatchesSequential() throws IOException {
+        final var random = new SplittableRandom(12);
+        for (int trial = 0; trial < 20; trial++) {
+            // given
+            final var writer = new StringWriter();
+            new Generator(random.nextInt(1, 500), 15, 60_000).generate(random, writer);
+            final var input = MappedInput.wrap(writer.toString().getBytes(StandardCharsets.US_ASCII));
+            final var k = random.nextInt(1, 10);
+
+            // when
+            final var result = topCaloriesInParallel(input, k, random.nextInt(16, 1_024));
+
+            // then
+            Assertions.assertEquals(topCalories(input, k).descending(), result.descending());
+        }
+    }
+
+    @Test
+    public final void testTopCaloriesMatchesSort() {
+        final var random = new SplittableRandom(11);
+        for (int trial = 0; trial < 200; trial++) {
+            // given
+            final var k = random.nextInt(1, 20);
+            final var top = new TopCalories(k);
+            final var offered = new ArrayList<BigInteger>();
+
+            // when
+            for (int i = random.nextInt(0, 100); --i >= 0; ) {
+                // mostly small totals, with many ties, and occasionally one too large for a long
+                if (random.nextInt(10) == 0) {
+                    final var total = BigInteger.valueOf(Long.MAX_VALUE).add(BigInteger.valueOf(random.nextInt(1, 50)));
+                    top.add(total);
+                    offered.add(total);
+                } else {
+                    final long total = random.nextInt(0, 50);
+                    top.add(total);
+                    offered.add(BigInteger.valueOf(total));
+                }
+            }
+
+            // then
+            offered.sort(Comparator.reverseOrder());
+            final var expected = offered.subList(0, Math.min(k, offered.size()));
+            Assertions.assertEquals(expected, top.descending());
+            Assertions.assertEquals(expected.size(), top.size());
+            for (int n = 0; n <= expected.size(); n++) {
+                Assertions.assertEquals(expected.subList(0, n).stream().reduce(BigInteger.ZERO, BigInteger::add),
+                        top.sum(n));
+            }
+        }
+    }
+
+    @Test
+    public final void testTopCaloriesMerge() {
+        // given
+        final var first = new TopCalories(3);
+        final var second = new TopCalories(3);
+        for (final var total : new long[]{5, 1, 9, 7}) {
+            first.add(total);
+        }
+        second.add(8);
+        second.add(BigInteger.ONE.shiftLeft(70));
+
+        // when
+        first.addAll(second);
+
+        // then
+        Assertions.assertEquals(List.of(BigInteger.ONE.shiftLeft(70), BigInteger.valueOf(9), BigInteger.valueOf(8)),
+                first.descending());
+    }
+
+    @Test
+    public final void testInventoryPromotesOnOverflow() {
+        // given
+        final var text = Long.MAX_VALUE + "\n1\n\n5\n\n99999999999999999999\n1\n\n" + Long.MAX_VALUE + "\n";
+        final var input = MappedInput.wrap(text.getBytes(StandardCharsets.US_ASCII));
+
+        // when
+        final var result = topCalories(input, 4);
 
-        System.out.println("Part 2: " + (list.get(0).totalCaloriesCarried().add(list.get(1).totalCaloriesCarried()).add(list.get(2).totalCaloriesCarried())));
+        // then
+        Assertions.assertEquals(List.of(new BigInteger("100000000000000000000"),
+                        BigInteger.valueOf(Long.MAX_VALUE).add(BigInteger.ONE),
+                        BigInteger.valueOf(Long.MAX_VALUE),
+                        BigInteger.valueOf(5)),
+                result.descending());
+    }
+
+    @Test
+    public final void testSumRejectsUnavailableTotals() {
+        // given
+        final var top = new TopCalories(3);
+        top.add(1);
+        top.add(2);
+
+        // then
+        Assertions.assertThrows(IllegalArgumentException.class, () -> top.sum(-1));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> top.sum(4));
+        Assertions.assertThrows(IllegalStateException.class, () -> top.sum(3));
+        Assertions.assertEquals(BigInteger.valueOf(3), top.sum(2));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new TopCalories(0));
+    }
+
+    @Test
+    public final void testSeparatorsMatchBlocks() {
+        // given
+        final var text = "1000\r\n2000\r\n \t\r\n4000\r\n\r\n5000\n";
+        final var input = MappedInput.wrap(text.getBytes(StandardCharsets.US_ASCII));
+
+        // when
+        final var result = topCalories(input, 10);
+
+        // then
+        Assertions.assertEquals(input.blocks().count(), result.size());
+        Assertions.assertEquals(List.of(BigInteger.valueOf(5000), BigInteger.valueOf(4000), BigInteger.valueOf(3000)),
+                result.descending());
+    }
+
+    @Test
+    public final void testFormFeedIsNotASeparator() {
+        // given
+        final var input = MappedInput.wrap("1000\n\f\n2000\n".getBytes(StandardCharsets.US_ASCII));
+
+        // when
+        final var blocks = input.blocks().count();
+
+        // then
+        Assertions.assertEquals(1, blocks);
+        Assertions.assertThrows(NumberFormatException.class, () -> topCalories(input, 10));
+    }
+
+    /**
+     * Sums the items carried by one Elf at a time. The running total is a <code>long</code> and is only promoted to
+     * a {@link BigInteger} if it overflows.
+     */
+    protected static class Inventory implements MappedInput.LineVisitor {
+        private final TopCalories top;
+        private boolean inProgress;
+        private long total;
+        private BigInteger largeTotal;
+
+        public Inventory(final TopCalories top) {
+            this.top = top;
+        }
+
+        public void visit(final ByteBuffer buffer, int start, int end) {
+            while (start < end && MappedInput.isBlank(buffer.get(start))) {
+                start++;
+            }
+            while (end > start && MappedInput.isBlank(buffer.get(end - 1))) {
+                end--;
+            }
+            if (start == end) {
+                endElf();
+                return;
+            }
+            inProgress = true;
+            final var item = parseItem(buffer, start, end);
+            if (item < 0) {
+                // too large for a long
+                add(new BigInteger(new AsciiSequence(buffer, start, end - start).toString()));
+                return;
+            }
+            if (largeTotal != null) {
+                largeTotal = largeTotal.add(BigInteger.valueOf(item));
+                return;
+            }
+            final var sum = total + item;
+            if (sum < 0) {
+                largeTotal = BigInteger.valueOf(total).add(BigInteger.valueOf(item));
+            } else {
+                total = sum;
+            }
+        }
+
+        /**
+         * @return the totals of every Elf seen so far
+         */
+        public TopCalories finish() {
+            endElf();
+            return top;
+        }
+
+        protected void add(final BigInteger item) {
+            largeTotal = (largeTotal != null ? largeTotal : BigInteger.valueOf(total)).add(item);
+        }
+
+        protected void endElf() {
+            if (!inProgress) {
+                return;
+            }
+            if (largeTotal != null) {
+                top.add(largeTotal);
+            } else {
+                top.add(total);
+            }
+            inProgress = false;
+            total = 0;
+            largeTotal = null;
+        }
+
+        /**
+         * @return the item's calories or -1 if it cannot be represented as a non-negative <code>long</code>
+         * @throws NumberFormatException if the item is not an integer
+         */
+        protected static long parseItem(final ByteBuffer buffer, final int start, final int end) {
+            long result = 0;
+            for (int i = start; i < end; i++) {
+                final var digit = buffer.get(i) - '0';
+                if (digit < 0 || digit > 9) {
+                    if (i == start && end - start > 1 && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+                        return -1;
+                    }
+                    throw new NumberFormatException("Invalid digit '" + (char) buffer.get(i) + "' at index " + i);
+                }
+                if (result > (Long.MAX_VALUE - digit) / 10) {
+                    return -1;
+                }
+                result = result * 10 + digit;
+            }
+            return result;
+        }
+    }
+
+    /**
+     * The <code>k</code> largest calorie totals offered to it, kept in a bounded min-heap so that each new total is
+     * usually rejected after a single comparison with the smallest one retained.
+     *
+     * <p>Totals are stored as <code>long</code>s. A {@link BigInteger} is only kept for a total that does not fit.</p>
+     */
+    public static class TopCalories {
+        private final long[] totals;
+        private final BigInteger[] largeTotals;
+        private int size;
+
+        /**
+         * @param k the number of totals to retain
+         */
+        public TopCalories(final int k) {
+            if (k < 1) {
+                throw new IllegalArgumentException("Invalid number of totals to retain: " + k);
+            }
+            this.totals = new long[k];
+            this.largeTotals = new BigInteger[k];
+        }
+
+        /**
+         * @return the number of totals retained, which is less than <code>k</code> only if fewer were offered
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * @return the most totals that may be retained
+         */
+        public int capacity() {
+            return totals.length;
+        }
+
+        public void add(final long total) {
+            if (size < totals.length) {
+                totals[size] = total;
+                largeTotals[size] = null;
+                siftUp(size++);
+            } else if (compare(total, null, 0) > 0) {
+                totals[0] = total;
+                largeTotals[0] = null;
+                siftDown(0);
+            }
+        }
+
+        public void add(final BigInteger total) {
+            if (total.bitLength() < Long.SIZE) {
+                add(total.longValue());
+                return;
+            }
+            if (size < totals.length) {
+                largeTotals[size] = total;
+                siftUp(size++);
+            } else if (compare(0, total, 0) > 0) {
+                largeTotals[0] = total;
+                siftDown(0);
+            }
+        }
+
+        /**
+         * Offer every total retained by another instance, e.g. one that processed a different part of the input.
+         */
+        public void addAll(final TopCalories other) {
+            for (int i = 0; i < other.size; i++) {
+                if (other.largeTotals[i] != null) {
+                    add(other.largeTotals[i]);
+                } else {
+                    add(other.totals[i]);
+                }
+            }
+        }
+
+        /**
+         * @return the retained totals, largest first
+         */
+        public List<BigInteger> descending() {
+            final var result = new ArrayList<BigInteger>(size);
+            for (int i = 0; i < size; i++) {
+                result.add(get(i));
+            }
+            result.sort(Comparator.reverseOrder());
+            return Collections.unmodifiableList(result);
+        }
+
+        /**
+         * @param n the number of totals to add up, no more than {@link #capacity()}
+         * @return the sum of the <code>n</code> largest totals
+         */
+        public BigInteger sum(final int n) {
+            if (n < 0 || n > capacity()) {
+                throw new IllegalArgumentException("Only the top " + capacity() + " totals are retained, not " + n);
+            }
+            if (n > size) {
+                throw new IllegalStateException("Only " + size + " totals were offered");
+            }
+            return descending().subList(0, n).stream().reduce(BigInteger.ZERO, BigInteger::add);
+        }
+
+        protected BigInteger get(final int index) {
+            return largeTotals[index] != null ? largeTotals[index] : BigInteger.valueOf(totals[index]);
+        }
+
+        /**
+         * @return a negative number, zero or a positive number if the given total is less than, equal to or greater
+         * than the one at <code>index</code>
+         */
+        protected int compare(final long total, final BigInteger largeTotal, final int index) {
+            final var other = largeTotals[index];
+            if (largeTotal == null && other == null) {
+                return Long.compare(total, totals[index]);
+            }
+            return (largeTotal != null ? largeTotal : BigInteger.valueOf(total))
+                    .compareTo(other != null ? other : BigInteger.valueOf(totals[index]));
+        }
+
+        protected void siftUp(int index) {
+            while (index > 0) {
+                final var parent = (index - 1) >>> 1;
+                if (compare(totals[index], largeTotals[index], parent) >= 0) {
+                    break;
+                }
+                swap(index, parent);
+                index = parent;
+            }
+        }
+
+        protected void siftDown(int index) {
+            while (true) {
+                final var left = 2 * index + 1;
+                if (left >= size) {
+                    break;
+                }
+                final var right = left + 1;
+                final var smaller = right < size && compare(totals[right], largeTotals[right], left) < 0
+                        ? right
+                        : left;
+                if (compare(totals[smaller], largeTotals[smaller], index) >= 0) {
+                    break;
+                }
+                swap(index, smaller);
+                index = smaller;
+            }
+        }
+
+        protected void swap(final int i, final int j) {
+            final var total = totals[i];
+            totals[i] = totals[j];
+            totals[j] = total;
+            final var largeTotal = largeTotals[i];
+            largeTotals[i] = largeTotals[j];
+            largeTotals[j] = largeTotal;
+        }
     }
 
     /**
-     * An elf who collects food for the reindeer.
+     * Generates inventories for an arbitrary number of Elves.
      *
-     * @param itemCalories The number of calories of each item carried by the elf
+     * @param elves       the number of Elves
+     * @param maxItems    the most items any one Elf carries
+     * @param maxCalories the most calories in any one item
      */
-    public record Elf(List<BigInteger> itemCalories) {
-        public BigInteger totalCaloriesCarried() {
-            return itemCalories().stream()
-                    .reduce(BigInteger::add)
-                    .get();
+    public record Generator(int elves, int maxItems, int maxCalories) implements InputGenerator {
+        public static Generator atScale(final int scale) {
+            return new Generator(250 * scale, 15, 60_000);
+        }
+
+        public void generate(final SplittableRandom random, final Writer output) throws IOException {
+            for (int i = elves(); --i >= 0; ) {
+                for (int j = random.nextInt(1, maxItems() + 1); --j >= 0; ) {
+                    output.write(Integer.toString(random.nextInt(1, maxCalories() + 1)));
+                    output.write('\n');
+                }
+                if (i > 0) {
+                    output.write('\n');
+                }
+            }
         }
     }
 
@@ -1,42 +1,387 @@
 package com.macasaet;
 
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
-import java.util.stream.Stream;
-import java.util.stream.StreamSupport;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
 
 /**
  * --- Day 2: Rock Paper Scissors ---
  * https://adventofcode.com/2022/day/2
  */
-public class Day02 {
+public class Day02 implements Puzzle<Day02.Tally> {
 
-    protected Stream<Round> getInput() {
-        return StreamSupport
-                .stream(new LineSpliterator("day-02.txt"),
-                        false)
-                .map(line -> {
-                    final var components = line.strip().split(" ");
-                    return new Round(Shape.forChar(components[0].charAt(0)),
-                            Shape.forChar(components[1].charAt(0)),
-                            ResponseStrategy.forChar(components[1].charAt(0)));
-                });
+    /**
+     * The original (incorrect) interpretation of the strategy guide, in which the second column is the shape to play
+     */
+    protected static final Strategy NAIVE = Strategy.shapes(Shape::forChar);
+
+    /**
+     * The intended interpretation of the strategy guide, in which the second column is the desired outcome
+     */
+    protected static final Strategy INTENDED = Strategy.responses(ResponseStrategy::forChar);
+
+    /**
+     * The smallest range of the input worth handing to another thread
+     */
+    protected static final long MIN_RANGE_BYTES = 1 << 20;
+
+    protected Tally getInput() {
+        return parse(MappedInput.open("day-02.txt"));
+    }
+
+    public Tally parse(final MappedInput input) {
+        return parse(input, MIN_RANGE_BYTES);
+    }
+
+    /**
+     * @param minRangeBytes the smallest range of the input to count on a separate thread
+     */
+    protected Tally parse(final MappedInput input, final long minRangeBytes) {
+        final var ranges = input.lineRanges(minRangeBytes, 4 * ForkJoinPool.getCommonPoolParallelism());
+        if (ranges.length == 2) {
+            return Tally.of(input, 0, input.size());
+        }
+        return IntStream.range(0, ranges.length - 1)
+                .parallel()
+                .mapToObj(i -> Tally.of(input, ranges[i], ranges[i + 1]))
+                .reduce((x, y) -> {
+                    x.addAll(y);
+                    return x;
+                })
+                .orElseThrow();
+    }
+
+    public Long solvePart1(final Tally tally) {
+        return tally.total(NAIVE);
+    }
+
+    public Long solvePart2(final Tally tally) {
+        return tally.total(INTENDED);
     }
 
     @Test
     public final void part1() {
-        final var result = getInput().mapToInt(Round::naiveScore).sum();
+        final var result = solvePart1(getInput());
 
         System.out.println("Part 1: " + result);
     }
 
     @Test
     public final void part2() {
-        final var result = getInput().mapToInt(Round::score).sum();
+        final var result = solvePart2(getInput());
 
         System.out.println("Part 2: " + result);
     }
 
+    @Test
+    public final void testSchedulerParsesEachInputOnce() throws IOException {
+        // given
+        final var days = new int[]{1, 2, 3, 4, 5};
+        final var inputs = new ConcurrentHashMap<Integer, MappedInput>();
+        final var random = new SplittableRandom(2);
+        for (final var day : days) {
+            final var writer = new StringWriter();
+            InputGenerator.forDay(day, 1).generate(random, writer);
+            inputs.put(day, MappedInput.wrap(writer.toString().getBytes(StandardCharsets.US_ASCII)));
+        }
+        final var opened = new ConcurrentHashMap<Integer, Integer>();
+        final var parsed = new ConcurrentHashMap<Integer, Integer>();
+        final var phases = new ConcurrentHashMap<String, Integer>();
+        final var answers = new ConcurrentHashMap<String, String>();
+        final Scheduler.Listener listener = (day, phase, measurement) -> {
+            phases.merge(day + ":" + phase, 1, Integer::sum);
+            if (phase.startsWith("part")) {
+                answers.put(day + ":" + phase, String.valueOf(measurement.result()));
+            }
+        };
+
+        // when
+        try (var scheduler = new Scheduler(day -> {
+            opened.merge(day, 1, Integer::sum);
+            return inputs.get(day);
+        }, 2, null, (day, puzzle, input) -> {
+            parsed.merge(day, 1, Integer::sum);
+            return puzzle.parse(input);
+        })) {
+            scheduler.run(days, new int[]{1, 2}, listener);
+        }
+
+        // then
+        for (final var day : days) {
+            @SuppressWarnings("unchecked") final var puzzle = (Puzzle<Object>) Puzzle.forDay(day);
+            final var model = puzzle.parse(inputs.get(day));
+            Assertions.assertEquals(1, opened.get(day));
+            Assertions.assertEquals(1, parsed.get(day));
+            Assertions.assertEquals(1, phases.get(day + ":parse"));
+            Assertions.assertNull(phases.get(day + ":hash"));
+            Assertions.assertEquals(String.valueOf(puzzle.solvePart1(model)), answers.get(day + ":part1"));
+            Assertions.assertEquals(String.valueOf(puzzle.solvePart2(model)), answers.get(day + ":part2"));
+        }
+    }
+
+    @Test
+    public final void testSchedulerSkipsParsingCachedDays() throws IOException {
+        final var directory = Files.createTempDirectory("day-02-cache");
+        try {
+            // given
+            final var writer = new StringWriter();
+            Generator.atScale(1).generate(new SplittableRandom(3), writer);
+            final var input = MappedInput.wrap(writer.toString().getBytes(StandardCharsets.US_ASCII));
+            final var cache = new ResultCache(directory, ResultCache.DEFAULT_MAX_BYTES);
+            final var parsed = new AtomicInteger();
+            final Scheduler.Parser parser = (day, puzzle, mapped) -> {
+                parsed.incrementAndGet();
+                return puzzle.parse(mapped);
+            };
+            final var first = new ConcurrentHashMap<String, String>();
+            try (var scheduler = new Scheduler(day -> input, 2, cache, parser)) {
+                scheduler.run(new int[]{2}, new int[]{1, 2},
+                        (day, phase, measurement) -> first.put(phase, String.valueOf(measurement.result())));
+            }
+
+            // when
+            final var second = new ConcurrentHashMap<String, String>();
+            try (var scheduler = new Scheduler(day -> input, 2, cache, parser)) {
+                scheduler.run(new int[]{2}, new int[]{1, 2},
+                        (day, phase, measurement) -> second.put(phase, String.valueOf(measurement.result())));
+            }
+
+            // then
+            Assertions.assertEquals(1, parsed.get());
+            Assertions.assertEquals(Set.of("hash", "parse", "part1", "part2"), first.keySet());
+            Assertions.assertEquals(Set.of("hash", "part1", "part2"), second.keySet());
+            Assertions.assertEquals(first.get("part1"), second.get("part1"));
+            Assertions.assertEquals(first.get("part2"), second.get("part2"));
+        } finally {
+            Day01.deleteRecursively(directory);
+        }
+    }
+
+    @Test
+    public final void testTallyCountsEachRound() {
+        // given
+        final var guide = "A Y\r\n  B X \n\nC Z\nA Y";
+
+        // when
+        final var tally = parse(MappedInput.wrap(guide.getBytes(StandardCharsets.US_ASCII)));
+
+        // then
+        Assertions.assertEquals(2, tally.count('A', 'Y'));
+        Assertions.assertEquals(1, tally.count('B', 'X'));
+        Assertions.assertEquals(1, tally.count('C', 'Z'));
+        Assertions.assertEquals(0, tally.count('A', 'X'));
+        Assertions.assertEquals(8 + 1 + 6 + 8, tally.total(NAIVE));
+    }
+
+    @Test
+    public final void testTallyRejectsMalformedRounds() {
+        for (final var round : List.of("AX", "A  Z", "A?Z", "A", "A Y Z", "D X", "A \u00e9")) {
+            final var input = MappedInput.wrap(round.getBytes(StandardCharsets.ISO_8859_1));
+            Assertions.assertThrows(IllegalArgumentException.class, () -> parse(input), round);
+        }
+    }
+
+    @Test
+    public final void testParallelTallyMatchesSequential() throws IOException {
+        // given
+        final var writer = new StringWriter();
+        new Generator(20_000).generate(new SplittableRandom(13), writer);
+        final var input = MappedInput.wrap(writer.toString().getBytes(StandardCharsets.US_ASCII));
+
+        // when
+        final var parallel = parse(input, 1_000);
+
+        // then
+        final var sequential = Tally.of(input, 0, input.size());
+        Assertions.assertArrayEquals(sequential.totals(List.of(NAIVE, INTENDED)),
+                parallel.totals(List.of(NAIVE, INTENDED)));
+        Assertions.assertEquals(20_000, parallel.count('A', 'X') + parallel.count('A', 'Y') + parallel.count('A', 'Z')
+                + parallel.count('B', 'X') + parallel.count('B', 'Y') + parallel.count('B', 'Z')
+                + parallel.count('C', 'X') + parallel.count('C', 'Y') + parallel.count('C', 'Z'));
+    }
+
+    @Test
+    public final void testTotalsMatchEachStrategyAlone() throws IOException {
+        // given
+        final var random = new SplittableRandom(14);
+        final var writer = new StringWriter();
+        new Generator(1_000).generate(random, writer);
+        final var guide = writer.toString();
+        final var strategies = new ArrayList<Strategy>(List.of(NAIVE, INTENDED));
+        final var shapes = Shape.values();
+        for (int i = 0; i < 6; i++) {
+            // every assignment of the three shapes to the three columns
+            final var table = new Shape[]{shapes[i % 3], shapes[(i + 1 + i / 3) % 3], shapes[(i + 2 - i / 3) % 3]};
+            strategies.add(Strategy.shapes(column -> table[column - 'X']));
+        }
+
+        // when
+        final var result = parse(MappedInput.wrap(guide.getBytes(StandardCharsets.US_ASCII))).totals(strategies);
+
+        // then
+        for (int j = 0; j < strategies.size(); j++) {
+            final var strategy = strategies.get(j);
+            final long expected = guide.lines()
+                    .mapToLong(line -> {
+                        final var opponent = Shape.forChar(line.charAt(0));
+                        return strategy.respond(opponent, line.charAt(2)).scoreAgainst(opponent);
+                    })
+                    .sum();
+            Assertions.assertEquals(expected, result[j]);
+        }
+    }
+
+    /**
+     * A way of interpreting the second column of the strategy guide
+     */
+    @FunctionalInterface
+    public interface Strategy {
+        /**
+         * @param opponent the shape played by the opponent
+         * @param column   the second column of the round
+         * @return the shape to play
+         */
+        Shape respond(Shape opponent, char column);
+
+        /**
+         * @param mapping the shape to play for each value of the second column
+         */
+        static Strategy shapes(final ColumnMapping<Shape> mapping) {
+            return (opponent, column) -> mapping.forColumn(column);
+        }
+
+        /**
+         * @param mapping how to respond to the opponent for each value of the second column
+         */
+        static Strategy responses(final ColumnMapping<ResponseStrategy> mapping) {
+            return (opponent, column) -> mapping.forColumn(column).respond(opponent);
+        }
+    }
+
+    /**
+     * Interprets the second column of a round without boxing it.
+     *
+     * @param <T> the meaning of the column
+     */
+    @FunctionalInterface
+    public interface ColumnMapping<T> {
+        T forColumn(char column);
+    }
+
+    /**
+     * The number of rounds in a strategy guide with each combination of opponent shape and second column. Every round
+     * with the same combination scores the same under a given {@link Strategy}, so once the guide has been tallied
+     * any number of strategies can be scored without looking at the input again, at a cost of one lookup per distinct
+     * combination rather than per round.
+     */
+    public static class Tally implements MappedInput.LineVisitor {
+        private static final int COLUMNS = 128;
+
+        private final long[] counts = new long[3 * COLUMNS];
+
+        /**
+         * Count the rounds in a range of the input in a single pass over its bytes.
+         *
+         * @param from the start of a line (inclusive)
+         * @param to   the start of a later line or the input size (exclusive)
+         */
+        public static Tally of(final MappedInput input, final long from, final long to) {
+            final var result = new Tally();
+            input.forEachLine(from, to, result);
+            return result;
+        }
+
+        /**
+         * @param opponent the first column of a round, "A", "B" or "C"
+         * @param column   the second column of a round, any ASCII character
+         * @return the index of the combination's count
+         */
+        protected static int index(final int opponent, final int column) {
+            if (opponent < 'A' || opponent > 'C') {
+                throw new IllegalArgumentException("Invalid shape: " + opponent);
+            }
+            if (column < 0 || column >= COLUMNS) {
+                throw new IllegalArgumentException("Invalid column: " + column);
+            }
+            return (opponent - 'A') * COLUMNS + column;
+        }
+
+        public void visit(final ByteBuffer buffer, int start, int end) {
+            while (start < end && MappedInput.isBlank(buffer.get(start))) {
+                start++;
+            }
+            while (end > start && MappedInput.isBlank(buffer.get(end - 1))) {
+                end--;
+            }
+            if (start == end) {
+                return;
+            }
+            if (end - start != 3 || buffer.get(start + 1) != ' ') {
+                throw new IllegalArgumentException("Invalid round at index " + start + ": "
+                        + new AsciiSequence(buffer, start, end - start));
+            }
+            counts[index(buffer.get(start), buffer.get(start + 2))]++;
+        }
+
+        /**
+         * @return the number of rounds with the given columns
+         */
+        public long count(final char opponent, final char column) {
+            return counts[index(opponent, column)];
+        }
+
+        /**
+         * Add the rounds counted by another instance, e.g. one that counted a different part of the input.
+         */
+        public void addAll(final Tally other) {
+            for (int i = counts.length; --i >= 0; counts[i] += other.counts[i]) ;
+        }
+
+        /**
+         * @return the total score of every round when following the strategy
+         */
+        public long total(final Strategy strategy) {
+            return totals(List.of(strategy))[0];
+        }
+
+        /**
+         * Score the guide under several strategies at once. Each strategy is consulted once per distinct combination
+         * of opponent shape and second column.
+         *
+         * @return the total score of every round under each strategy, in the same order
+         */
+        public long[] totals(final List<? extends Strategy> strategies) {
+            final var result = new long[strategies.size()];
+            final var shapes = Shape.values();
+            for (int i = 0; i < counts.length; i++) {
+                final var count = counts[i];
+                if (count == 0) {
+                    continue;
+                }
+                final var opponent = shapes[i / COLUMNS];
+                final var column = (char) (i % COLUMNS);
+                for (int j = result.length; --j >= 0; ) {
+                    result[j] += count * strategies.get(j).respond(opponent, column).scoreAgainst(opponent);
+                }
+            }
+            return result;
+        }
+    }
+
     /**
      * A shape that a contestant can play in a round
      */
@@ -98,6 +443,15 @@ public class Day02 {
             };
         }
 
+        /**
+         * @param opponent the shape played by the opponent
+         * @return the score for playing this shape against the opponent's
+         */
+        public int scoreAgainst(final Shape opponent) {
+            final var outcome = opponent == this ? 3 : opponent.beatenBy() == this ? 6 : 0;
+            return outcome + score();
+        }
+
         /**
          * @return the inherent value of this shape
          */
@@ -147,28 +501,22 @@ public class Day02 {
     }
 
     /**
-     * A single round of the game
+     * Generates a strategy guide with an arbitrary number of rounds.
      *
-     * @param opponent         The shape played by the opponent
-     * @param player           The shape chosen based on the original (incorrect) interpretation of the responseStrategy guide
-     * @param responseStrategy The responseStrategy for responding to the opponent according to the responseStrategy guide
+     * @param rounds the number of rounds in the tournament
      */
-    public record Round(Shape opponent, Shape player, ResponseStrategy responseStrategy) {
-        /**
-         * @return the score based on the simple (incorrect) interpretation of the strategy guide
-         */
-        public int naiveScore() {
-            final var outcome = opponent() == player() ? 3 : opponent().beatenBy() == player() ? 6 : 0;
-            return outcome + player().score();
+    public record Generator(int rounds) implements InputGenerator {
+        public static Generator atScale(final int scale) {
+            return new Generator(2_500 * scale);
         }
 
-        /**
-         * @return the score based on following the strategy guide
-         */
-        public int score() {
-            final var response = responseStrategy().respond(opponent());
-            final var outcome = opponent() == response ? 3 : opponent().beatenBy() == response ? 6 : 0;
-            return outcome + response.score();
+        public void generate(final SplittableRandom random, final Writer output) throws IOException {
+            for (int i = rounds(); --i >= 0; ) {
+                output.write('A' + random.nextInt(3));
+                output.write(' ');
+                output.write('X' + random.nextInt(3));
+                output.write('\n');
+            }
         }
     }
 
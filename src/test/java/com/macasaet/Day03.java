@@ -1,117 +1,586 @@
 package com.macasaet;
 
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
-import java.util.stream.Stream;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
 import java.util.stream.StreamSupport;
 
 /**
  * --- Day 3: Rucksack Reörganisation ---
  * https://adventofcode.com/2022/day/3
  */
-public class Day03 {
+public class Day03 implements Puzzle<Day03.Rucksacks> {
+
+    /**
+     * The smallest range of the input worth handing to another thread
+     */
+    protected static final long MIN_RANGE_BYTES = 1 << 20;
 
     protected static int priority(final char c) {
         if (c >= 'a' && c <= 'z') {
             return c - 'a' + 1;
         }
-        return c - 'A' + 27;
+        if (c >= 'A' && c <= 'Z') {
+            return c - 'A' + 27;
+        }
+        throw new IllegalArgumentException("Invalid item: " + c);
+    }
+
+    protected Rucksacks getInput() {
+        return parse(MappedInput.open("day-03.txt"));
+    }
+
+    public Rucksacks parse(final MappedInput input) {
+        final var ranges = input.lineRanges(MIN_RANGE_BYTES, 4 * ForkJoinPool.getCommonPoolParallelism());
+        if (ranges.length == 2) {
+            return Rucksacks.of(input, 0, input.size());
+        }
+        final var parts = IntStream.range(0, ranges.length - 1)
+                .parallel()
+                .mapToObj(i -> Rucksacks.of(input, ranges[i], ranges[i + 1]))
+                .toList();
+        return Rucksacks.concatenate(parts);
     }
 
-    protected Stream<Rucksack> getInput() {
-        return StreamSupport
-                .stream(new LineSpliterator("day-03.txt"),
-                        false)
-                .map(Rucksack::parse);
+    public Long solvePart1(final Rucksacks rucksacks) {
+        long result = 0;
+        for (int i = 0; i < rucksacks.size(); i++) {
+            result += rucksacks.priority(i);
+        }
+        return result;
+    }
+
+    public Long solvePart2(final Rucksacks rucksacks) {
+        return StreamSupport.stream(new ChunkSpliterator<>(rucksacks.spliterator(), 3), true)
+                .mapToLong(this::getBadge)
+                .sum();
     }
 
     @Test
     public final void part1() {
-        final var result = getInput().mapToInt(Rucksack::priority).sum();
+        final var result = solvePart1(getInput());
 
         System.out.println("Part 1: " + result);
     }
 
     @Test
     public final void part2() {
-        final var groups = new ArrayList<List<Rucksack>>();
-        var currentGroup = new ArrayList<Rucksack>(3);
+        final var result = solvePart2(getInput());
 
-        for (final var i = getInput().iterator(); i.hasNext(); ) {
-            final var rucksack = i.next();
-            if (currentGroup.size() == 3) {
-                groups.add(Collections.unmodifiableList(currentGroup));
-                currentGroup = new ArrayList<>(3);
-            }
-            currentGroup.add(rucksack);
+        System.out.println("Part 2: " + result);
+    }
+
+    @Test
+    public final void testRunnerOutput() throws IOException {
+        final var directory = Files.createTempDirectory("day-03-runner");
+        try {
+            // given
+            InputGenerator.write(1, InputGenerator.forDay(1, 1), 3, directory);
+            final var file = InputGenerator.write(3, InputGenerator.forDay(3, 1), 3, directory);
+            final var model = parse(MappedInput.open(file));
+
+            // when
+            final var lines = runRunner("--input", directory.toString(), "--parts", "2", "3", "1");
+            final var single = runRunner("--input", file.toString(), "--parts", "1,2", "3");
+
+            // then
+            Assertions.assertEquals(List.of("parse", "part2", "parse", "part2", "total"), phases(lines));
+            Assertions.assertTrue(lines.get(0).matches(measurementPattern(3, "parse", null)), lines.get(0));
+            Assertions.assertTrue(lines.get(1).matches(measurementPattern(3, "part2", solvePart2(model))),
+                    lines.get(1));
+            Assertions.assertTrue(lines.get(2).matches(measurementPattern(1, "parse", null)), lines.get(2));
+            Assertions.assertTrue(lines.get(4).matches("\\{\"phase\":\"total\",\"nanos\":\\d+}"), lines.get(4));
+            Assertions.assertEquals(List.of("parse", "part1", "part2", "total"), phases(single));
+            Assertions.assertTrue(single.get(1).matches(measurementPattern(3, "part1", solvePart1(model))),
+                    single.get(1));
+            Assertions.assertTrue(single.get(2).matches(measurementPattern(3, "part2", solvePart2(model))),
+                    single.get(2));
+        } finally {
+            Day01.deleteRecursively(directory);
         }
-        if (currentGroup.size() == 3) {
-            groups.add(Collections.unmodifiableList(currentGroup));
+    }
+
+    @Test
+    public final void testRunnerReportsCachedAnswers() throws IOException {
+        final var directory = Files.createTempDirectory("day-03-runner");
+        try {
+            // given
+            final var file = InputGenerator.write(3, InputGenerator.forDay(3, 1), 4, directory);
+            final var cache = directory.resolve("cache").toString();
+            final var first = runRunner("--input", file.toString(), "--cache", cache, "3");
+
+            // when
+            final var second = runRunner("--input", file.toString(), "--cache", cache, "--cache-size", "4096", "3");
+
+            // then
+            Assertions.assertEquals(List.of("hash", "parse", "part1", "part2", "total"), phases(first));
+            Assertions.assertEquals(List.of("hash", "part1", "part2", "total"), phases(second));
+            Assertions.assertFalse(first.get(2).contains("\"cached\""));
+            Assertions.assertTrue(second.get(1).endsWith(",\"cached\":true}"), second.get(1));
+            Assertions.assertEquals(first.get(2).replaceAll(".*(\"result\":\"[^\"]*\").*", "$1"),
+                    second.get(1).replaceAll(".*(\"result\":\"[^\"]*\").*", "$1"));
+        } finally {
+            Day01.deleteRecursively(directory);
         }
-        final var result = groups.stream().map(this::getBadge).mapToInt(Day03::priority).sum();
+    }
 
-        System.out.println("Part 2: " + result);
+    @Test
+    public final void testRunnerRejectsInvalidArguments() throws IOException {
+        final var file = Files.createTempFile("day-03", ".txt");
+        try {
+            Assertions.assertThrows(IllegalArgumentException.class,
+                    () -> runRunner("--input", file.toString(), "1", "3"));
+            Assertions.assertThrows(IllegalArgumentException.class, () -> runRunner("--parts", "1,3", "3"));
+            Assertions.assertThrows(IllegalArgumentException.class, () -> runRunner("--input"));
+            Assertions.assertThrows(IllegalArgumentException.class, () -> runRunner("--bogus", "3"));
+            Assertions.assertThrows(IllegalArgumentException.class, () -> runRunner("3", "--parts", "1"));
+        } finally {
+            Files.delete(file);
+        }
     }
 
-    protected char getBadge(final List<? extends Rucksack> group) {
-        final var first = group.get(0);
-        for (final var item : first.allItems()) {
-            if (group.get(1).allItems().contains(item) && group.get(2).allItems().contains(item)) {
-                return item;
-            }
+    @Test
+    public final void testRunnerEscapesResults() {
+        // given
+        final var builder = new StringBuilder();
+
+        // when
+        Runner.appendString(builder, "a\"b\\c\nd\re\tf\u0001");
+
+        // then
+        Assertions.assertEquals("\"a\\\"b\\\\c\\nd\\re\\tf\\u0001\"", builder.toString());
+    }
+
+    /**
+     * @return each line that the {@link Runner} prints for the command-line arguments
+     */
+    protected static List<String> runRunner(final String... arguments) {
+        final var bytes = new ByteArrayOutputStream();
+        Runner.run(new PrintStream(bytes, true, StandardCharsets.UTF_8), arguments);
+        return bytes.toString(StandardCharsets.UTF_8).lines().toList();
+    }
+
+    /**
+     * @return the phase named by each line of the {@link Runner}'s output
+     */
+    protected static List<String> phases(final List<String> lines) {
+        final var pattern = Pattern.compile("\"phase\":\"([^\"]+)\"");
+        return lines.stream()
+                .map(line -> pattern.matcher(line).results().findFirst().orElseThrow().group(1))
+                .toList();
+    }
+
+    /**
+     * @param result the expected answer, or null if the line should not report one
+     * @return a regular expression matching the line that the {@link Runner} prints for a phase
+     */
+    protected static String measurementPattern(final int day, final String phase, final Object result) {
+        final var prefix = "\\{\"day\":" + day + ",\"phase\":\"" + phase + "\","
+                + "\"nanos\":\\d+,\"allocatedBytes\":-?\\d+,\"peakHeapBytes\":\\d+";
+        return result == null ? prefix + "}" : prefix + ",\"result\":\"" + Pattern.quote(result.toString()) + "\"}";
+    }
+
+    @Test
+    public final void testRucksacksSplitOnGroups() {
+        // given
+        final var rucksacks = new Rucksacks();
+        for (int i = 0; i < 14 * 3; i++) {
+            final var line = "aA".getBytes(StandardCharsets.US_ASCII);
+            rucksacks.visit(ByteBuffer.wrap(line), 0, line.length);
+        }
+        final var suffix = rucksacks.spliterator();
+
+        // when
+        final var prefix = suffix.trySplit();
+
+        // then
+        Assertions.assertNotNull(prefix);
+        Assertions.assertEquals(0, prefix.getExactSizeIfKnown() % 3);
+        Assertions.assertEquals(rucksacks.size(), prefix.getExactSizeIfKnown() + suffix.getExactSizeIfKnown());
+    }
+
+    @Test
+    public final void testChunksSplitOnChunkBoundary() {
+        // given
+        final var source = IntStream.range(0, 12).boxed().toList().spliterator();
+        final var suffix = new ChunkSpliterator<>(source, 3);
+
+        // when
+        final var prefix = suffix.trySplit();
+
+        // then
+        Assertions.assertNotNull(prefix);
+        Assertions.assertEquals(List.of(List.of(0, 1, 2), List.of(3, 4, 5)), drain(prefix));
+        Assertions.assertEquals(List.of(List.of(6, 7, 8), List.of(9, 10, 11)), drain(suffix));
+    }
+
+    @Test
+    public final void testChunksBorrowAcrossSplit() {
+        // given
+        final var source = IntStream.range(0, 15).boxed().toList().spliterator();
+        final var suffix = new ChunkSpliterator<>(source, 3);
+
+        // when
+        final var prefix = suffix.trySplit();
+
+        // then
+        Assertions.assertNotNull(prefix);
+        Assertions.assertEquals(List.of(List.of(0, 1, 2), List.of(3, 4, 5), List.of(6, 7, 8)), drain(prefix));
+        Assertions.assertEquals(List.of(List.of(9, 10, 11), List.of(12, 13, 14)), drain(suffix));
+    }
+
+    @Test
+    public final void testChunksInParallel() {
+        // given
+        final var source = IntStream.range(0, 3_000).boxed().toList().spliterator();
+
+        // when
+        final var result = StreamSupport.stream(new ChunkSpliterator<>(source, 3), true).toList();
+
+        // then
+        Assertions.assertEquals(1_000, result.size());
+        for (int i = 0; i < result.size(); i++) {
+            Assertions.assertEquals(List.of(3 * i, 3 * i + 1, 3 * i + 2), result.get(i));
+        }
+    }
+
+    @Test
+    public final void testShortLastChunk() {
+        // given
+        final var source = IntStream.range(0, 10).boxed().toList().spliterator();
+        final var chunks = new ChunkSpliterator<>(source, 3);
+
+        // when
+        final var prefix = chunks.trySplit();
+
+        // then
+        Assertions.assertNotNull(prefix);
+        Assertions.assertEquals(List.of(List.of(0, 1, 2), List.of(3, 4, 5)), drain(prefix));
+        Assertions.assertThrows(IllegalStateException.class, () -> drain(chunks));
+    }
+
+    protected static <T> List<T> drain(final Spliterator<T> spliterator) {
+        final var result = new ArrayList<T>();
+        spliterator.forEachRemaining(result::add);
+        return result;
+    }
+
+    /**
+     * @param group the rucksacks of three Elves
+     * @return the priority of the only item type carried by all three Elves
+     */
+    protected int getBadge(final List<? extends Rucksack> group) {
+        long common = -1L;
+        for (final var rucksack : group) {
+            common &= rucksack.allItems();
+        }
+        if (Long.bitCount(common) != 1) {
+            throw new IllegalStateException("There should only be one item type common to the group");
+        }
+        return Long.numberOfTrailingZeros(common);
+    }
+
+    /**
+     * @return the priority of the only item type in both masks
+     */
+    protected static int commonItem(final long first, final long second) {
+        final var common = first & second;
+        if (Long.bitCount(common) != 1) {
+            throw new IllegalStateException("There should only be one common item between compartments");
         }
-        throw new IllegalStateException();
+        return Long.numberOfTrailingZeros(common);
     }
 
     /**
-     * An Elf's container of supplies for a jungle journey. "Each rucksack has two large compartments. All items of a
-     * given type are meant to go into exactly one of the two compartments."
+     * A single Elf's rucksack.
      *
-     * @param firstCompartment  All the items in one compartment
-     * @param secondCompartment All the items in one compartment
-     * @param allItems          All the items
+     * @param firstCompartment  the mask of the item types in one compartment
+     * @param secondCompartment the mask of the item types in the other compartment
      */
-    public record Rucksack(Set<Character> firstCompartment, Set<Character> secondCompartment, Set<Character> allItems) {
+    public record Rucksack(long firstCompartment, long secondCompartment) {
+        /**
+         * @return the mask of every item type in the rucksack
+         */
+        public long allItems() {
+            return firstCompartment() | secondCompartment();
+        }
 
-        public static Rucksack parse(final String line) {
-            final var chars = line.toCharArray();
-            if (chars.length % 2 != 0) {
-                throw new IllegalArgumentException();
-            }
-            final var firstCompartment = new HashSet<Character>(chars.length / 2);
-            final var secondCompartment = new HashSet<Character>(chars.length / 2);
-            for (int i = 0; i < chars.length / 2; i++) {
-                firstCompartment.add(chars[i]);
+        /**
+         * @return the priority of the only item type in both compartments
+         */
+        public int priority() {
+            return commonItem(firstCompartment(), secondCompartment());
+        }
+    }
+
+    /**
+     * Every Elf's container of supplies for a jungle journey. "Each rucksack has two large compartments. All items of
+     * a given type are meant to go into exactly one of the two compartments."
+     *
+     * <p>Each compartment is stored as a bit mask of the item types it holds, in which bit <em>n</em> is set if it
+     * holds the item type with priority <em>n</em>. Common items are found with bitwise operations and the masks of
+     * every rucksack share a single array, so no objects are created per rucksack.</p>
+     *
+     * <p>Both parts are solved from the same parsed model, so the masks are kept rather than folded as the lines are
+     * read. Memory therefore grows with the input, at 16 bytes per rucksack, and briefly doubles while the ranges
+     * parsed in parallel are {@link #concatenate(List) concatenated}. Grouping for part 2 is streamed over the kept
+     * masks by a {@link ChunkSpliterator}, which holds at most one group at a time.</p>
+     */
+    public static final class Rucksacks implements MappedInput.LineVisitor {
+        /**
+         * The most rucksacks whose masks fit in a single array
+         */
+        public static final int MAX_SIZE = (Integer.MAX_VALUE - 8) / 2;
+
+        private long[] compartments;
+        private int size;
+
+        public Rucksacks() {
+            this.compartments = new long[64];
+        }
+
+        /**
+         * Parse a range of the input, one rucksack per line.
+         *
+         * @param from the start of a line (inclusive)
+         * @param to   the start of a later line or the input size (exclusive)
+         */
+        public static Rucksacks of(final MappedInput input, final long from, final long to) {
+            final var result = new Rucksacks();
+            input.forEachLine(from, to, result);
+            return result;
+        }
+
+        /**
+         * @param parts rucksacks parsed from consecutive ranges of the input, in order; they are copied, so the parts
+         *              may be discarded afterwards
+         */
+        public static Rucksacks concatenate(final List<Rucksacks> parts) {
+            final var result = new Rucksacks();
+            final var total = parts.stream().mapToLong(part -> part.size).sum();
+            if (total > MAX_SIZE) {
+                throw new IllegalStateException("Too many rucksacks: " + total);
             }
-            for (int i = chars.length / 2; i < chars.length; i++) {
-                secondCompartment.add(chars[i]);
+            result.compartments = new long[(int) Math.max(1, total * 2)];
+            for (final var part : parts) {
+                System.arraycopy(part.compartments, 0, result.compartments, result.size * 2, part.size * 2);
+                result.size += part.size;
             }
-            final var union = new HashSet<Character>(chars.length);
-            union.addAll(firstCompartment);
-            union.addAll(secondCompartment);
-            return new Rucksack(Collections.unmodifiableSet(firstCompartment),
-                    Collections.unmodifiableSet(secondCompartment),
-                    Collections.unmodifiableSet(union));
+            return result;
         }
 
-        public int priority() {
-            final var intersection = new HashSet<Character>();
-            for (final char c : firstCompartment) {
-                if (secondCompartment.contains(c)) {
-                    intersection.add(c);
+        public void visit(final ByteBuffer buffer, int start, int end) {
+            while (start < end && MappedInput.isBlank(buffer.get(start))) {
+                start++;
+            }
+            while (end > start && MappedInput.isBlank(buffer.get(end - 1))) {
+                end--;
+            }
+            if (start == end) {
+                return;
+            }
+            final var length = end - start;
+            if (length % 2 != 0) {
+                throw new IllegalArgumentException("Compartments must be the same size at index " + start);
+            }
+            long first = 0;
+            long second = 0;
+            final var middle = start + length / 2;
+            for (int i = start; i < middle; i++) {
+                first |= 1L << Day03.priority((char) buffer.get(i));
+            }
+            for (int i = middle; i < end; i++) {
+                second |= 1L << Day03.priority((char) buffer.get(i));
+            }
+            if (size * 2 == compartments.length) {
+                if (size == MAX_SIZE) {
+                    throw new IllegalStateException("Too many rucksacks: " + size);
                 }
+                compartments = Arrays.copyOf(compartments, (int) Math.min(compartments.length * 2L, MAX_SIZE * 2L));
+            }
+            compartments[size * 2] = first;
+            compartments[size * 2 + 1] = second;
+            size++;
+        }
+
+        /**
+         * @return the number of rucksacks
+         */
+        public int size() {
+            return size;
+        }
+
+        public long firstCompartment(final int index) {
+            Objects.checkIndex(index, size);
+            return compartments[index * 2];
+        }
+
+        public long secondCompartment(final int index) {
+            Objects.checkIndex(index, size);
+            return compartments[index * 2 + 1];
+        }
+
+        /**
+         * @return the priority of the only item type in both of the rucksack's compartments
+         */
+        public int priority(final int index) {
+            return commonItem(firstCompartment(index), secondCompartment(index));
+        }
+
+        public Rucksack get(final int index) {
+            return new Rucksack(firstCompartment(index), secondCompartment(index));
+        }
+
+        /**
+         * @return every rucksack, in input order; splits fall on a multiple of three rucksacks so that no group of
+         * Elves is divided
+         */
+        public Spliterator<Rucksack> spliterator() {
+            return new RucksackSpliterator(this, 0, size);
+        }
+    }
+
+    /**
+     * A {@link Spliterator} over a range of {@link Rucksacks} by index.
+     */
+    protected static final class RucksackSpliterator implements Spliterator<Rucksack> {
+        private final Rucksacks rucksacks;
+        private int position;
+        private final int end;
+
+        /**
+         * @param position the index of the first rucksack (inclusive)
+         * @param end      the index after the last rucksack (exclusive)
+         */
+        public RucksackSpliterator(final Rucksacks rucksacks, final int position, final int end) {
+            this.rucksacks = rucksacks;
+            this.position = position;
+            this.end = end;
+        }
+
+        public boolean tryAdvance(final Consumer<? super Rucksack> action) {
+            if (position >= end) {
+                return false;
             }
-            if (intersection.size() != 1) {
-                throw new IllegalStateException("There should only be one common item between compartments");
+            action.accept(rucksacks.get(position++));
+            return true;
+        }
+
+        public Spliterator<Rucksack> trySplit() {
+            final var split = position + (end - position) / 6 * 3;
+            if (split <= position) {
+                return null;
+            }
+            final var prefix = new RucksackSpliterator(rucksacks, position, split);
+            position = split;
+            return prefix;
+        }
+
+        public long estimateSize() {
+            return end - position;
+        }
+
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | IMMUTABLE | NONNULL;
+        }
+    }
+
+    /**
+     * Generates rucksacks in groups of three. Each rucksack has exactly one item type in both compartments and each
+     * group has exactly one item type, its badge, that all three Elves carry.
+     *
+     * @param groups             the number of groups of three Elves
+     * @param maxCompartmentSize the most items in a single compartment, at least 2
+     */
+    public record Generator(int groups, int maxCompartmentSize) implements InputGenerator {
+        private static final char[] ITEMS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ".toCharArray();
+
+        public Generator {
+            if (maxCompartmentSize < 2) {
+                throw new IllegalArgumentException("Compartments must hold at least two items");
             }
-            return Day03.priority(intersection.iterator().next());
         }
 
+        public static Generator atScale(final int scale) {
+            return new Generator(100 * scale, 24);
+        }
 
+        public void generate(final SplittableRandom random, final Writer output) throws IOException {
+            final var line = new StringBuilder(maxCompartmentSize() * 2);
+            for (int g = groups(); --g >= 0; ) {
+                final var badge = ITEMS[random.nextInt(ITEMS.length)];
+                // every other item type is permitted in some, but never all, of the group's rucksacks
+                final var permitted = new int[ITEMS.length];
+                for (int i = ITEMS.length; --i >= 0; ) {
+                    permitted[i] = ITEMS[i] == badge ? 0b111 : random.nextInt(1, 0b111);
+                }
+                for (int elf = 0; elf < 3; elf++) {
+                    final var candidates = new ArrayList<Character>();
+                    for (int i = 0; i < ITEMS.length; i++) {
+                        if ((permitted[i] & (1 << elf)) != 0 && ITEMS[i] != badge) {
+                            candidates.add(ITEMS[i]);
+                        }
+                    }
+                    Collections.shuffle(candidates, new Random(random.nextLong()));
+                    // the item in both compartments, and the items that may only appear in one or the other
+                    final var common = candidates.isEmpty() || random.nextInt(4) == 0
+                            ? badge
+                            : candidates.remove(candidates.size() - 1);
+                    final var split = random.nextInt(candidates.size() + 1);
+                    final var first = new ArrayList<>(candidates.subList(0, split));
+                    final var second = new ArrayList<>(candidates.subList(split, candidates.size()));
+                    if (common != badge) {
+                        first.add(badge);
+                    }
+                    final var size = random.nextInt(2, maxCompartmentSize() + 1);
+                    line.setLength(0);
+                    appendCompartment(random, line, size, common, common == badge ? null : badge, first);
+                    appendCompartment(random, line, size, common, null, second);
+                    output.write(line.toString());
+                    output.write('\n');
+                }
+            }
+        }
+
+        protected void appendCompartment(final SplittableRandom random, final StringBuilder line, final int size,
+                                         final char common, final Character required,
+                                         final List<? extends Character> others) {
+            final var items = new char[size];
+            items[0] = common;
+            int i = 1;
+            if (required != null) {
+                items[i++] = required;
+            }
+            while (i < size) {
+                items[i++] = others.isEmpty() ? common : others.get(random.nextInt(others.size()));
+            }
+            for (int j = size; --j > 0; ) {
+                final var k = random.nextInt(j + 1);
+                final var swap = items[j];
+                items[j] = items[k];
+                items[k] = swap;
+            }
+            line.append(items);
+        }
     }
+
 }
\ No newline at end of file
@@ -1,15 +1,31 @@
 package com.macasaet;
 
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
-import java.util.stream.Stream;
-import java.util.stream.StreamSupport;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
 /**
  * --- Day 4: Camp Cleanup ---
  * <a href="https://adventofcode.com/2022/day/4">https://adventofcode.com/2022/day/4</a>
  */
-public class Day04 {
+public class Day04 implements Puzzle<Day04.Assignments> {
+
+    /**
+     * The smallest range of the input worth handing to another thread
+     */
+    protected static final long MIN_RANGE_BYTES = 1 << 20;
 
     /**
      * One crew member responsible for cleaning up the camp. They are responsible for a contiguous range of sections.
@@ -23,9 +39,17 @@ public class Day04 {
             return sectionMin() <= other.sectionMin() && sectionMax() >= other.sectionMax();
         }
 
-        public static Elf parse(final String string) {
-            final var components = string.split("-");
-            return new Elf(Integer.parseInt(components[0]), Integer.parseInt(components[1]));
+        public static Elf parse(final CharSequence string) {
+            return parse(string, 0, string.length());
+        }
+
+        static Elf parse(final CharSequence string, final int beginIndex, final int endIndex) {
+            int separator = beginIndex + 1; // skip any sign
+            while (string.charAt(separator) != '-') {
+                separator++;
+            }
+            return new Elf(Integer.parseInt(string, beginIndex, separator, 10),
+                    Integer.parseInt(string, separator + 1, endIndex, 10));
         }
     }
 
@@ -40,30 +64,385 @@ public class Day04 {
             return (left.sectionMin() <= right.sectionMin() && left.sectionMax() >= right.sectionMin())
                     || (right.sectionMin() <= left.sectionMin() && right.sectionMax() >= left.sectionMin());
         }
-        public static Pair parse(final String line) {
-            final var components = line.split(",");
-            return new Pair(Elf.parse(components[0]), Elf.parse(components[1]));
+        public static Pair parse(final CharSequence line) {
+            int separator = 0;
+            while (line.charAt(separator) != ',') {
+                separator++;
+            }
+            return new Pair(Elf.parse(line, 0, separator), Elf.parse(line, separator + 1, line.length()));
         }
     }
-    protected Stream<Pair> getInput() {
-        return StreamSupport
-                .stream(new LineSpliterator("day-04.txt"),
-                        false)
-                .map(Pair::parse);
+
+    /**
+     * An index over the assignments of an entire crew that answers questions about every pair of Elves, not just
+     * those listed together, without comparing each Elf to every other. Building the index sorts the assignments,
+     * and the crew-wide counts are each a single sweep over them, so every query is <em>O(n log n)</em> or better.
+     */
+    public static class Crew {
+        private final Elf[] byMin;
+        private final int[] mins;
+        private final int[] maxes;
+
+        public Crew(final List<? extends Elf> elves) {
+            this.byMin = elves.toArray(new Elf[0]);
+            // for containment, an Elf must come before any Elf it contains
+            Arrays.sort(byMin, Comparator.comparingInt(Elf::sectionMin)
+                    .thenComparing(Comparator.comparingInt(Elf::sectionMax).reversed()));
+            this.mins = new int[byMin.length];
+            this.maxes = new int[byMin.length];
+            for (int i = byMin.length; --i >= 0; ) {
+                mins[i] = byMin[i].sectionMin();
+                maxes[i] = byMin[i].sectionMax();
+            }
+            Arrays.sort(maxes);
+        }
+
+        /**
+         * @return the number of Elves in the crew
+         */
+        public int size() {
+            return byMin.length;
+        }
+
+        /**
+         * @return the number of pairs of Elves whose assignments share at least one section
+         */
+        public long overlappingPairs() {
+            // every disjoint pair has exactly one Elf that finishes before the other starts
+            long disjoint = 0;
+            for (final var min : mins) {
+                disjoint += countBelow(maxes, min);
+            }
+            final long n = size();
+            return n * (n - 1) / 2 - disjoint;
+        }
+
+        /**
+         * @return the number of pairs of Elves in which one's assignment fully contains the other's
+         */
+        public long containingPairs() {
+            // Sweep in order of starting section. Every Elf already seen starts no later than the current one, so it
+            // contains the current one if it also finishes no earlier. Ties are broken so that a container is always
+            // seen first, which counts each pair exactly once.
+            final var rank = distinctMaxes();
+            final var tree = new int[rank.length + 1];
+            long result = 0;
+            for (int i = 0; i < byMin.length; i++) {
+                final var position = Arrays.binarySearch(rank, byMin[i].sectionMax());
+                result += i - prefixSum(tree, position);
+                for (int j = position + 1; j < tree.length; j += j & -j) {
+                    tree[j]++;
+                }
+            }
+            return result;
+        }
+
+        /**
+         * @param elf any assignment, whether or not it belongs to the crew
+         * @return the number of Elves in the crew whose assignments share at least one section with it, including the
+         * Elf itself if it is in the crew
+         */
+        public int overlapping(final Elf elf) {
+            return size() - countBelow(maxes, elf.sectionMin()) - (size() - countBelow(mins, elf.sectionMax() + 1L));
+        }
+
+        /**
+         * @return the distinct last sections, in ascending order
+         */
+        protected int[] distinctMaxes() {
+            final var result = new int[maxes.length];
+            int count = 0;
+            for (final var max : maxes) {
+                if (count == 0 || result[count - 1] != max) {
+                    result[count++] = max;
+                }
+            }
+            return Arrays.copyOf(result, count);
+        }
+
+        /**
+         * @return the number of elements added to a Fenwick tree at zero-based positions below <code>position</code>
+         */
+        protected static int prefixSum(final int[] tree, final int position) {
+            int result = 0;
+            for (int j = position; j > 0; j -= j & -j) {
+                result += tree[j];
+            }
+            return result;
+        }
+
+        /**
+         * @param sorted values in ascending order
+         * @return the number of values strictly less than <code>value</code>
+         */
+        protected static int countBelow(final int[] sorted, final long value) {
+            int low = 0;
+            int high = sorted.length;
+            while (low < high) {
+                final var mid = (low + high) >>> 1;
+                if (sorted[mid] < value) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+
+    /**
+     * The section assignments of every pair of Elves, decoded straight from the input bytes into one primitive array
+     * per column so that each part is a single pass over contiguous memory.
+     */
+    public static final class Assignments implements MappedInput.LineVisitor {
+        private int[] leftMins = new int[64];
+        private int[] leftMaxes = new int[64];
+        private int[] rightMins = new int[64];
+        private int[] rightMaxes = new int[64];
+        private int size;
+
+        /**
+         * Parse a range of the input, one pair per line.
+         *
+         * @param from the start of a line (inclusive)
+         * @param to   the start of a later line or the input size (exclusive)
+         */
+        public static Assignments of(final MappedInput input, final long from, final long to) {
+            final var result = new Assignments();
+            input.forEachLine(from, to, result);
+            return result;
+        }
+
+        /**
+         * @param parts assignments parsed from consecutive ranges of the input, in order
+         */
+        public static Assignments concatenate(final List<Assignments> parts) {
+            final var result = new Assignments();
+            result.ensureCapacity(parts.stream().mapToInt(Assignments::size).sum());
+            for (final var part : parts) {
+                System.arraycopy(part.leftMins, 0, result.leftMins, result.size, part.size);
+                System.arraycopy(part.leftMaxes, 0, result.leftMaxes, result.size, part.size);
+                System.arraycopy(part.rightMins, 0, result.rightMins, result.size, part.size);
+                System.arraycopy(part.rightMaxes, 0, result.rightMaxes, result.size, part.size);
+                result.size += part.size;
+            }
+            return result;
+        }
+
+        public void visit(final ByteBuffer buffer, int start, int end) {
+            while (start < end && MappedInput.isBlank(buffer.get(start))) {
+                start++;
+            }
+            while (end > start && MappedInput.isBlank(buffer.get(end - 1))) {
+                end--;
+            }
+            if (start == end) {
+                return;
+            }
+            final var comma = indexOf(buffer, ',', start, end);
+            final var leftDash = indexOf(buffer, '-', start + 1, comma); // skip any sign
+            final var rightDash = indexOf(buffer, '-', comma + 2, end);
+            ensureCapacity(size + 1);
+            leftMins[size] = MappedInput.parseInt(buffer, start, leftDash);
+            leftMaxes[size] = MappedInput.parseInt(buffer, leftDash + 1, comma);
+            rightMins[size] = MappedInput.parseInt(buffer, comma + 1, rightDash);
+            rightMaxes[size] = MappedInput.parseInt(buffer, rightDash + 1, end);
+            size++;
+        }
+
+        /**
+         * @return the number of pairs
+         */
+        public int size() {
+            return size;
+        }
+
+        public Pair get(final int index) {
+            Objects.checkIndex(index, size);
+            return new Pair(new Elf(leftMins[index], leftMaxes[index]), new Elf(rightMins[index], rightMaxes[index]));
+        }
+
+        /**
+         * @return the number of pairs in which one Elf's assignment fully contains the other's
+         */
+        public long countContaining() {
+            final var leftMins = this.leftMins;
+            final var leftMaxes = this.leftMaxes;
+            final var rightMins = this.rightMins;
+            final var rightMaxes = this.rightMaxes;
+            long result = 0;
+            for (int i = 0; i < size; i++) {
+                // each is negative unless that Elf's range contains the other's
+                final var left = ((long) rightMins[i] - leftMins[i]) | ((long) leftMaxes[i] - rightMaxes[i]);
+                final var right = ((long) leftMins[i] - rightMins[i]) | ((long) rightMaxes[i] - leftMaxes[i]);
+                result += 1 ^ ((left & right) >>> 63);
+            }
+            return result;
+        }
+
+        /**
+         * @return the number of pairs whose assignments share at least one section
+         */
+        public long countOverlapping() {
+            final var leftMins = this.leftMins;
+            final var leftMaxes = this.leftMaxes;
+            final var rightMins = this.rightMins;
+            final var rightMaxes = this.rightMaxes;
+            long result = 0;
+            for (int i = 0; i < size; i++) {
+                result += 1 ^ ((((long) rightMaxes[i] - leftMins[i]) | ((long) leftMaxes[i] - rightMins[i])) >>> 63);
+            }
+            return result;
+        }
+
+        protected void ensureCapacity(final int capacity) {
+            if (capacity <= leftMins.length) {
+                return;
+            }
+            final var length = Math.max(capacity, leftMins.length * 2);
+            leftMins = Arrays.copyOf(leftMins, length);
+            leftMaxes = Arrays.copyOf(leftMaxes, length);
+            rightMins = Arrays.copyOf(rightMins, length);
+            rightMaxes = Arrays.copyOf(rightMaxes, length);
+        }
+
+        protected static int indexOf(final ByteBuffer buffer, final char c, final int from, final int to) {
+            for (int i = from; i < to; i++) {
+                if (buffer.get(i) == c) {
+                    return i;
+                }
+            }
+            throw new IllegalArgumentException("Expected '" + c + "' between indices " + from + " and " + to);
+        }
+    }
+
+    protected Assignments getInput() {
+        return parse(MappedInput.open("day-04.txt"));
+    }
+
+    public Assignments parse(final MappedInput input) {
+        final var ranges = input.lineRanges(MIN_RANGE_BYTES, 4 * ForkJoinPool.getCommonPoolParallelism());
+        if (ranges.length == 2) {
+            return Assignments.of(input, 0, input.size());
+        }
+        final var parts = IntStream.range(0, ranges.length - 1)
+                .parallel()
+                .mapToObj(i -> Assignments.of(input, ranges[i], ranges[i + 1]))
+                .toList();
+        return Assignments.concatenate(parts);
+    }
+
+    public Long solvePart1(final Assignments assignments) {
+        return assignments.countContaining();
+    }
+
+    public Long solvePart2(final Assignments assignments) {
+        return assignments.countOverlapping();
     }
 
     @Test
     public final void part1() {
-        final var result = getInput().filter(Pair::oneFullyContainsTheOther).count();
+        final var result = solvePart1(getInput());
 
         System.out.println("Part 1: " + result);
     }
 
     @Test
     public final void part2() {
-        final var result = getInput().filter(Pair::hasOverlap).count();
+        final var result = solvePart2(getInput());
 
         System.out.println("Part 2: " + result);
     }
 
+    @Test
+    public final void testCrewMatchesAllPairs() {
+        // given
+        final var random = new SplittableRandom(4);
+        for (int trial = 0; trial < 50; trial++) {
+            final var elves = new ArrayList<Elf>();
+            for (int i = random.nextInt(0, 200); --i >= 0; ) {
+                final var min = random.nextInt(1, 30);
+                elves.add(new Elf(min, random.nextInt(min, 30)));
+            }
+
+            // when
+            final var crew = new Crew(elves);
+
+            // then
+            long overlapping = 0;
+            long containing = 0;
+            for (int i = 0; i < elves.size(); i++) {
+                for (int j = i + 1; j < elves.size(); j++) {
+                    final var pair = new Pair(elves.get(i), elves.get(j));
+                    overlapping += pair.hasOverlap() ? 1 : 0;
+                    containing += pair.oneFullyContainsTheOther() ? 1 : 0;
+                }
+            }
+            Assertions.assertEquals(overlapping, crew.overlappingPairs());
+            Assertions.assertEquals(containing, crew.containingPairs());
+            for (final var elf : elves) {
+                final var expected = elves.stream().filter(other -> new Pair(elf, other).hasOverlap()).count();
+                Assertions.assertEquals(expected, crew.overlapping(elf));
+            }
+        }
+    }
+
+    @Test
+    public final void testOverlappingAtLastSection() {
+        // given
+        final var crew = new Crew(List.of(new Elf(1, Integer.MAX_VALUE), new Elf(Integer.MAX_VALUE, Integer.MAX_VALUE),
+                new Elf(1, 2)));
+
+        // when
+        final var result = crew.overlapping(new Elf(Integer.MAX_VALUE, Integer.MAX_VALUE));
+
+        // then
+        Assertions.assertEquals(2, result);
+    }
+
+    @Test
+    public final void testCarriageReturns() {
+        // given
+        final var input = MappedInput.wrap("2-4,6-8\r\n2-8,3-7\r\n 6-6,4-6 \r\n".getBytes(StandardCharsets.US_ASCII));
+
+        // when
+        final var assignments = parse(input);
+
+        // then
+        Assertions.assertEquals(3, assignments.size());
+        Assertions.assertEquals(new Pair(new Elf(6, 6), new Elf(4, 6)), assignments.get(2));
+        Assertions.assertEquals(2L, solvePart1(assignments));
+        // only the whitespace that MappedInput treats as blank is trimmed
+        Assertions.assertThrows(NumberFormatException.class,
+                () -> parse(MappedInput.wrap("2-4,6-8\f\n".getBytes(StandardCharsets.US_ASCII))));
+    }
+
+    /**
+     * Generates section assignments for an arbitrary number of pairs of Elves.
+     *
+     * @param pairs      the number of pairs
+     * @param maxSection the highest section ID
+     */
+    public record Generator(int pairs, int maxSection) implements InputGenerator {
+        public static Generator atScale(final int scale) {
+            return new Generator(1_000 * scale, 99);
+        }
+
+        public void generate(final SplittableRandom random, final Writer output) throws IOException {
+            final var line = new StringBuilder();
+            for (int i = pairs(); --i >= 0; ) {
+                line.setLength(0);
+                appendRange(random, line);
+                line.append(',');
+                appendRange(random, line);
+                output.write(line.append('\n').toString());
+            }
+        }
+
+        protected void appendRange(final SplittableRandom random, final StringBuilder line) {
+            final var min = random.nextInt(1, maxSection() + 1);
+            line.append(min).append('-').append(random.nextInt(min, maxSection() + 1));
+        }
+    }
+
 }
\ No newline at end of file
@@ -1,139 +1,695 @@
 package com.macasaet;
 
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
-import java.util.Deque;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
-import java.util.stream.Stream;
-import java.util.stream.StreamSupport;
+import java.util.List;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.SplittableRandom;
+import java.util.stream.Collectors;
 
 /**
  * --- Day 5: Supply Stacks ---
  * <a href="https://adventofcode.com/2022/day/5">https://adventofcode.com/2022/day/5</a>
  */
-public class Day05 {
+public class Day05 implements Puzzle<Day05.Procedure> {
 
-    public record CrateMover9000Instruction(int count, int from, int to) {
-        public static CrateMover9000Instruction parse(final String line) {
-            final var components = line.split(" ");
-            final var count = Integer.parseInt(components[1]);
-            final var from = Integer.parseInt(components[3]) - 1;
-            final var to = Integer.parseInt(components[5]) - 1;
-            return new CrateMover9000Instruction(count, from, to);
+    /**
+     * How to find the crates that end up on top
+     */
+    public enum Mode {
+        /**
+         * Move every crate, at a cost proportional to the number of crates moved
+         */
+        SIMULATE,
+        /**
+         * Follow only the final top crates back through the procedure to where they started, at a cost proportional
+         * to the number of columns times the number of moves
+         */
+        TRACE
+    }
+
+    private Mode mode = Mode.SIMULATE;
+
+    /**
+     * @return a solver that uses the given mode rather than {@link Mode#SIMULATE}
+     */
+    public static Day05 withMode(final Mode mode) {
+        Objects.requireNonNull(mode);
+        final var result = new Day05();
+        result.mode = mode;
+        return result;
+    }
+
+    /**
+     * Receives a single step of the rearrangement procedure without creating any objects.
+     */
+    @FunctionalInterface
+    public interface MoveVisitor {
+        /**
+         * @param count the number of crates to move
+         * @param from  the index of the column from which to take the crates
+         * @param to    the index of the column onto which to place the crates
+         */
+        void visit(int count, int from, int to);
+    }
+
+    /**
+     * The columns of crates as they are rearranged. Each column is a <code>char[]</code> ordered from bottom to top
+     * along with its height, so moving crates is a single array copy rather than one operation per crate.
+     */
+    public static final class Stacks {
+        private final char[][] columns;
+        private final int[] heights;
+
+        /**
+         * @param columns the crates initially in each column, listed from top to bottom
+         */
+        public Stacks(final List<String> columns) {
+            this.columns = new char[columns.size()][];
+            this.heights = new int[columns.size()];
+            for(int i = this.columns.length; --i >= 0; ) {
+                final var column = new StringBuilder(columns.get(i)).reverse();
+                this.columns[i] = new char[Math.max(16, column.length() * 2)];
+                column.getChars(0, column.length(), this.columns[i], 0);
+                heights[i] = column.length();
+            }
         }
-        public void execute(final Deque<Character>[] columns) {
-            final Deque<Character> from = columns[from()];
-            final Deque<Character> to = columns[to()];
-            for(int i = count(); --i >= 0; ) {
-                to.push(from.pop());
+
+        /**
+         * Move crates one at a time, as the CrateMover 9000 does, which reverses their order.
+         */
+        public void moveOneAtATime(final int count, final int from, final int to) {
+            final var source = take(count, from);
+            if(from == to) {
+                // each crate is put straight back where it was
+                heights[from] += count;
+                return;
             }
+            final var target = makeRoom(count, to);
+            final var sourceTop = heights[from] + count - 1;
+            final var targetBottom = heights[to];
+            for(int i = 0; i < count; i++) {
+                target[targetBottom + i] = source[sourceTop - i];
+            }
+            heights[to] += count;
         }
-    }
 
-    public record CrateMover9001Instruction(int count, int from, int to) {
-        public static CrateMover9001Instruction parse(final String line) {
-            final var components = line.split(" ");
-            final var count = Integer.parseInt(components[1]);
-            final var from = Integer.parseInt(components[3]) - 1;
-            final var to = Integer.parseInt(components[5]) - 1;
-            return new CrateMover9001Instruction(count, from, to);
+        /**
+         * Move crates all at once, as the CrateMover 9001 does, which preserves their order.
+         */
+        public void moveTogether(final int count, final int from, final int to) {
+            final var source = take(count, from);
+            final var target = makeRoom(count, to);
+            System.arraycopy(source, heights[from], target, heights[to], count);
+            heights[to] += count;
         }
-        public void execute(final Deque<Character>[] columns) {
-            final Deque<Character> from = columns[from()];
-            final Deque<Character> to = columns[to()];
-            final var buffer = new LinkedList<Character>();
-            for(int i = count(); --i >= 0; ) {
-                buffer.push(from.pop());
+
+        /**
+         * @return the crate on top of each column, skipping empty columns
+         */
+        public String topCrates() {
+            final var builder = new StringBuilder(columns.length);
+            for(int i = 0; i < columns.length; i++) {
+                if(heights[i] > 0) {
+                    builder.append(columns[i][heights[i] - 1]);
+                }
             }
-            while(!buffer.isEmpty()) {
-                to.push(buffer.pop());
+            return builder.toString();
+        }
+
+        /**
+         * Lower the column by <code>count</code> crates, which remain in the array just above its new height.
+         */
+        protected char[] take(final int count, final int from) {
+            if(count < 0 || count > heights[from]) {
+                throw new IllegalStateException("Cannot move " + count + " crates from column " + (from + 1)
+                        + ", which has " + heights[from]);
             }
+            heights[from] -= count;
+            return columns[from];
+        }
+
+        protected char[] makeRoom(final int count, final int to) {
+            final var required = heights[to] + count;
+            if(required > columns[to].length) {
+                columns[to] = Arrays.copyOf(columns[to], Math.max(required, columns[to].length * 2));
+            }
+            return columns[to];
         }
-    }
-    protected Stream<String> getInput() {
-        return StreamSupport
-                .stream(new LineSpliterator("day-05.txt"),
-                        false);
     }
 
-    @Test
-    public final void part1() {
-        int mode = 0;
-        final Deque<Character>[] columns = new Deque[9];
-        for(int i = columns.length; --i >= 0; columns[i] = new LinkedList<>());
-        for(final var line : getInput().toList()) {
-            if(line.isBlank()) {
-                mode = 1;
-            }
-            if( mode == 0 ) {
-                final var chars = line.toCharArray();
-                int index = -1;
-                for(int i = 0; i < chars.length; i++) {
-                    if(chars[i] == '[') {
-                        index = i / 4;
-                    } else if(index >= 0) {
-                        columns[index].addLast(chars[i]);
-                        index = -1;
+    /**
+     * The starting arrangement of crates along with the steps to rearrange them. The steps are not held in memory but
+     * are decoded from the input each time they are visited, so memory use is proportional to the number of crates
+     * rather than the number of steps.
+     *
+     * @param columns    the crates initially in each column, listed from top to bottom
+     * @param input      the puzzle input
+     * @param movesStart the offset of the first line of the rearrangement procedure
+     */
+    public record Procedure(List<String> columns, MappedInput input, long movesStart) {
+        Stacks createStacks() {
+            return new Stacks(columns());
+        }
+
+        /**
+         * Decode each step of the procedure, in order, straight from the input bytes.
+         */
+        public void forEachMove(final MoveVisitor visitor) {
+            final var numbers = new int[3];
+            input().forEachLine(movesStart(), input().size(), (buffer, start, end) -> {
+                // "move <count> from <column> to <column>"
+                int found = 0;
+                for(int i = start; i < end; ) {
+                    if(buffer.get(i) < '0' || buffer.get(i) > '9') {
+                        i++;
+                        continue;
                     }
+                    int j = i;
+                    while(j < end && buffer.get(j) >= '0' && buffer.get(j) <= '9') {
+                        j++;
+                    }
+                    if(found == numbers.length) {
+                        throw new IllegalArgumentException("Unexpected number at index " + i);
+                    }
+                    numbers[found++] = MappedInput.parseInt(buffer, i, j);
+                    i = j;
+                }
+                if(found == 0) {
+                    for(int i = start; i < end; i++) {
+                        if(!MappedInput.isBlank(buffer.get(i))) {
+                            throw new IllegalArgumentException("Invalid move at index " + start);
+                        }
+                    }
+                    return;
+                }
+                if(found != numbers.length) {
+                    throw new IllegalArgumentException("Incomplete move at index " + start);
+                }
+                for(int k = 1; k < numbers.length; k++) {
+                    if(numbers[k] < 1 || numbers[k] > columns().size()) {
+                        throw new IllegalArgumentException("No column " + numbers[k] + " for the move at index "
+                                + start);
+                    }
+                }
+                visitor.visit(numbers[0], numbers[1] - 1, numbers[2] - 1);
+            });
+        }
+    }
+
+    /**
+     * Finds the crates that end up on top without moving any. A forward pass over the procedure records each move and
+     * the final height of every column. Then, for each column that ends up with crates, the position of its top
+     * crate is followed backwards through the moves until it is a position in the starting arrangement.
+     */
+    protected static class Trace implements MoveVisitor {
+        private final int[] heights;
+        private int[] moves = new int[3 * 64];
+        private int size;
+
+        public Trace(final List<String> columns) {
+            this.heights = columns.stream().mapToInt(String::length).toArray();
+        }
+
+        public void visit(final int count, final int from, final int to) {
+            if(count < 0 || count > heights[from]) {
+                throw new IllegalStateException("Cannot move " + count + " crates from column " + (from + 1)
+                        + ", which has " + heights[from]);
+            }
+            heights[from] -= count;
+            heights[to] += count;
+            if(size + 3 > moves.length) {
+                moves = Arrays.copyOf(moves, moves.length * 2);
+            }
+            moves[size++] = count;
+            moves[size++] = from;
+            moves[size++] = to;
+        }
+
+        /**
+         * @param columns    the crates initially in each column, listed from top to bottom
+         * @param oneAtATime true if the crane reverses the order of the crates it moves
+         * @return the crate on top of each column, skipping empty columns
+         */
+        public String topCrates(final List<String> columns, final boolean oneAtATime) {
+            // the column and the depth below the top of each crate being followed
+            final var column = new int[heights.length];
+            final var depth = new int[heights.length];
+            int traced = 0;
+            for(int i = 0; i < heights.length; i++) {
+                if(heights[i] > 0) {
+                    column[traced++] = i;
                 }
-            } else {
-                if(line.isBlank()) {
+            }
+            for(int m = size; (m -= 3) >= 0; ) {
+                final var count = moves[m];
+                final var from = moves[m + 1];
+                final var to = moves[m + 2];
+                if(from == to) {
                     continue;
                 }
-                final var instruction = CrateMover9000Instruction.parse(line);
-                instruction.execute(columns);
+                for(int t = traced; --t >= 0; ) {
+                    if(column[t] == to) {
+                        if(depth[t] < count) {
+                            column[t] = from;
+                            depth[t] = oneAtATime ? count - 1 - depth[t] : depth[t];
+                        } else {
+                            depth[t] -= count;
+                        }
+                    } else if(column[t] == from) {
+                        depth[t] += count;
+                    }
+                }
+            }
+            final var builder = new StringBuilder(traced);
+            for(int t = 0; t < traced; t++) {
+                builder.append(columns.get(column[t]).charAt(depth[t]));
             }
+            return builder.toString();
         }
-        final var builder = new StringBuilder();
-        for(final var column : columns) {
-            if(!column.isEmpty()) {
-                builder.append(column.getFirst());
+    }
+
+    protected Procedure getInput() {
+        return parse(MappedInput.open("day-05.txt"));
+    }
+
+    /**
+     * Parse the drawing of the starting arrangement, which must begin on the first line of the input. The number of
+     * columns is taken from the row of labels beneath the crates, so there may be any number of them.
+     */
+    public Procedure parse(final MappedInput input) {
+        final var drawing = input.blocks()
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("No starting arrangement"))
+                .toString()
+                .lines()
+                .toList();
+        final var labels = drawing.get(drawing.size() - 1);
+        if(labels.indexOf('[') >= 0) {
+            throw new IllegalArgumentException("The drawing has no column labels");
+        }
+        // each column is four characters wide, less the gap after the last one, and its label starts one character in;
+        // measuring without trailing whitespace tolerates its removal and labels of up to four digits
+        final var columnCount = (labels.stripTrailing().length() + 2) / 4;
+        final var columns = new StringBuilder[columnCount];
+        for(int i = columns.length; --i >= 0; columns[i] = new StringBuilder());
+        for(final var line : drawing.subList(0, drawing.size() - 1)) {
+            for(int j = line.indexOf('['); j >= 0; j = line.indexOf('[', j + 1)) {
+                final var index = j / 4;
+                if(index >= columns.length || j + 1 >= line.length()) {
+                    throw new IllegalArgumentException("Crate outside of the labelled columns: " + line);
+                }
+                columns[index].append(line.charAt(j + 1));
             }
         }
-        final var result = builder.toString();
+        return new Procedure(Arrays.stream(columns).map(StringBuilder::toString).toList(),
+                input,
+                input.nextBlockStart(1)); // the drawing has no blank lines, so this is the line after it
+    }
+
+    public String solvePart1(final Procedure procedure) {
+        if(mode == Mode.TRACE) {
+            final var trace = new Trace(procedure.columns());
+            procedure.forEachMove(trace);
+            return trace.topCrates(procedure.columns(), true);
+        }
+        final var stacks = procedure.createStacks();
+        procedure.forEachMove(stacks::moveOneAtATime);
+        return stacks.topCrates();
+    }
+
+    public String solvePart2(final Procedure procedure) {
+        if(mode == Mode.TRACE) {
+            final var trace = new Trace(procedure.columns());
+            procedure.forEachMove(trace);
+            return trace.topCrates(procedure.columns(), false);
+        }
+        final var stacks = procedure.createStacks();
+        procedure.forEachMove(stacks::moveTogether);
+        return stacks.topCrates();
+    }
+
+    @Test
+    public final void part1() {
+        final var result = solvePart1(getInput());
 
         System.out.println("Part 1: " + result);
     }
 
     @Test
     public final void part2() {
-        int mode = 0;
-        final Deque<Character>[] columns = new Deque[9];
-        for(int i = columns.length; --i >= 0; columns[i] = new LinkedList<>());
-        for(final var line : getInput().toList()) {
-            if(line.isBlank()) {
-                mode = 1;
-            }
-            if( mode == 0 ) {
-                final var chars = line.toCharArray();
-                int index = -1;
-                for(int i = 0; i < chars.length; i++) {
-                    if(chars[i] == '[') {
-                        index = i / 4;
-                    } else if(index >= 0) {
-//                        System.err.println("column[ " + index + " ].addLast( " + chars[ i ] + " )" );
-                        columns[index].addLast(chars[i]);
-                        index = -1;
-                    }
+        final var result = solvePart2(getInput());
+
+        System.out.println("Part 2: " + result);
+    }
+
+    @Test
+    public final void testLineSplitsMatchSequential() throws IOException {
+        final var random = new SplittableRandom(20);
+        for(int trial = 0; trial < 20; trial++) {
+            // given
+            final var text = randomLines(random);
+            final var input = open(text, random.nextInt(128, 8_192));
+
+            // when
+            final var leaves = new ArrayList<List<String>>();
+            split(new MappedLineSpliterator(input), leaves);
+            final var indexed = new ArrayList<List<String>>();
+            split(new MappedLineSpliterator(input, input.lineIndex()), indexed);
+
+            // then
+            final var sequential = input.lines().map(AsciiSequence::toString).toList();
+            Assertions.assertEquals(expectedLines(text), sequential);
+            Assertions.assertTrue(leaves.size() > 1);
+            Assertions.assertEquals(sequential, leaves.stream().flatMap(List::stream).toList());
+            Assertions.assertEquals(sequential, indexed.stream().flatMap(List::stream).toList());
+            Assertions.assertEquals(sequential.size() + 1, input.lineIndex().length);
+            final var spliterator = new MappedLineSpliterator(input, input.lineIndex());
+            Assertions.assertTrue(spliterator.hasCharacteristics(Spliterator.SIZED));
+            Assertions.assertEquals(sequential.size(), spliterator.getExactSizeIfKnown());
+        }
+    }
+
+    @Test
+    public final void testBlockSplitsMatchSequential() throws IOException {
+        final var random = new SplittableRandom(21);
+        for(int trial = 0; trial < 20; trial++) {
+            // given
+            final var text = randomLines(random);
+            final var input = open(text, random.nextInt(128, 8_192));
+
+            // when
+            final var leaves = new ArrayList<List<String>>();
+            split(new MappedBlockSpliterator(input), leaves);
+
+            // then
+            final var sequential = input.blocks().map(AsciiSequence::toString).toList();
+            Assertions.assertEquals(expectedBlocks(text), sequential);
+            Assertions.assertTrue(leaves.size() > 1);
+            Assertions.assertEquals(sequential, leaves.stream().flatMap(List::stream).toList());
+        }
+    }
+
+    /**
+     * Split recursively until no more splits are possible, then drain each leaf in encounter order.
+     */
+    protected static void split(final Spliterator<AsciiSequence> spliterator, final List<List<String>> leaves) {
+        final var prefix = spliterator.trySplit();
+        if(prefix != null) {
+            split(prefix, leaves);
+            split(spliterator, leaves);
+            return;
+        }
+        final var leaf = new ArrayList<String>();
+        spliterator.forEachRemaining(line -> leaf.add(line.toString()));
+        leaves.add(leaf);
+    }
+
+    /**
+     * @return tens of kilobytes of short lines that mix LF and CRLF terminators, runs of blank and whitespace-only
+     * lines, and sometimes no final terminator
+     */
+    protected static String randomLines(final SplittableRandom random) {
+        final var builder = new StringBuilder();
+        for(int i = random.nextInt(1_000, 4_000); --i >= 0; ) {
+            if(random.nextInt(8) == 0) {
+                for(int j = random.nextInt(1, 4); --j >= 0; ) {
+                    builder.append(List.of("", " ", "\t ", "\r").get(random.nextInt(4))).append('\n');
+                }
+            }
+            for(int j = random.nextInt(0, 40); --j >= 0; ) {
+                builder.append("ab1 [".charAt(random.nextInt(5)));
+            }
+            builder.append('x').append(random.nextBoolean() ? "\n" : "\r\n");
+        }
+        if(random.nextBoolean()) {
+            builder.setLength(builder.length() - 1);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Map the text with segments of at most <code>maxSegmentSize</code> bytes so that lines and blocks meet
+     * segment boundaries.
+     */
+    protected static MappedInput open(final String text, final int maxSegmentSize) throws IOException {
+        final var file = Files.createTempFile("day-05", ".txt");
+        try {
+            Files.writeString(file, text, StandardCharsets.US_ASCII);
+            final var result = MappedInput.open(file, maxSegmentSize);
+            Assertions.assertTrue(result.segmentCount() > 1);
+            return result;
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    protected static List<String> expectedLines(final String text) {
+        final var result = new ArrayList<String>();
+        for(int start = 0; start < text.length(); start = nextLine(text, start)) {
+            result.add(text.substring(start, contentEnd(text, start)));
+        }
+        return result;
+    }
+
+    protected static List<String> expectedBlocks(final String text) {
+        final var result = new ArrayList<String>();
+        int blockStart = -1;
+        int blockEnd = -1;
+        for(int start = 0; start < text.length(); start = nextLine(text, start)) {
+            final var end = contentEnd(text, start);
+            if(!text.substring(start, end).isBlank()) {
+                blockStart = blockStart < 0 ? start : blockStart;
+                blockEnd = end;
+            } else if(blockStart >= 0) {
+                result.add(text.substring(blockStart, blockEnd));
+                blockStart = -1;
+            }
+        }
+        if(blockStart >= 0) {
+            result.add(text.substring(blockStart, blockEnd));
+        }
+        return result;
+    }
+
+    protected static int nextLine(final String text, final int start) {
+        final var newline = text.indexOf('\n', start);
+        return newline < 0 ? text.length() : newline + 1;
+    }
+
+    /**
+     * @return the end of the line starting at <code>start</code>, excluding any LF or CRLF terminator
+     */
+    protected static int contentEnd(final String text, final int start) {
+        var end = nextLine(text, start);
+        if(end > start && text.charAt(end - 1) == '\n') {
+            end--;
+        }
+        if(end > start && text.charAt(end - 1) == '\r') {
+            end--;
+        }
+        return end;
+    }
+
+    @Test
+    public final void testColumnsBeyondNine() {
+        for(final var trailing : List.of(" ", "")) {
+            // given
+            final var drawing = new StringBuilder();
+            final var labels = new StringBuilder();
+            for(int i = 0; i < 12; i++) {
+                drawing.append(i > 0 ? " " : "").append('[').append((char) ('A' + i)).append(']');
+                while(labels.length() < i * 4 + 1) {
+                    labels.append(' ');
                 }
-            } else {
-                if(line.isBlank()) {
+                labels.append(i + 1);
+            }
+            final var text = "    [Z]\n" + drawing + "\n" + labels + trailing + "\n\nmove 2 from 2 to 12\n";
+
+            // when
+            final var procedure = parse(MappedInput.wrap(text.getBytes(StandardCharsets.US_ASCII)));
+
+            // then
+            Assertions.assertEquals(12, procedure.columns().size());
+            Assertions.assertEquals("ZB", procedure.columns().get(1));
+            Assertions.assertEquals("L", procedure.columns().get(11));
+            Assertions.assertEquals("ACDEFGHIJKB", solvePart1(procedure));
+            Assertions.assertEquals("ACDEFGHIJKZ", solvePart2(procedure));
+        }
+    }
+
+    @Test
+    public final void testInvalidMoves() {
+        for(final var move : List.of("move 1 from 1", "move 1 from 1 to 2 to 3", "move one from 1 to 2",
+                "move 1 from 0 to 2", "move 1 from 1 to 4")) {
+            final var text = "[A] [B] [C]\n 1   2   3 \n\n" + move + "\n";
+            final var procedure = parse(MappedInput.wrap(text.getBytes(StandardCharsets.US_ASCII)));
+            Assertions.assertThrows(IllegalArgumentException.class, () -> procedure.forEachMove((count, from, to) -> {
+            }), move);
+        }
+    }
+
+    @Test
+    public final void testStacksMatchLinkedLists() {
+        final var random = new SplittableRandom(19);
+        for(int trial = 0; trial < 200; trial++) {
+            // given
+            final var oneAtATime = random.nextBoolean();
+            final var columnCount = random.nextInt(1, 5);
+            final var columns = new ArrayList<String>();
+            final var expected = new ArrayList<LinkedList<Character>>();
+            for(int i = 0; i < columnCount; i++) {
+                final var column = new StringBuilder();
+                for(int j = random.nextInt(0, 10); --j >= 0; column.append((char) ('A' + random.nextInt(26))));
+                columns.add(column.toString());
+                // the first crate listed is on top
+                expected.add(column.chars().mapToObj(c -> (char) c).collect(Collectors.toCollection(LinkedList::new)));
+            }
+            final var stacks = new Stacks(columns);
+
+            for(int step = 0; step < 100; step++) {
+                final var from = random.nextInt(columnCount);
+                final var to = random.nextInt(columnCount);
+                final var height = expected.get(from).size();
+                if(height == 0) {
                     continue;
                 }
-                final var instruction = CrateMover9001Instruction.parse(line);
-                instruction.execute(columns);
+                // moving the whole column is common, and piling everything onto one column grows its array
+                final var count = random.nextBoolean() ? height : random.nextInt(1, height + 1);
+
+                // when
+                if(oneAtATime) {
+                    stacks.moveOneAtATime(count, from, to);
+                } else {
+                    stacks.moveTogether(count, from, to);
+                }
+
+                // then
+                if(oneAtATime) {
+                    for(int i = count; --i >= 0; expected.get(to).push(expected.get(from).pop()));
+                } else {
+                    final var moved = new LinkedList<Character>();
+                    for(int i = count; --i >= 0; moved.push(expected.get(from).pop()));
+                    for(int i = count; --i >= 0; expected.get(to).push(moved.pop()));
+                }
+                final var tops = expected.stream()
+                        .filter(column -> !column.isEmpty())
+                        .map(column -> String.valueOf(column.peek()))
+                        .collect(Collectors.joining());
+                Assertions.assertEquals(tops, stacks.topCrates());
             }
         }
-        final var builder = new StringBuilder();
-        for(final var column : columns) {
-            if(!column.isEmpty()) {
-                builder.append(column.getFirst());
+    }
+
+    @Test
+    public final void testStacksRejectMovingMissingCrates() {
+        final var stacks = new Stacks(List.of("AB", ""));
+        Assertions.assertThrows(IllegalStateException.class, () -> stacks.moveOneAtATime(3, 0, 1));
+        Assertions.assertThrows(IllegalStateException.class, () -> stacks.moveTogether(1, 1, 0));
+        Assertions.assertEquals("A", stacks.topCrates());
+    }
+
+    @Test
+    public final void testTraceMatchesSimulation() throws IOException {
+        final var random = new SplittableRandom(5);
+        for(int trial = 0; trial < 100; trial++) {
+            // given
+            final var generator = new Generator(random.nextInt(2, 15), random.nextInt(1, 12), random.nextInt(0, 60),
+                    random.nextInt(1, 10));
+            final var writer = new StringWriter();
+            generator.generate(random, writer);
+            final var procedure = parse(MappedInput.wrap(writer.toString().getBytes(StandardCharsets.US_ASCII)));
+            final var simulation = Day05.withMode(Mode.SIMULATE);
+            final var trace = Day05.withMode(Mode.TRACE);
+
+            // when
+            final var part1 = trace.solvePart1(procedure);
+            final var part2 = trace.solvePart2(procedure);
+
+            // then
+            Assertions.assertEquals(simulation.solvePart1(procedure), part1);
+            Assertions.assertEquals(simulation.solvePart2(procedure), part2);
+        }
+    }
+
+    /**
+     * Generates a starting arrangement of crates and a valid rearrangement procedure. Every move takes crates from a
+     * column that has at least that many crates.
+     *
+     * @param columns   the number of columns of crates, at least 2
+     * @param maxHeight the most crates initially in any one column
+     * @param moves     the number of steps in the procedure
+     * @param maxCount  the most crates moved in a single step
+     */
+    public record Generator(int columns, int maxHeight, int moves, int maxCount) implements InputGenerator {
+        public Generator {
+            if(columns < 2) {
+                throw new IllegalArgumentException("Unsupported number of columns: " + columns);
             }
         }
-        final var result = builder.toString();
 
-        System.out.println("Part 2: " + result);
+        public static Generator atScale(final int scale) {
+            return new Generator(9, 8 * scale, 500 * scale, 30);
+        }
+
+        public void generate(final SplittableRandom random, final Writer output) throws IOException {
+            final var heights = new int[columns()];
+            int tallest = 1;
+            for(int i = columns(); --i >= 0; ) {
+                heights[i] = random.nextInt(maxHeight() + 1);
+                tallest = Math.max(tallest, heights[i]);
+            }
+            heights[random.nextInt(columns())] = tallest; // ensure there is at least one crate
+            final var line = new StringBuilder();
+            for(int level = tallest; --level >= 0; ) {
+                line.setLength(0);
+                for(int i = 0; i < columns(); i++) {
+                    if(i > 0) {
+                        line.append(' ');
+                    }
+                    if(heights[i] > level) {
+                        line.append('[').append((char) ('A' + random.nextInt(26))).append(']');
+                    } else {
+                        line.append("   ");
+                    }
+                }
+                output.write(line.append('\n').toString());
+            }
+            // each label starts beneath its column's crates and may run into the gap after it
+            line.setLength(0);
+            for(int i = 0; i < columns(); i++) {
+                while(line.length() < i * 4 + 1) {
+                    line.append(' ');
+                }
+                line.append(i + 1);
+            }
+            output.write(line.append(" \n\n").toString());
 
+            for(int i = moves(); --i >= 0; ) {
+                int from;
+                do {
+                    from = random.nextInt(columns());
+                } while(heights[from] == 0);
+                int to = random.nextInt(columns() - 1);
+                if(to >= from) {
+                    to++;
+                }
+                final var count = random.nextInt(1, Math.min(heights[from], maxCount()) + 1);
+                heights[from] -= count;
+                heights[to] += count;
+                output.write("move " + count + " from " + (from + 1) + " to " + (to + 1) + "\n");
+            }
+        }
     }
 
 }
\ No newline at end of file
@@ -1,55 +1,525 @@
 package com.macasaet;
 
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
-import java.util.HashSet;
-import java.util.stream.Stream;
-import java.util.stream.StreamSupport;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.SplittableRandom;
 
 /**
  * --- Day 6: ---
  * <a href="https://adventofcode.com/2022/day/6">https://adventofcode.com/2022/day/6</a>
  */
-public class Day06 {
+public class Day06 implements Puzzle<AsciiSequence> {
 
-    protected Stream<String> getInput() {
-        return StreamSupport
-                .stream(new LineSpliterator("day-06.txt"),
-                        false);
+    /**
+     * The number of distinct characters that indicate the start of a packet
+     */
+    public static final int START_OF_PACKET = 4;
+
+    /**
+     * The number of distinct characters that indicate the start of a message
+     */
+    public static final int START_OF_MESSAGE = 14;
+
+    /**
+     * The shortest datastream worth searching on more than one thread
+     */
+    protected static final int MIN_PARALLEL_LENGTH = 1 << 20;
+
+    protected AsciiSequence getInput() {
+        return parse(MappedInput.open("day-06.txt"));
+    }
+
+    public AsciiSequence parse(final MappedInput input) {
+        return input.lines().findFirst().orElseThrow(() -> new IllegalArgumentException("No datastream"));
+    }
+
+    public Integer solvePart1(final AsciiSequence datastream) {
+        return datastream.length() < MIN_PARALLEL_LENGTH
+                ? firstMarker(datastream, START_OF_PACKET)
+                : firstMarkerInParallel(datastream, START_OF_PACKET);
+    }
+
+    public Integer solvePart2(final AsciiSequence datastream) {
+        return datastream.length() < MIN_PARALLEL_LENGTH
+                ? firstMarker(datastream, START_OF_MESSAGE)
+                : firstMarkerInParallel(datastream, START_OF_MESSAGE);
     }
 
     @Test
     public final void part1() {
-        final var input = getInput().findFirst().get();
-        for(int i = 4; i < input.length(); i++) {
-            final var set = new HashSet<Character>(4);
-            for(int j = 0; j < 4; j++) {
-                set.add(input.charAt(i - 4 + j));
-            }
-            if(set.size() >= 4) {
-                final var result = i;
-                System.out.println("Part 1: " + result);
-                return;
+        final var result = solvePart1(getInput());
+        System.out.println("Part 1: " + result);
+    }
+
+    @Test
+    public final void part2() {
+        final var result = solvePart2(getInput());
+        System.out.println("Part 2: " + result);
+    }
+
+    @Test
+    public final void testMarkerStraddlingChunks() {
+        // given
+        final var datastream = "aaaaaabcdddddddd";
+
+        // when
+        final var result = firstMarkerInParallel(datastream, START_OF_PACKET, 8);
+
+        // then
+        Assertions.assertEquals(9, result);
+    }
+
+    @Test
+    public final void testNoMarkerInParallel() {
+        Assertions.assertThrows(IllegalStateException.class,
+                () -> firstMarkerInParallel("abcabcabcabcabcabcabc", START_OF_PACKET, 4));
+    }
+
+    @Test
+    public final void testParallelMatchesSequential() {
+        final var random = new SplittableRandom(6);
+        for(int trial = 0; trial < 300; trial++) {
+            // given
+            final var width = random.nextBoolean() ? START_OF_PACKET : START_OF_MESSAGE;
+            final var datastream = randomDatastream(random, random.nextInt(0, 2_000), width - 1 + random.nextInt(3));
+            final var chunkSize = random.nextInt(1, 64);
+
+            // when
+            Integer expected;
+            try {
+                expected = firstMarker(datastream, width);
+            } catch(final IllegalStateException ise) {
+                expected = null;
+            }
+
+            // then
+            if(expected == null) {
+                Assertions.assertThrows(IllegalStateException.class,
+                        () -> firstMarkerInParallel(datastream, width, chunkSize));
+            } else {
+                Assertions.assertEquals(expected, firstMarkerInParallel(datastream, width, chunkSize));
             }
         }
-        throw new IllegalStateException();
     }
 
     @Test
-    public final void part2() {
-        final var input = getInput().findFirst().get();
-        for(int i = 14; i < input.length(); i++) {
-            final var set = new HashSet<Character>(14);
-            for(int j = 0; j < 14; j++) {
-                set.add(input.charAt(i - 14 + j));
-            }
-            if(set.size() >= 14) {
-                final var result = i;
-                System.out.println("Part 2: " + result);
+    public final void testMarkersMatchBruteForce() {
+        final var random = new SplittableRandom(22);
+        for(int trial = 0; trial < 300; trial++) {
+            // given
+            final var width = random.nextInt(1, 27);
+            final var letters = Math.max(1, Math.min(26, width - 1 + random.nextInt(3)));
+            final var datastream = randomDatastream(random, random.nextInt(0, 500), letters);
+
+            // when
+            final var result = markers(datastream, width);
+
+            // then
+            Assertions.assertArrayEquals(bruteForceMarkers(datastream, width), result);
+        }
+    }
+
+    @Test
+    public final void testDetectorCountsRepeatedLetters() {
+        // given
+        final var detector = new MarkerDetector(START_OF_PACKET);
+
+        // when
+        final var results = new boolean[8];
+        final var datastream = "aabcdaaa";
+        for(int i = 0; i < results.length; i++) {
+            results[i] = detector.accept(datastream.charAt(i));
+        }
+
+        // then
+        Assertions.assertArrayEquals(new boolean[]{false, false, false, false, true, true, false, false}, results);
+        Assertions.assertEquals(8, detector.position());
+    }
+
+    @Test
+    public final void testDetectorRejectsInvalidInput() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new MarkerDetector(0));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new MarkerDetector(27));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new MarkerDetector(4).accept('A'));
+    }
+
+    @Test
+    public final void testScannerMatchesMarkers() throws IOException {
+        // given
+        final var random = new SplittableRandom(23);
+        final var datastream = randomDatastream(random, 3 * SignalScanner.BUFFER_SIZE + 17, 16);
+        final var withLineBreaks = new StringBuilder();
+        for(int i = 0; i < datastream.length(); i += 1_000) {
+            withLineBreaks.append(datastream, i, Math.min(i + 1_000, datastream.length()));
+            withLineBreaks.append(random.nextBoolean() ? "\r\n" : "\n");
+        }
+        final var input = new ByteArrayInputStream(withLineBreaks.toString().getBytes(StandardCharsets.US_ASCII));
+        final var found = new ArrayList<String>();
+
+        // when
+        final var scanned = new SignalScanner(START_OF_PACKET, START_OF_MESSAGE)
+                .scan(input, (width, end) -> found.add(width + "@" + end));
+
+        // then
+        Assertions.assertEquals(datastream.length(), scanned);
+        final var packets = markers(datastream, START_OF_PACKET);
+        final var messages = markers(datastream, START_OF_MESSAGE);
+        final var expected = new ArrayList<String>();
+        for(int end = 1, p = 0, m = 0; end <= datastream.length(); end++) {
+            if(p < packets.length && packets[p] == end) {
+                expected.add(START_OF_PACKET + "@" + packets[p++]);
+            }
+            if(m < messages.length && messages[m] == end) {
+                expected.add(START_OF_MESSAGE + "@" + messages[m++]);
+            }
+        }
+        Assertions.assertFalse(messages.length == 0);
+        Assertions.assertEquals(expected, found);
+    }
+
+    @Test
+    public final void testScannerStopsWhenAsked() throws IOException {
+        // given
+        final var random = new SplittableRandom(230);
+        final var datastream = "abc".repeat(SignalScanner.BUFFER_SIZE) + randomDatastream(random, 1_000, 26)
+                + "a".repeat(2 * SignalScanner.BUFFER_SIZE);
+        final var input = new ByteArrayInputStream(datastream.getBytes(StandardCharsets.US_ASCII));
+
+        // when
+        final var scanned = new SignalScanner(START_OF_MESSAGE).scan(input, (width, end) -> false);
+
+        // then
+        Assertions.assertEquals(firstMarker(datastream, START_OF_MESSAGE), scanned);
+        Assertions.assertTrue(input.available() > 0);
+    }
+
+    /**
+     * @return the end of every window in which no character repeats
+     */
+    protected static int[] bruteForceMarkers(final CharSequence datastream, final int width) {
+        final var result = new ArrayList<Integer>();
+        for(int end = width; end <= datastream.length(); end++) {
+            final var window = datastream.subSequence(end - width, end);
+            if(window.chars().distinct().count() == width) {
+                result.add(end);
+            }
+        }
+        return result.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * @param letters the number of distinct letters to draw from; fewer than a marker's width means no markers
+     */
+    protected static String randomDatastream(final SplittableRandom random, final int length, final int letters) {
+        final var result = new char[length];
+        for(int i = length; --i >= 0; result[i] = (char) ('a' + random.nextInt(letters)));
+        return new String(result);
+    }
+
+    /**
+     * @param width the number of distinct characters that make up a marker
+     * @return the number of characters up to and including the end of the first marker
+     * @throws IllegalStateException if there is no marker
+     */
+    public static int firstMarker(final CharSequence datastream, final int width) {
+        final var detector = new MarkerDetector(width);
+        for(int i = 0; i < datastream.length(); i++) {
+            if(detector.accept(datastream.charAt(i))) {
+                return i + 1;
+            }
+        }
+        throw new IllegalStateException("No marker of width " + width);
+    }
+
+    /**
+     * Like {@link #firstMarker(CharSequence, int)}, but the datastream is divided into chunks that are searched
+     * concurrently on the common fork/join pool.
+     *
+     * @param width the number of distinct characters that make up a marker
+     * @return the number of characters up to and including the end of the first marker
+     * @throws IllegalStateException if there is no marker
+     */
+    public static int firstMarkerInParallel(final CharSequence datastream, final int width) {
+        return firstMarkerInParallel(datastream, width, Math.max(1 << 16,
+                datastream.length() / (4 * ForkJoinPool.getCommonPoolParallelism()) + 1));
+    }
+
+    /**
+     * @param chunkSize the most characters searched by a single task
+     */
+    protected static int firstMarkerInParallel(final CharSequence datastream, final int width, final int chunkSize) {
+        final var search = new MarkerSearch(datastream, width, 0, datastream.length(), chunkSize,
+                new AtomicInteger(Integer.MAX_VALUE));
+        ForkJoinPool.commonPool().invoke(search);
+        final var result = search.best.get();
+        if(result == Integer.MAX_VALUE) {
+            throw new IllegalStateException("No marker of width " + width);
+        }
+        return result;
+    }
+
+    /**
+     * Searches for the first marker that ends within a range of the datastream, splitting the range until it is no
+     * larger than a chunk. Each chunk starts its detector <code>width - 1</code> characters early so that a marker
+     * straddling two chunks is still found, by the chunk in which it ends. The best marker found so far is shared,
+     * and a chunk stops as soon as it passes it, since nothing it could find would be earlier.
+     */
+    protected static class MarkerSearch extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final CharSequence datastream;
+        private final int width;
+        private final int from;
+        private final int to;
+        private final int chunkSize;
+        private final AtomicInteger best;
+
+        /**
+         * @param from the index of the first character that may end a marker (inclusive)
+         * @param to   the index after the last character that may end a marker (exclusive)
+         * @param best the smallest marker end found so far, or {@link Integer#MAX_VALUE}
+         */
+        public MarkerSearch(final CharSequence datastream, final int width, final int from, final int to,
+                            final int chunkSize, final AtomicInteger best) {
+            this.datastream = datastream;
+            this.width = width;
+            this.from = from;
+            this.to = to;
+            this.chunkSize = chunkSize;
+            this.best = best;
+        }
+
+        protected void compute() {
+            if(from >= best.get()) {
+                return;
+            }
+            if(to - from > chunkSize) {
+                final var middle = from + (to - from) / 2;
+                invokeAll(new MarkerSearch(datastream, width, from, middle, chunkSize, best),
+                        new MarkerSearch(datastream, width, middle, to, chunkSize, best));
                 return;
             }
+            final var detector = new MarkerDetector(width);
+            for(int i = Math.max(0, from - width + 1); i < to; i++) {
+                if(detector.accept(datastream.charAt(i)) && i >= from) {
+                    best.accumulateAndGet(i + 1, Math::min);
+                    return;
+                }
+                if((i & 0xFFF) == 0 && i >= best.get()) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * @param width the number of distinct characters that make up a marker
+     * @return the number of characters up to and including the end of every marker, in ascending order
+     */
+    public static int[] markers(final CharSequence datastream, final int width) {
+        final var detector = new MarkerDetector(width);
+        var result = new int[16];
+        int count = 0;
+        for(int i = 0; i < datastream.length(); i++) {
+            if(detector.accept(datastream.charAt(i))) {
+                if(count == result.length) {
+                    result = Arrays.copyOf(result, count * 2);
+                }
+                result[count++] = i + 1;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Receives the markers found by a {@link SignalScanner}.
+     */
+    @FunctionalInterface
+    public interface MarkerListener {
+        /**
+         * @param width the number of distinct characters in the marker
+         * @param end   the number of characters up to and including the end of the marker
+         * @return true to keep scanning, false to stop
+         */
+        boolean onMarker(int width, long end);
+    }
+
+    /**
+     * Scans a datastream of any length, such as a live feed, as it is read. Bytes are read in blocks into a single
+     * fixed-size buffer and fed to one {@link MarkerDetector} per watched width, so memory use is constant however
+     * long the datastream is. Line breaks are not part of the datastream and are skipped.
+     */
+    public static class SignalScanner {
+        /**
+         * The number of bytes to read at a time
+         */
+        public static final int BUFFER_SIZE = 1 << 16;
+
+        private final int[] widths;
+
+        /**
+         * @param widths the widths of the markers to watch for, e.g. {@link #START_OF_PACKET} and
+         *               {@link #START_OF_MESSAGE}
+         */
+        public SignalScanner(final int... widths) {
+            if(widths.length == 0) {
+                throw new IllegalArgumentException("No marker widths to watch for");
+            }
+            this.widths = widths.clone();
+        }
+
+        /**
+         * @param listener notified of every marker as soon as its last character is read
+         * @return the number of characters scanned
+         */
+        public long scan(final InputStream input, final MarkerListener listener) throws IOException {
+            return scan(Channels.newChannel(input), listener);
+        }
+
+        /**
+         * Read until the channel is exhausted or the listener asks to stop. The channel is not closed.
+         *
+         * @param listener notified of every marker as soon as its last character is read
+         * @return the number of characters scanned
+         */
+        public long scan(final ReadableByteChannel channel, final MarkerListener listener) throws IOException {
+            final var detectors = new MarkerDetector[widths.length];
+            for(int i = detectors.length; --i >= 0; detectors[i] = new MarkerDetector(widths[i]));
+            final var buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            long position = 0;
+            while(channel.read(buffer.clear()) >= 0) {
+                buffer.flip();
+                while(buffer.hasRemaining()) {
+                    final var c = buffer.get();
+                    if(c == '\n' || c == '\r') {
+                        continue;
+                    }
+                    position++;
+                    for(final var detector : detectors) {
+                        if(detector.accept(c) && !listener.onMarker(detector.width(), position)) {
+                            return position;
+                        }
+                    }
+                }
+            }
+            return position;
+        }
+    }
+
+    /**
+     * Watches a datastream one character at a time for a window of distinct characters. The window's contents are
+     * kept in a ring along with a count of each letter and the number of letters that appear more than once, so each
+     * character costs a constant amount of work however wide the window is.
+     */
+    public static final class MarkerDetector {
+        private final int[] counts = new int[26];
+        private final byte[] window;
+        private int slot;
+        private int duplicates;
+        private long position;
+
+        /**
+         * @param width the number of distinct characters that make up a marker
+         */
+        public MarkerDetector(final int width) {
+            if(width < 1 || width > 26) {
+                throw new IllegalArgumentException("Invalid marker width: " + width);
+            }
+            this.window = new byte[width];
+        }
+
+        /**
+         * @param c the next character of the datastream, a lowercase letter
+         * @return true if the window ending with this character is a marker
+         */
+        public boolean accept(final int c) {
+            final var letter = c - 'a';
+            if(letter < 0 || letter >= counts.length) {
+                throw new IllegalArgumentException("Invalid character '" + (char) c + "' at position " + position);
+            }
+            if(position >= window.length && --counts[window[slot]] == 1) {
+                duplicates--;
+            }
+            window[slot] = (byte) letter;
+            if(++counts[letter] == 2) {
+                duplicates++;
+            }
+            if(++slot == window.length) {
+                slot = 0;
+            }
+            return ++position >= window.length && duplicates == 0;
+        }
+
+        /**
+         * @return the number of characters accepted so far
+         */
+        public long position() {
+            return position;
+        }
+
+        public int width() {
+            return window.length;
+        }
+    }
+
+    /**
+     * Generates a datastream in which both markers appear late in the buffer. Characters before the markers are drawn
+     * from only three letters, so no earlier window can contain four distinct characters.
+     *
+     * @param length the number of characters in the datastream, at least 14
+     */
+    public record Generator(int length) implements InputGenerator {
+        public Generator {
+            if(length < 14) {
+                throw new IllegalArgumentException("The datastream must have room for a start-of-message marker");
+            }
+        }
+
+        public static Generator atScale(final int scale) {
+            return new Generator(4_096 * scale);
+        }
+
+        public void generate(final SplittableRandom random, final Writer output) throws IOException {
+            final var alphabet = new char[26];
+            for(int i = alphabet.length; --i >= 0; alphabet[i] = (char) ('a' + i));
+            shuffle(random, alphabet);
+            final var buffer = new char[length()];
+            final var markerStart = random.nextInt(length() - 14 - (length() - 14) / 4, length() - 14 + 1);
+            for(int i = 0; i < markerStart; i++) {
+                buffer[i] = alphabet[random.nextInt(3)];
+            }
+            // the start-of-message marker: fourteen distinct characters
+            shuffle(random, alphabet);
+            System.arraycopy(alphabet, 0, buffer, markerStart, 14);
+            for(int i = markerStart + 14; i < length(); i++) {
+                buffer[i] = (char) ('a' + random.nextInt(26));
+            }
+            output.write(buffer);
+            output.write('\n');
+        }
+
+        protected void shuffle(final SplittableRandom random, final char[] array) {
+            for(int i = array.length; --i > 0; ) {
+                final var j = random.nextInt(i + 1);
+                final var swap = array[i];
+                array[i] = array[j];
+                array[j] = swap;
+            }
         }
-        throw new IllegalStateException();
     }
 
 }
\ No newline at end of file
@@ -1,21 +1,21 @@
 package com.macasaet;
 
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
-import java.util.Collections;
-import java.util.Comparator;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
-import java.util.Set;
-import java.util.stream.Stream;
-import java.util.stream.StreamSupport;
+import java.util.SplittableRandom;
 
 /**
  * --- Day 7: ---
  * <a href="https://adventofcode.com/2022/day/7">https://adventofcode.com/2022/day/7</a>
  */
-public class Day07 {
+public class Day07 implements Puzzle<Day07.DirectorySizes> {
 
     static class Session {
         private final Directory root = new Directory("/", new HashMap<>());
@@ -24,7 +24,6 @@ public class Day07 {
     }
 
     static abstract class File {
-        abstract int size();
     }
 
     static class Directory extends File {
@@ -36,48 +35,119 @@ public class Day07 {
             this.files = files;
         }
 
-        int size() {
-            int result = 0;
-            for(final var file : files.values()) {
-                result += file.size();
-            }
-            return result;
-        }
-
         public String toString() {
             return "Directory{" +
                     "name='" + name + '\'' +
                     '}';
         }
+    }
 
-        final Set<Directory> findDirectoriesSmallerThan(final int maxSize) {
-            final var result = new HashSet<Directory>();
-            for(final var file : files.values()) {
-                try {
-                    final var directory = (Directory)file;
-                    result.addAll(directory.findDirectoriesSmallerThan(maxSize));
-                } catch(final ClassCastException ignored) {
-                }
+    /**
+     * The total size of every directory in a file system. Totals are computed by a single pass that completes each
+     * directory before its parent, so each directory and file is visited exactly once. They are then kept in ascending
+     * order along with their running sums so that threshold queries are binary searches.
+     */
+    public static final class DirectorySizes {
+        private final long total;
+        private final long[] sizes;
+        private final long[] prefixSums;
+
+        /**
+         * @param totals the total size of every directory, in any order
+         * @param total  the total size of the root
+         */
+        private DirectorySizes(final long[] totals, final long total) {
+            this.total = total;
+            this.sizes = totals.clone();
+            Arrays.sort(sizes);
+            this.prefixSums = new long[sizes.length + 1];
+            for(int i = 0; i < sizes.length; i++) {
+                prefixSums[i + 1] = prefixSums[i] + sizes[i];
             }
-            if(size() < maxSize) { // FIXME duplicated traversal
-                result.add(this);
+        }
+
+        public static DirectorySizes of(final Directory root) {
+            // number the directories breadth first so that every directory comes after its parent
+            final var directories = new ArrayList<Directory>();
+            var parents = new int[16];
+            directories.add(root);
+            parents[0] = -1;
+            for(int i = 0; i < directories.size(); i++) {
+                for(final var file : directories.get(i).files.values()) {
+                    if(file instanceof Directory child) {
+                        if(directories.size() == parents.length) {
+                            parents = Arrays.copyOf(parents, parents.length * 2);
+                        }
+                        parents[directories.size()] = i;
+                        directories.add(child);
+                    }
+                }
             }
-            return Collections.unmodifiableSet(result);
-       }
-       final Set<Directory> findDirectoriesLargerThan(final int minSize) {
-            final var result = new HashSet<Directory>();
-            if(size() >= minSize) {
-                for (final var file : files.values()) { // FIXME duplicated traversal
-                    try {
-                        final var directory = (Directory) file;
-                        result.addAll(directory.findDirectoriesLargerThan(minSize));
-                    } catch (final ClassCastException ignored) {
+            // then visit them in reverse, so that every directory is complete before it is added to its parent
+            final var totals = new long[directories.size()];
+            for(int i = totals.length; --i >= 0; ) {
+                for(final var file : directories.get(i).files.values()) {
+                    if(file instanceof Leaf leaf) {
+                        totals[i] += leaf.size();
                     }
                 }
-                result.add(this);
+                final var parent = parents[i];
+                if(parent >= 0) {
+                    totals[parent] += totals[i];
+                }
             }
-            return Collections.unmodifiableSet(result);
-       }
+            return new DirectorySizes(totals, totals[0]);
+        }
+
+        /**
+         * @return the total size of the root directory, i.e. the space used
+         */
+        public long total() {
+            return total;
+        }
+
+        /**
+         * @return the number of directories, including the root
+         */
+        public int count() {
+            return sizes.length;
+        }
+
+        /**
+         * @return the sum of the total sizes of the directories smaller than <code>maxSize</code>
+         */
+        public long sumOfSizesBelow(final long maxSize) {
+            return prefixSums[countBelow(maxSize)];
+        }
+
+        /**
+         * @return the total size of the smallest directory of at least <code>minSize</code>
+         * @throws IllegalStateException if every directory is smaller
+         */
+        public long smallestAtLeast(final long minSize) {
+            final var index = countBelow(minSize);
+            if(index == sizes.length) {
+                throw new IllegalStateException("No directory has at least " + minSize);
+            }
+            return sizes[index];
+        }
+
+        /**
+         * @return the number of directories smaller than <code>size</code>
+         */
+        public int countBelow(final long size) {
+            int low = 0;
+            int high = sizes.length;
+            while(low < high) {
+                final var mid = (low + high) >>> 1;
+                if(sizes[mid] < size) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
     }
 
     static class Leaf extends File {
@@ -208,34 +278,143 @@ public class Day07 {
         }
     }
 
-    protected Stream<Line> getInput() {
-        return StreamSupport
-                .stream(new LineSpliterator("day-07.txt"),
-                        false)
-                .map(Line::parse);
+    protected DirectorySizes getInput() {
+        return parse(MappedInput.open("day-07.txt"));
+    }
+
+    /**
+     * @return the size of every directory in the file system described by the terminal session
+     */
+    public DirectorySizes parse(final MappedInput input) {
+        final var session = new Session();
+        input.lines()
+                .map(line -> Line.parse(line.toString()))
+                .forEach(line -> line.execute(session));
+        return DirectorySizes.of(session.root);
+    }
+
+    public Long solvePart1(final DirectorySizes sizes) {
+        return sizes.sumOfSizesBelow(100_000);
+    }
+
+    public Long solvePart2(final DirectorySizes sizes) {
+        final var unused = 70_000_000 - sizes.total();
+        final var required = 30_000_000 - unused;
+        return sizes.smallestAtLeast(required);
     }
 
     @Test
     public final void part1() {
-        final var session = new Session();
-        getInput().forEach(line -> line.execute(session));
-        final var result = session.root.findDirectoriesSmallerThan(100_000).stream().mapToInt(Directory::size).sum();
+        final var result = solvePart1(getInput());
         System.out.println("Part 1: " + result);
     }
 
     @Test
     public final void part2() {
-        final var session = new Session();
-        getInput().forEach(line -> line.execute(session));
-        final var consumed = session.root.size();
-        final var unused = 70_000_000 - consumed;
-        final var required = 30_000_000 - unused;
-        final var result = session.root.findDirectoriesLargerThan(required)
-                .stream()
-                .min(Comparator.comparing(Directory::size))
-                .get()
-                .size();
+        final var result = solvePart2(getInput());
         System.out.println("Part 2: " + result);
     }
 
+    @Test
+    public final void testDirectorySizes() {
+        // given the example file system
+        final var e = directory("e", new Leaf("i", 584));
+        final var a = directory("a", e, new Leaf("f", 29116), new Leaf("g", 2557), new Leaf("h.lst", 62596));
+        final var d = directory("d", new Leaf("j", 4060174), new Leaf("d.log", 8033020), new Leaf("d.ext", 5626152),
+                new Leaf("k", 7214296));
+        final var root = directory("/", a, new Leaf("b.txt", 14848514), new Leaf("c.dat", 8504156), d);
+
+        // when
+        final var sizes = DirectorySizes.of(root);
+
+        // then
+        Assertions.assertEquals(48381165, sizes.total());
+        Assertions.assertEquals(4, sizes.count());
+        Assertions.assertEquals(95437, sizes.sumOfSizesBelow(100_000));
+        // a directory exactly at the limit is excluded
+        Assertions.assertEquals(584, sizes.sumOfSizesBelow(94853));
+        Assertions.assertEquals(95437, sizes.sumOfSizesBelow(94854));
+        Assertions.assertEquals(1, sizes.countBelow(94853));
+        // but a directory exactly at the minimum qualifies
+        Assertions.assertEquals(24933642, sizes.smallestAtLeast(24933642));
+        Assertions.assertEquals(48381165, sizes.smallestAtLeast(24933643));
+        Assertions.assertThrows(IllegalStateException.class, () -> sizes.smallestAtLeast(48381166));
+    }
+
+    protected static Directory directory(final String name, final File... files) {
+        final var result = new Directory(name, new HashMap<>());
+        for(final var file : files) {
+            result.files.put(file instanceof Directory directory ? directory.name : ((Leaf) file).name, file);
+        }
+        return result;
+    }
+
+    /**
+     * Generates a terminal session that explores a randomly shaped file system depth first. File sizes are chosen so
+     * that the disk is between roughly 60% and 75% full, so an update always requires deleting something.
+     *
+     * @param directories          the number of directories, including the root
+     * @param maxFilesPerDirectory the most files in any one directory
+     */
+    public record Generator(int directories, int maxFilesPerDirectory) implements InputGenerator {
+        private static final String[] EXTENSIONS = {".txt", ".dat", ".log", ".tmp"};
+
+        public static Generator atScale(final int scale) {
+            return new Generator(200 * scale, 10);
+        }
+
+        public void generate(final SplittableRandom random, final Writer output) throws IOException {
+            // each directory's parent is chosen from the directories created before it
+            final var parents = new int[directories()];
+            final var childCounts = new int[directories() + 1];
+            for(int i = 1; i < directories(); i++) {
+                parents[i] = random.nextInt(i);
+                childCounts[parents[i] + 1]++;
+            }
+            for(int i = 1; i < childCounts.length; i++) {
+                childCounts[i] += childCounts[i - 1];
+            }
+            final var childStarts = childCounts.clone();
+            final var children = new int[Math.max(directories() - 1, 0)];
+            for(int i = 1; i < directories(); i++) {
+                children[childStarts[parents[i]]++] = i;
+            }
+            final var expectedFiles = Math.max(1L, (long) directories() * maxFilesPerDirectory() / 2);
+            final var maxFileSize = (int) Math.max(1, 2 * 47_000_000L / expectedFiles);
+
+            output.write("$ cd /\n");
+            explore(random, output, 0, childCounts, children, maxFileSize);
+        }
+
+        protected void explore(final SplittableRandom random, final Writer output, final int directory,
+                               final int[] childStarts, final int[] children, final int maxFileSize)
+                throws IOException {
+            output.write("$ ls\n");
+            for(int i = childStarts[directory]; i < childStarts[directory + 1]; i++) {
+                output.write("dir " + name(children[i]) + "\n");
+            }
+            for(int i = random.nextInt(maxFilesPerDirectory() + 1); --i >= 0; ) {
+                output.write(random.nextInt(1, maxFileSize + 1) + " " + name(i)
+                        + EXTENSIONS[random.nextInt(EXTENSIONS.length)] + "\n");
+            }
+            for(int i = childStarts[directory]; i < childStarts[directory + 1]; i++) {
+                output.write("$ cd " + name(children[i]) + "\n");
+                explore(random, output, children[i], childStarts, children, maxFileSize);
+                output.write("$ cd ..\n");
+            }
+        }
+
+        /**
+         * @return a unique name made of lowercase letters
+         */
+        protected static String name(int index) {
+            final var builder = new StringBuilder();
+            do {
+                builder.append((char) ('a' + index % 26));
+                index /= 26;
+            } while(index > 0);
+            return builder.toString();
+        }
+    }
+
 }
\ No newline at end of file
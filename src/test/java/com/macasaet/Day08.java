@@ -2,14 +2,16 @@ package com.macasaet;
 
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.io.Writer;
+import java.util.SplittableRandom;
 import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
 
 /**
  * --- Day 8: Treetop Tree House ---
  * <a href="https://adventofcode.com/2022/day/8">https://adventofcode.com/2022/day/8</a>
  */
-public class Day08 {
+public class Day08 implements Puzzle<Day08.Forest> {
 
     record Forest(int[][] grid) {
         public int countVisible() {
@@ -121,13 +123,14 @@ public class Day08 {
     }
 
     protected Forest getInput() {
-        final var list = StreamSupport
-                .stream(new LineSpliterator("day-08.txt"),
-                        false)
+        return parse(MappedInput.open("day-08.txt"));
+    }
+
+    public Forest parse(final MappedInput input) {
+        final var list = input.lines()
                 .map(line -> {
-                    final var chars = line.toCharArray();
-                    final var row = new int[chars.length];
-                    for(int i = chars.length; --i >= 0; row[i] = chars[i] - '0');
+                    final var row = new int[line.length()];
+                    for(int i = row.length; --i >= 0; row[i] = line.charAt(i) - '0');
                     return row;
                 })
                 .collect(Collectors.toList());
@@ -136,16 +139,11 @@ public class Day08 {
         return new Forest(grid);
     }
 
-    @Test
-    public final void part1() {
-        final var forest = getInput();
-        final var result = forest.countVisible();
-        System.out.println("Part 1: " + result);
+    public Integer solvePart1(final Forest forest) {
+        return forest.countVisible();
     }
 
-    @Test
-    public final void part2() {
-        final var forest = getInput();
+    public Integer solvePart2(final Forest forest) {
         int result = Integer.MIN_VALUE;
         for(int i = forest.grid().length; --i >= 0; ) {
             for( int j = forest.grid.length; --j >= 0; ) {
@@ -155,7 +153,39 @@ public class Day08 {
                 }
             }
         }
+        return result;
+    }
+
+    @Test
+    public final void part1() {
+        final var result = solvePart1(getInput());
+        System.out.println("Part 1: " + result);
+    }
+
+    @Test
+    public final void part2() {
+        final var result = solvePart2(getInput());
         System.out.println("Part 2: " + result);
     }
 
+    /**
+     * Generates a square map of tree heights.
+     *
+     * @param size the number of trees along each edge
+     */
+    public record Generator(int size) implements InputGenerator {
+        public static Generator atScale(final int scale) {
+            return new Generator((int) Math.ceil(99 * Math.sqrt(scale)));
+        }
+
+        public void generate(final SplittableRandom random, final Writer output) throws IOException {
+            final var row = new char[size() + 1];
+            row[size()] = '\n';
+            for(int i = size(); --i >= 0; ) {
+                for(int j = size(); --j >= 0; row[j] = (char) ('0' + random.nextInt(10)));
+                output.write(row);
+            }
+        }
+    }
+
 }
\ No newline at end of file
@@ -1,54 +1,36 @@
 package com.macasaet;
 
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
-import java.util.Set;
-import java.util.SortedMap;
-import java.util.TreeMap;
-import java.util.TreeSet;
-import java.util.stream.Stream;
-import java.util.stream.StreamSupport;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.SplittableRandom;
 
 /**
  * --- Day 9: Rope Bridge ---
  * <a href="https://adventofcode.com/2022/day/9">https://adventofcode.com/2022/day/9</a>
  */
-public class Day09 {
-
-    record Coordinate(int x, int y) {
-
-        public int distance(final Coordinate other) {
-            return (int)Math.sqrt(Math.pow((double)x() - (double)other.x(), 2.0) + Math.pow((double)y() - (double)other.y(), 2.0));
-        }
-
-        public Coordinate step(final int xDistance, final int yDistance) {
-            return new Coordinate(x() + xDistance, y + yDistance);
-        }
-        public Coordinate stepTowards(final Coordinate leader) {
-            final var xDistance = Integer.compare(leader.x(), x());
-            final var yDistance = Integer.compare(leader.y(), y());
-            return step(xDistance, yDistance);
-        }
-    }
+public class Day09 implements Puzzle<List<Day09.Instruction>> {
 
     public static class Rope {
 
-        Coordinate[] knotCoordinates;
+        final int[] knotXs;
+        final int[] knotYs;
 
-        final SortedMap<Integer, Set<Integer>> visited = new TreeMap<>();
+        final LongHashSet visited = new LongHashSet();
 
         public Rope(final int knots) {
-            knotCoordinates = new Coordinate[knots];
-            for(int i = knots; --i >= 0; knotCoordinates[i] = new Coordinate(0, 0));
-            visited.computeIfAbsent(0, (key) -> new TreeSet<>()).add(0);
+            knotXs = new int[knots];
+            knotYs = new int[knots];
+            visited.add(Coordinates.pack(0, 0));
         }
 
         public int countVisited() {
-            int result = 0;
-            for( final var map : visited.values() ) {
-                result += map.size();
-            }
-            return result;
+            return visited.size();
         }
 
         public void process(final Instruction instruction) {
@@ -56,32 +38,37 @@ public class Day09 {
             final int yStep = instruction.direction().yStep();
 
             for(int i = instruction.distance(); --i >= 0; ) {
-                knotCoordinates[0] = knotCoordinates[0].step(xStep, yStep);
-                for(int j = 1; j < knotCoordinates.length; j++) {
-                    moveKnot(j);
+                knotXs[0] += xStep;
+                knotYs[0] += yStep;
+                for(int j = 1; j < knotXs.length; j++) {
+                    if(!moveKnot(j)) {
+                        // the rest of the rope is slack
+                        break;
+                    }
                 }
             }
         }
 
-        protected void moveKnot(int knotIndex) {
+        /**
+         * @return true if the knot had to move to keep up with the one ahead of it
+         */
+        protected boolean moveKnot(int knotIndex) {
             if(knotIndex <= 0) {
                 throw new IllegalArgumentException("Cannot move head");
             }
-            final var leader = knotCoordinates[knotIndex - 1];
-            var follower = knotCoordinates[knotIndex];
-
-            if(leader.equals(follower)) {
-                return;
-            } else if (leader.distance(follower) <= 1) {
-                return;
+            final int xDistance = knotXs[knotIndex - 1] - knotXs[knotIndex];
+            final int yDistance = knotYs[knotIndex - 1] - knotYs[knotIndex];
+            if(Math.abs(xDistance) <= 1 && Math.abs(yDistance) <= 1) {
+                return false;
             }
 
-            follower = follower.stepTowards(leader);
-            knotCoordinates[knotIndex] = follower;
+            knotXs[knotIndex] += Integer.signum(xDistance);
+            knotYs[knotIndex] += Integer.signum(yDistance);
 
-            if(knotIndex == knotCoordinates.length - 1) {
-                visited.computeIfAbsent(follower.x(), (key) -> new TreeSet<>()).add(follower.y());
+            if(knotIndex == knotXs.length - 1) {
+                visited.add(Coordinates.pack(knotXs[knotIndex], knotYs[knotIndex]));
             }
+            return true;
         }
 
     }
@@ -143,27 +130,152 @@ public class Day09 {
         }
     }
 
-    protected Stream<Instruction> getInput() {
-        return StreamSupport
-                .stream(new LineSpliterator("day-09.txt"),
-                        false)
-                .map(Instruction::parse);
+    protected List<Instruction> getInput() {
+        return parse(MappedInput.open("day-09.txt"));
+    }
+
+    public List<Instruction> parse(final MappedInput input) {
+        return input.lines()
+                .map(line -> Instruction.parse(line.toString()))
+                .toList();
+    }
+
+    public Integer solvePart1(final List<Instruction> instructions) {
+        final var rope = new Rope(2);
+        instructions.forEach(rope::process);
+        return rope.countVisited();
+    }
+
+    public Integer solvePart2(final List<Instruction> instructions) {
+        final var rope = new Rope(10);
+        instructions.forEach(rope::process);
+        return rope.countVisited();
     }
 
     @Test
     public final void part1() {
-        final var rope = new Rope(2);
-        getInput().forEach(rope::process);
-        final var result = rope.countVisited();
+        final var result = solvePart1(getInput());
         System.out.println("Part 1: " + result);
     }
 
     @Test
     public final void part2() {
-        final var rope = new Rope(10);
-        getInput().forEach(rope::process);
-        final var result = rope.countVisited();
+        final var result = solvePart2(getInput());
         System.out.println("Part 2: " + result);
     }
 
+    @Test
+    public final void testLongHashSetMatchesHashSet() {
+        // given
+        final var random = new SplittableRandom(9);
+        final var set = new LongHashSet();
+        final var expected = new HashSet<Long>();
+
+        // when
+        for(int i = 0; i < 100_000; i++) {
+            // a small range of elements makes collisions, and removals from the middle of clusters, common
+            final var element = random.nextInt(16) == 0 ? Long.MIN_VALUE : random.nextLong(-256, 256);
+            switch(random.nextInt(3)) {
+                case 0 -> Assertions.assertEquals(expected.add(element), set.add(element));
+                case 1 -> Assertions.assertEquals(expected.remove(element), set.remove(element));
+                default -> Assertions.assertEquals(expected.contains(element), set.contains(element));
+            }
+            Assertions.assertEquals(expected.size(), set.size());
+        }
+
+        // then
+        for(long element = -256; element < 256; element++) {
+            Assertions.assertEquals(expected.contains(element), set.contains(element));
+        }
+        final var elements = set.toArray();
+        Arrays.sort(elements);
+        Assertions.assertArrayEquals(expected.stream().mapToLong(Long::longValue).sorted().toArray(), elements);
+    }
+
+    @Test
+    public final void testLongHashSetRemovesAcrossWrapAround() {
+        // given three elements whose home is the last slot, so their probe sequence wraps to the start, and one
+        // whose home is the first slot
+        final var set = new LongHashSet(8);
+        final var mask = LongHashSet.capacityFor(8) - 1;
+        final var last = elementsWithHome(mask, mask, 3);
+        final var first = elementsWithHome(mask, 0, 1)[0];
+        for(final var element : last) {
+            set.add(element);
+        }
+        set.add(first);
+
+        // when
+        final var removed = set.remove(last[0]);
+
+        // then
+        Assertions.assertTrue(removed);
+        Assertions.assertFalse(set.contains(last[0]));
+        Assertions.assertTrue(set.contains(last[1]));
+        Assertions.assertTrue(set.contains(last[2]));
+        Assertions.assertTrue(set.contains(first));
+        Assertions.assertTrue(set.remove(last[1]));
+        Assertions.assertTrue(set.contains(last[2]));
+        Assertions.assertTrue(set.contains(first));
+        Assertions.assertEquals(2, set.size());
+    }
+
+    @Test
+    public final void testLongHashSetRehash() {
+        // given
+        final var set = new LongHashSet();
+
+        // when
+        for(long i = 0; i < 10_000; i++) {
+            Assertions.assertTrue(set.add(i * 1_024));
+        }
+        for(long i = 0; i < 10_000; i += 2) {
+            Assertions.assertTrue(set.remove(i * 1_024));
+        }
+
+        // then
+        Assertions.assertEquals(5_000, set.size());
+        for(long i = 0; i < 10_000; i++) {
+            Assertions.assertEquals(i % 2 == 1, set.contains(i * 1_024));
+        }
+        final var copy = new LongHashSet(set);
+        copy.clear();
+        Assertions.assertTrue(copy.isEmpty());
+        Assertions.assertEquals(5_000, set.size());
+    }
+
+    /**
+     * @return the first elements, counting up from zero, that hash to the given slot of a table
+     */
+    protected static long[] elementsWithHome(final int mask, final int home, final int count) {
+        final var result = new long[count];
+        for(long candidate = 0, found = 0; found < count; candidate++) {
+            if(((int) LongHashSet.mix(candidate) & mask) == home) {
+                result[(int) found++] = candidate;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Generates a series of head motions.
+     *
+     * @param motions     the number of motions
+     * @param maxDistance the furthest the head moves in a single motion
+     */
+    public record Generator(int motions, int maxDistance) implements InputGenerator {
+        private static final char[] DIRECTIONS = {'U', 'D', 'L', 'R'};
+
+        public static Generator atScale(final int scale) {
+            return new Generator(2_000 * scale, 20);
+        }
+
+        public void generate(final SplittableRandom random, final Writer output) throws IOException {
+            for(int i = motions(); --i >= 0; ) {
+                output.write(DIRECTIONS[random.nextInt(DIRECTIONS.length)]);
+                output.write(" " + random.nextInt(1, maxDistance() + 1) + "\n");
+            }
+        }
+    }
+
 }
\ No newline at end of file
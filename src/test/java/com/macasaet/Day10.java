@@ -2,18 +2,19 @@ package com.macasaet;
 
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.SplittableRandom;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Stream;
-import java.util.stream.StreamSupport;
 
 /**
  * --- Day 10: Cathode-Ray Tube ---
  * <a href="https://adventofcode.com/2022/day/10">https://adventofcode.com/2022/day/10</a>
  */
-public class Day10 {
+public class Day10 implements Puzzle<List<Day10.Operation>> {
 
     public enum Instruction {
         noop {
@@ -29,8 +30,13 @@ public class Day10 {
 
         public abstract int cycles();
 
-        public static Instruction parse(final String string) {
-            return Instruction.valueOf(string);
+        public static Instruction parse(final CharSequence string) {
+            for (final var candidate : Instruction.values()) {
+                if (candidate.name().contentEquals(string)) {
+                    return candidate;
+                }
+            }
+            throw new IllegalArgumentException("Invalid instruction: " + string);
         }
     }
 
@@ -44,12 +50,15 @@ public class Day10 {
             };
         }
 
-        public static Operation parse(final String line) {
-            final var components = line.split(" ");
-            final var instruction = Instruction.parse(components[0]);
+        public static Operation parse(final CharSequence line) {
+            int separator = 0;
+            while(separator < line.length() && line.charAt(separator) != ' ') {
+                separator++;
+            }
+            final var instruction = Instruction.parse(line.subSequence(0, separator));
             Integer argument = null;
             if(instruction == Instruction.addx) {
-                argument = Integer.parseInt(components[1]);
+                argument = Integer.parseInt(line, separator + 1, line.length(), 10);
             }
             return new Operation(instruction, argument);
         }
@@ -117,19 +126,21 @@ public class Day10 {
         }
     }
 
-    protected Stream<Operation> getInput() {
-        return StreamSupport
-                .stream(new LineSpliterator("day-10.txt"),
-                        false)
-                .map(Operation::parse);
+    protected List<Operation> getInput() {
+        return parse(MappedInput.open("day-10.txt"));
     }
 
-    @Test
-    public final void part1() {
+    public List<Operation> parse(final MappedInput input) {
+        return input.lines()
+                .map(Operation::parse)
+                .toList();
+    }
+
+    public Integer solvePart1(final List<Operation> operations) {
         final var interestingCycles = Arrays.asList(20, 60, 100, 140, 180, 220);
         final var state = new State();
         final var accumulator = new AtomicInteger(0);
-        getInput().forEach(instruction -> {
+        operations.forEach(instruction -> {
             final var sideEffects = state.execute(instruction);
             for(final var sideEffect : sideEffects) {
                 if(interestingCycles.contains(sideEffect.cycle)) {
@@ -137,17 +148,59 @@ public class Day10 {
                 }
             }
         });
-        final var result = accumulator.get();
-        System.out.println("Part 1: " + result);
+        return accumulator.get();
     }
 
-    @Test
-    public final void part2() {
+    /**
+     * @return the image rendered on the display
+     */
+    public String solvePart2(final List<Operation> operations) {
         final var state = new State();
         final var display = new Display();
         display.update(new CycleSnapshot(1, 1));
-        getInput().forEach(instruction -> state.execute(instruction).forEach(display::update));
-        System.out.println("Part 2:\n" + display);
+        operations.forEach(instruction -> state.execute(instruction).forEach(display::update));
+        return display.toString();
+    }
+
+    @Test
+    public final void part1() {
+        final var result = solvePart1(getInput());
+        System.out.println("Part 1: " + result);
+    }
+
+    @Test
+    public final void part2() {
+        final var result = solvePart2(getInput());
+        System.out.println("Part 2:\n" + result);
+    }
+
+    /**
+     * Generates a program that keeps the register near the visible columns of the display.
+     *
+     * @param cycles the minimum number of cycles the program takes to run, 240 to fill the display
+     */
+    public record Generator(int cycles) implements InputGenerator {
+        public static Generator atScale(final int scale) {
+            return new Generator(240 * scale);
+        }
+
+        public void generate(final SplittableRandom random, final Writer output) throws IOException {
+            int register = 1;
+            for(int cycle = 0; cycle < cycles(); ) {
+                if(random.nextInt(3) == 0) {
+                    output.write("noop\n");
+                    cycle++;
+                } else {
+                    var argument = random.nextInt(-15, 16);
+                    if(register + argument < -5 || register + argument > 45) {
+                        argument = -argument;
+                    }
+                    register += argument;
+                    output.write("addx " + argument + "\n");
+                    cycle += 2;
+                }
+            }
+        }
     }
 
 }
\ No newline at end of file
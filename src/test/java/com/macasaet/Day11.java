@@ -2,22 +2,27 @@ package com.macasaet;
 
 import org.junit.jupiter.api.Test;
 
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Objects;
+import java.util.SplittableRandom;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
 
 /**
  * --- Day 11: Monkey in the Middle ---
  * <a href="https://adventofcode.com/2022/day/11">https://adventofcode.com/2022/day/11</a>
  */
-public class Day11 {
+public class Day11 implements Puzzle<List<Day11.Monkey>>, Snapshot.Codec<List<Day11.Monkey>> {
 
     public enum Operator implements BiFunction<BigInteger, BigInteger, BigInteger> {
         ADD {
@@ -40,15 +45,17 @@ public class Day11 {
         }
     }
 
-    public record Operation(Operator operator,
-                            Function<BigInteger, BigInteger> lValueSupplier,
-                            Function<BigInteger, BigInteger> rValueSupplier) implements Function<BigInteger, BigInteger> {
+    /**
+     * @param operator the arithmetic to perform
+     * @param lValue   the left operand or null to use the old worry level
+     * @param rValue   the right operand or null to use the old worry level
+     */
+    public record Operation(Operator operator, BigInteger lValue, BigInteger rValue)
+            implements Function<BigInteger, BigInteger> {
 
         public BigInteger apply(final BigInteger oldValue) {
             Objects.requireNonNull(oldValue);
-            final var lValue = lValueSupplier.apply(oldValue);
-            final var rValue = rValueSupplier.apply(oldValue);
-            return operator.apply(lValue, rValue);
+            return operator.apply(lValue == null ? oldValue : lValue, rValue == null ? oldValue : rValue);
         }
 
         public static Operation parse(String line) {
@@ -58,15 +65,11 @@ public class Day11 {
             }
             final var components = line.split(" ");
             final var lValueExpression = components[3];
-            final Function<BigInteger, BigInteger> lValueSupplier = "old".equalsIgnoreCase(lValueExpression)
-                    ? old -> old
-                    : ignored -> new BigInteger(lValueExpression);
+            final var lValue = "old".equalsIgnoreCase(lValueExpression) ? null : new BigInteger(lValueExpression);
             final var operator = Operator.parse(components[4]);
             final var rValueExpression = components[5];
-            final Function<BigInteger, BigInteger> rValueSupplier = "old".equalsIgnoreCase(rValueExpression)
-                    ? old -> old
-                    : ignored -> new BigInteger(rValueExpression);
-            return new Operation(operator, lValueSupplier, rValueSupplier);
+            final var rValue = "old".equalsIgnoreCase(rValueExpression) ? null : new BigInteger(rValueExpression);
+            return new Operation(operator, lValue, rValue);
         }
     }
 
@@ -97,6 +100,15 @@ public class Day11 {
             return new Monkey(id, startingItems, operation, divisor, targetIfTrue, targetIfFalse, new AtomicReference<>(BigInteger.ZERO));
         }
 
+        /**
+         * @return a monkey in the same state as this one whose items and inspection count can be updated
+         * independently
+         */
+        public Monkey copy() {
+            return new Monkey(id(), new ArrayList<>(items()), operation(), divisor(), targetIfTrue(), targetIfFalse(),
+                    new AtomicReference<>(countItemsInspected()));
+        }
+
         public BigInteger countItemsInspected() {
             return itemsInspected.get();
         }
@@ -137,53 +149,234 @@ public class Day11 {
     }
 
     protected List<Monkey> getInput() {
-        final var input = StreamSupport
-                .stream(new LineSpliterator("day-11.txt"),
-                        false).collect(Collectors.joining("\n"));
-        return Arrays.stream(input.split("\n\n"))
-                .map(Monkey::parse)
+        return parse(MappedInput.open("day-11.txt"));
+    }
+
+    public List<Monkey> parse(final MappedInput input) {
+        return input.blocks()
+                .map(block -> Monkey.parse(block.toString()))
                 .toList();
     }
 
-    @Test
-    public final void part1() {
-        final var monkeys = getInput();
-        final Function<BigInteger, BigInteger> worryUpdater = worryLevel -> worryLevel.divide(BigInteger.valueOf(3));
-        for(int i = 20; --i >= 0; ) {
-            for(final var monkey : monkeys) {
-                for(final var toss : monkey.inspectItems(worryUpdater)) {
-                    monkeys.get(toss.target()).items().add(toss.itemWorryLevel());
-                }
+    /**
+     * The fewest bytes a non-null number occupies: its length and at least one byte
+     */
+    private static final int MIN_NUMBER_BYTES = Integer.BYTES + 1;
+    /**
+     * The fewest bytes a monkey occupies: its ID, item count, operator, two null operands, divisor and targets
+     */
+    private static final int MIN_MONKEY_BYTES = Integer.BYTES * 2 + 1 + Integer.BYTES * 2 + MIN_NUMBER_BYTES
+            + Integer.BYTES * 2;
+
+    public int snapshotVersion() {
+        return 1;
+    }
+
+    /**
+     * Each monkey is its ID, its items, its operator and operands (null for the old worry level), its divisor and
+     * its two targets.
+     */
+    public void writeSnapshot(final List<Monkey> monkeys, final DataOutput output) throws IOException {
+        output.writeInt(monkeys.size());
+        for(final var monkey : monkeys) {
+            output.writeInt(monkey.id());
+            output.writeInt(monkey.items().size());
+            for(final var item : monkey.items()) {
+                Snapshot.writeBigInteger(output, item);
+            }
+            output.writeByte(monkey.operation().operator().ordinal());
+            Snapshot.writeBigInteger(output, monkey.operation().lValue());
+            Snapshot.writeBigInteger(output, monkey.operation().rValue());
+            Snapshot.writeBigInteger(output, monkey.divisor());
+            output.writeInt(monkey.targetIfTrue());
+            output.writeInt(monkey.targetIfFalse());
+        }
+    }
+
+    public List<Monkey> readSnapshot(final ByteBuffer input) {
+        final var monkeys = new Monkey[Snapshot.readCount(input, MIN_MONKEY_BYTES)];
+        for(int i = 0; i < monkeys.length; i++) {
+            final var id = input.getInt();
+            final var items = new ArrayList<BigInteger>(); // must be mutable
+            for(int j = Snapshot.readCount(input, MIN_NUMBER_BYTES); --j >= 0; items.add(readNumber(input)));
+            final var ordinal = input.get();
+            if(ordinal < 0 || ordinal >= Operator.values().length) {
+                throw Snapshot.corrupt("invalid operator " + ordinal);
             }
+            final var operator = Operator.values()[ordinal];
+            final var lValue = Snapshot.readBigInteger(input);
+            final var operation = new Operation(operator, lValue, Snapshot.readBigInteger(input));
+            final var divisor = readNumber(input);
+            final var targetIfTrue = input.getInt();
+            final var targetIfFalse = input.getInt();
+            if(targetIfTrue < 0 || targetIfTrue >= monkeys.length || targetIfFalse < 0
+                    || targetIfFalse >= monkeys.length) {
+                throw Snapshot.corrupt("invalid target for monkey " + id);
+            }
+            monkeys[i] = new Monkey(id, items, operation, divisor, targetIfTrue, targetIfFalse,
+                    new AtomicReference<>(BigInteger.ZERO));
+        }
+        return List.of(monkeys);
+    }
+
+    /**
+     * @return a number that, unlike an operand, may not be null
+     */
+    protected static BigInteger readNumber(final ByteBuffer input) {
+        final var result = Snapshot.readBigInteger(input);
+        if(result == null) {
+            throw Snapshot.corrupt("missing number");
+        }
+        return result;
+    }
+
+    public BigInteger solvePart1(final List<Monkey> initialState) {
+        final var monkeys = initialState.stream().map(Monkey::copy).toList();
+        final Function<BigInteger, BigInteger> worryUpdater = worryLevel -> worryLevel.divide(BigInteger.valueOf(3));
+        for(int i = 1; i <= 20; i++) {
+            round(monkeys, worryUpdater, i);
         }
-        final var result = monkeys.stream()
+        return monkeys.stream()
                 .map(Monkey::countItemsInspected)
                 .sorted(Comparator.reverseOrder())
                 .limit(2)
                 .reduce(BigInteger::multiply)
                 .get();
-        System.out.println("Part 1: " + result);
     }
 
-    @Test
-    public final void part2() {
-        final var monkeys = getInput();
+    public BigInteger solvePart2(final List<Monkey> initialState) {
+        final var monkeys = initialState.stream().map(Monkey::copy).toList();
         final var productOfDivisors = monkeys.stream().map(Monkey::divisor).reduce(BigInteger::multiply).get();
         final Function<BigInteger, BigInteger> worryUpdater = worryLevel -> worryLevel.mod(productOfDivisors);
-        for(int i = 10_000; --i >= 0; ) {
-            for(final var monkey : monkeys) {
-                for(final var toss : monkey.inspectItems(worryUpdater)) {
-                    monkeys.get(toss.target()).items().add(toss.itemWorryLevel());
-                }
-            }
+        for(int i = 1; i <= 10_000; i++) {
+            round(monkeys, worryUpdater, i);
         }
-        final var result = monkeys.stream()
+        return monkeys.stream()
                 .map(Monkey::countItemsInspected)
                 .sorted(Comparator.reverseOrder())
                 .limit(2)
                 .reduce(BigInteger::multiply)
                 .get();
+    }
+
+    /**
+     * Let every monkey take its turn once.
+     *
+     * @param round the number of the round, starting at 1
+     */
+    protected void round(final List<Monkey> monkeys, final Function<BigInteger, BigInteger> worryUpdater,
+                         final int round) {
+        final var event = new PuzzleEvents.Round();
+        event.begin();
+        long throwsMade = 0;
+        for(final var monkey : monkeys) {
+            for(final var toss : monkey.inspectItems(worryUpdater)) {
+                monkeys.get(toss.target()).items().add(toss.itemWorryLevel());
+                throwsMade++;
+            }
+        }
+        if(event.shouldCommit()) {
+            event.day = 11;
+            event.round = round;
+            event.moves = throwsMade;
+            event.commit();
+        }
+    }
+
+    @Test
+    public final void part1() {
+        final var result = solvePart1(getInput());
+        System.out.println("Part 1: " + result);
+    }
+
+    @Test
+    public final void part2() {
+        final var result = solvePart2(getInput());
         System.out.println("Part 2: " + result);
     }
 
+    /**
+     * Generates notes on a troop of monkeys. Every monkey tests against a distinct prime, never throws to itself, and
+     * exactly one monkey squares your worry level.
+     *
+     * @param monkeys          the number of monkeys, at least 2
+     * @param maxStartingItems the most items any one monkey holds initially
+     */
+    public record Generator(int monkeys, int maxStartingItems) implements InputGenerator {
+        public Generator {
+            if(monkeys < 2) {
+                throw new IllegalArgumentException("Monkeys need someone to throw to");
+            }
+        }
+
+        public static Generator atScale(final int scale) {
+            return new Generator(8 * scale, 8);
+        }
+
+        public void generate(final SplittableRandom random, final Writer output) throws IOException {
+            final var divisors = primes(monkeys());
+            for(int i = divisors.length; --i > 0; ) {
+                final var j = random.nextInt(i + 1);
+                final var swap = divisors[i];
+                divisors[i] = divisors[j];
+                divisors[j] = swap;
+            }
+            final var squarer = random.nextInt(monkeys());
+            for(int id = 0; id < monkeys(); id++) {
+                if(id > 0) {
+                    output.write('\n');
+                }
+                final var items = new StringBuilder();
+                for(int i = random.nextInt(1, maxStartingItems() + 1); --i >= 0; ) {
+                    items.append(random.nextInt(50, 100));
+                    if(i > 0) {
+                        items.append(", ");
+                    }
+                }
+                final String operation;
+                if(id == squarer) {
+                    operation = "old * old";
+                } else if(random.nextBoolean()) {
+                    operation = "old * " + random.nextInt(2, 20);
+                } else {
+                    operation = "old + " + random.nextInt(1, 9);
+                }
+                final var targetIfTrue = otherMonkey(random, id);
+                int targetIfFalse;
+                do {
+                    targetIfFalse = otherMonkey(random, id);
+                } while(targetIfFalse == targetIfTrue && monkeys() > 2);
+                output.write("Monkey " + id + ":\n"
+                        + "  Starting items: " + items + "\n"
+                        + "  Operation: new = " + operation + "\n"
+                        + "  Test: divisible by " + divisors[id] + "\n"
+                        + "    If true: throw to monkey " + targetIfTrue + "\n"
+                        + "    If false: throw to monkey " + targetIfFalse + "\n");
+            }
+        }
+
+        protected int otherMonkey(final SplittableRandom random, final int id) {
+            final var result = random.nextInt(monkeys() - 1);
+            return result >= id ? result + 1 : result;
+        }
+
+        protected static int[] primes(final int count) {
+            final var result = new int[count];
+            int found = 0;
+            for(int candidate = 2; found < count; candidate++) {
+                boolean prime = true;
+                for(int i = 0; i < found && result[i] * result[i] <= candidate; i++) {
+                    if(candidate % result[i] == 0) {
+                        prime = false;
+                        break;
+                    }
+                }
+                if(prime) {
+                    result[found++] = candidate;
+                }
+            }
+            return result;
+        }
+    }
+
 }
\ No newline at end of file
@@ -1,123 +1,115 @@
 package com.macasaet;
 
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Objects;
-import java.util.PriorityQueue;
-import java.util.stream.StreamSupport;
+import java.util.NoSuchElementException;
+import java.util.SplittableRandom;
 
 /**
  * --- Day 12: Hill Climbing Algorithm ---
  * <a href="https://adventofcode.com/2022/day/12">https://adventofcode.com/2022/day/12</a>
  */
-public class Day12 {
+public class Day12 implements Puzzle<Day12.HeightMap>, Snapshot.Codec<Day12.HeightMap> {
 
-    record Coordinate(int x, int y) {
-    }
-
-    public record HeightMap(int[][] grid, Coordinate start, Coordinate end) {
+    /**
+     * @param grid  the height of each cell
+     * @param start the {@link Coordinates packed coordinate} of the current position
+     * @param end   the {@link Coordinates packed coordinate} of the location with the best signal
+     */
+    public record HeightMap(int[][] grid, long start, long end) {
 
         public int lengthOfShortestPath() {
             return this.lengthOfShortestPath(this.start);
         }
 
-        public int lengthOfShortestPath(final Coordinate startingPoint) {
-                final var cheapestCostToNode = new HashMap<Coordinate, Integer>();
-                cheapestCostToNode.put(startingPoint, 0);
-                final var estimatedCostToFinish = new HashMap<Coordinate, Integer>();
-                estimatedCostToFinish.put(startingPoint, estimateDistance(startingPoint, this.end));
-                final var openSet = new PriorityQueue<Coordinate>((x, y) -> {
-                    final var xScore = estimatedCostToFinish.getOrDefault(x, Integer.MAX_VALUE);
-                    final var yScore = estimatedCostToFinish.getOrDefault(y, Integer.MAX_VALUE);
-                    return xScore.compareTo(yScore);
-                });
-                openSet.add(startingPoint);
-                while (!openSet.isEmpty()) {
-                    final var current = openSet.remove();
-                    if (current.equals(this.end)) {
-                        return cheapestCostToNode.get(current);
+        /**
+         * Every step costs the same, so a breadth-first search finds the shortest path.
+         */
+        public int lengthOfShortestPath(final long startingPoint) {
+            final var visited = new BitGrid(0, 0, grid.length, grid[0].length);
+            visited.set(Coordinates.x(startingPoint), Coordinates.y(startingPoint));
+            final var frontier = new LongQueue();
+            frontier.add(startingPoint);
+            for (int distance = 0; !frontier.isEmpty(); distance++) {
+                final var event = new PuzzleEvents.Expansion();
+                event.begin();
+                final var queueSize = frontier.size();
+                for (int i = queueSize; --i >= 0; ) {
+                    final var current = frontier.remove();
+                    if (current == this.end) {
+                        return distance;
                     }
-                    for (final var neighbour : neighbours(current)) {
-                        final var tentativeGScore = cheapestCostToNode.get(current) + 1;
-                        if (tentativeGScore < cheapestCostToNode.getOrDefault(neighbour, Integer.MAX_VALUE)) {
-                            cheapestCostToNode.put(neighbour, tentativeGScore);
-                            estimatedCostToFinish.put(neighbour, tentativeGScore + estimateDistance(neighbour, this.end));
-                            if (!openSet.contains(neighbour)) {
-                                openSet.add(neighbour);
-                            }
+                    final var maxHeight = height(current) + 1;
+                    for (int j = 0; j < Coordinates.ORTHOGONAL; j++) {
+                        final var neighbour = Coordinates.orthogonalNeighbour(current, j);
+                        final var x = Coordinates.x(neighbour);
+                        final var y = Coordinates.y(neighbour);
+                        if (x >= 0 && x < grid.length && y >= 0 && y < grid[x].length && grid[x][y] <= maxHeight
+                                && visited.set(x, y)) {
+                            frontier.add(neighbour);
                         }
                     }
                 }
-                return Integer.MAX_VALUE;
-            }
-
-            public List<Coordinate> getPotentialTrailHeads() {
-                final var list = new ArrayList<Coordinate>();
-                for(int i = this.grid().length; --i >= 0; ) {
-                    final var row = this.grid()[i];
-                    for(int j = row.length; --j >= 0; ) {
-                        if(row[j] == 0) {
-                            list.add(new Coordinate(i, j));
-                        }
-                    }
+                if (event.shouldCommit()) {
+                    event.day = 12;
+                    event.depth = distance;
+                    event.queueSize = queueSize;
+                    event.cellsTouched = queueSize * Coordinates.ORTHOGONAL;
+                    event.commit();
                 }
-                return Collections.unmodifiableList(list);
-            }
-
-            int height(final Coordinate coordinate) {
-                return this.grid[coordinate.x()][coordinate.y()];
             }
+            return Integer.MAX_VALUE;
+        }
 
-            List<Coordinate> neighbours(final Coordinate coordinate) {
-                final var list = new ArrayList<Coordinate>(4);
-                if (coordinate.x() > 0) {
-                    final var up = new Coordinate(coordinate.x() - 1, coordinate.y());
-                    if (height(coordinate) + 1 >= height(up)) {
-                        list.add(up);
-                    }
-                }
-                if (coordinate.x() < this.grid.length - 1) {
-                    final var down = new Coordinate(coordinate.x() + 1, coordinate.y());
-                    if (height(coordinate) + 1 >= height(down)) {
-                        list.add(down);
-                    }
-                }
-                if (coordinate.y() > 0) {
-                    final var left = new Coordinate(coordinate.x(), coordinate.y() - 1);
-                    if (height(coordinate) + 1 >= height(left)) {
-                        list.add(left);
-                    }
-                }
-                final var row = this.grid[coordinate.x()];
-                if (coordinate.y() < row.length - 1) {
-                    final var right = new Coordinate(coordinate.x(), coordinate.y() + 1);
-                    if (height(coordinate) + 1 >= height(right)) {
-                        list.add(right);
+        /**
+         * @return the {@link Coordinates packed coordinates} of every cell at the lowest elevation
+         */
+        public long[] getPotentialTrailHeads() {
+            var result = new long[16];
+            int count = 0;
+            for(int i = this.grid().length; --i >= 0; ) {
+                final var row = this.grid()[i];
+                for(int j = row.length; --j >= 0; ) {
+                    if(row[j] == 0) {
+                        if(count == result.length) {
+                            result = Arrays.copyOf(result, count * 2);
+                        }
+                        result[count++] = Coordinates.pack(i, j);
                     }
                 }
-                return Collections.unmodifiableList(list);
-            }
-
-            int estimateDistance(final Coordinate from, final Coordinate to) {
-                return (int) Math.sqrt(Math.pow(from.x() - to.x(), 2.0) + Math.pow(from.y() - to.y(), 2.0));
             }
+            return Arrays.copyOf(result, count);
+        }
 
+        int height(final long coordinate) {
+            return this.grid[Coordinates.x(coordinate)][Coordinates.y(coordinate)];
         }
 
+    }
+
     protected HeightMap getInput() {
-        final var charGrid = StreamSupport.stream(new LineSpliterator("day-12.txt"), false).map(line -> {
+        return parse(MappedInput.open("day-12.txt"));
+    }
+
+    public HeightMap parse(final MappedInput input) {
+        final var charGrid = input.lines().map(line -> {
             final var list = new ArrayList<Character>(line.length());
-            for (final var c : line.toCharArray()) {
-                list.add(c);
+            for (int i = 0; i < line.length(); i++) {
+                list.add(line.charAt(i));
             }
             return list;
         }).toList();
-        Coordinate origin = null;
-        Coordinate destination = null;
+        long origin = -1;
+        long destination = -1;
         int[][] grid = new int[charGrid.size()][];
         for(int i = charGrid.size(); --i >= 0; ) {
             final var row = charGrid.get(i);
@@ -125,31 +117,68 @@ public class Day12 {
             for(int j = row.size(); --j >= 0; ) {
                 final char c = row.get(j);
                 if(c == 'S') {
-                    origin = new Coordinate(i, j);
+                    origin = Coordinates.pack(i, j);
                     grid[i][j] = 0;
                 } else if(c == 'E') {
-                    destination = new Coordinate(i, j);
+                    destination = Coordinates.pack(i, j);
                     grid[i][j] = 'z' - 'a';
                 } else {
                     grid[i][j] = c - 'a';
                 }
             }
         }
-        Objects.requireNonNull(origin);
-        Objects.requireNonNull(destination);
+        if(origin < 0 || destination < 0) {
+            throw new IllegalArgumentException("Missing start or end");
+        }
         return new HeightMap(grid, origin, destination);
     }
 
-    @Test
-    public final void part1() {
-        final var map = getInput();
-        final var result = map.lengthOfShortestPath();
-        System.out.println("Part 1: " + result);
+    public int snapshotVersion() {
+        return 1;
     }
 
-    @Test
-    public final void part2() {
-        final var map = getInput();
+    /**
+     * The start and end then, for each row, its length followed by one byte per height.
+     */
+    public void writeSnapshot(final HeightMap map, final DataOutput output) throws IOException {
+        output.writeLong(map.start());
+        output.writeLong(map.end());
+        output.writeInt(map.grid().length);
+        for(final var row : map.grid()) {
+            output.writeInt(row.length);
+            for(final var height : row) {
+                output.writeByte(height);
+            }
+        }
+    }
+
+    public HeightMap readSnapshot(final ByteBuffer input) {
+        final var start = input.getLong();
+        final var end = input.getLong();
+        final var grid = new int[Snapshot.readCount(input, Integer.BYTES)][];
+        for(int i = 0; i < grid.length; i++) {
+            grid[i] = new int[Snapshot.readCount(input, 1)];
+            for(int j = 0; j < grid[i].length; j++) {
+                grid[i][j] = input.get();
+            }
+        }
+        if(!contains(grid, start) || !contains(grid, end)) {
+            throw Snapshot.corrupt("start or end outside the map");
+        }
+        return new HeightMap(grid, start, end);
+    }
+
+    protected static boolean contains(final int[][] grid, final long coordinate) {
+        final var x = Coordinates.x(coordinate);
+        final var y = Coordinates.y(coordinate);
+        return x >= 0 && x < grid.length && y >= 0 && y < grid[x].length;
+    }
+
+    public Integer solvePart1(final HeightMap map) {
+        return map.lengthOfShortestPath();
+    }
+
+    public Integer solvePart2(final HeightMap map) {
         var result = Integer.MAX_VALUE;
         for(final var candidate : map.getPotentialTrailHeads()) {
             final var length = map.lengthOfShortestPath(candidate);
@@ -157,8 +186,88 @@ public class Day12 {
                 result = length;
             }
         }
+        return result;
+    }
+
+    @Test
+    public final void part1() {
+        final var result = solvePart1(getInput());
+        System.out.println("Part 1: " + result);
+    }
+
+    @Test
+    public final void part2() {
+        final var result = solvePart2(getInput());
 
         System.out.println("Part 2: " + result);
     }
 
+    @Test
+    public final void testLongQueueMatchesArrayDeque() {
+        // given
+        final var random = new SplittableRandom(12);
+        final var queue = new LongQueue(2);
+        final var expected = new ArrayDeque<Long>();
+
+        // when
+        for(int i = 0; i < 100_000; i++) {
+            // favour adding slightly so that the queue both wraps around and grows
+            if(expected.isEmpty() || random.nextInt(100) < 51) {
+                final var element = random.nextLong();
+                queue.add(element);
+                expected.add(element);
+            } else {
+                Assertions.assertEquals((long) expected.remove(), queue.remove());
+            }
+            Assertions.assertEquals(expected.size(), queue.size());
+        }
+
+        // then
+        while(!expected.isEmpty()) {
+            Assertions.assertEquals((long) expected.remove(), queue.remove());
+        }
+        Assertions.assertTrue(queue.isEmpty());
+        Assertions.assertThrows(NoSuchElementException.class, queue::remove);
+    }
+
+    /**
+     * Generates a height map that rises from west to east with random bumps and hollows. The row holding the start
+     * and the best signal rises one step at a time, so there is always a path between them.
+     *
+     * @param rows    the number of rows
+     * @param columns the number of columns, at least 26 so that the terrain can climb from 'a' to 'z'
+     */
+    public record Generator(int rows, int columns) implements InputGenerator {
+        public Generator {
+            if(columns < 26) {
+                throw new IllegalArgumentException("Too few columns to climb from 'a' to 'z': " + columns);
+            }
+        }
+
+        public static Generator atScale(final int scale) {
+            final var factor = Math.sqrt(scale);
+            return new Generator((int) Math.ceil(41 * factor), (int) Math.ceil(170 * factor));
+        }
+
+        public void generate(final SplittableRandom random, final Writer output) throws IOException {
+            final var trail = random.nextInt(rows());
+            final var line = new char[columns() + 1];
+            line[columns()] = '\n';
+            for(int i = 0; i < rows(); i++) {
+                for(int j = columns(); --j >= 0; ) {
+                    var height = j * 26 / columns();
+                    if(i != trail && random.nextInt(3) == 0) {
+                        height = Math.max(0, Math.min(25, height + random.nextInt(-2, 3)));
+                    }
+                    line[j] = (char) ('a' + height);
+                }
+                if(i == trail) {
+                    line[0] = 'S';
+                    line[columns() - 1] = 'E';
+                }
+                output.write(line);
+            }
+        }
+    }
+
 }
\ No newline at end of file
@@ -1,22 +1,28 @@
 package com.macasaet;
 
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.SplittableRandom;
 import java.util.stream.Stream;
-import java.util.stream.StreamSupport;
 
 /**
  * --- Day 13: Distress Signal ---
  * <a href="https://adventofcode.com/2022/day/13">https://adventofcode.com/2022/day/13</a>
  */
-public class Day13 {
+public class Day13 implements Puzzle<List<Day13.Pair>>, Snapshot.Codec<List<Day13.Pair>> {
 
     public record Pair(ListItem x, ListItem y) {
         static Pair parse(final String lines) {
@@ -124,15 +130,83 @@ public class Day13 {
     }
 
     protected List<Pair> getInput() {
-        final var lines = StreamSupport.stream(new LineSpliterator("day-13.txt"), false)
-                .collect(Collectors.joining("\n"));
-        final var blocks = lines.split("\n\n");
-        return Arrays.stream(blocks).map(block -> Pair.parse(block)).toList();
+        return parse(MappedInput.open("day-13.txt"));
     }
 
-    @Test
-    public final void part1() {
-        final var pairs = getInput();
+    public List<Pair> parse(final MappedInput input) {
+        return input.blocks()
+                .map(block -> Pair.parse(block.toString()))
+                .toList();
+    }
+
+    public int snapshotVersion() {
+        return 2;
+    }
+
+    /**
+     * Each packet is a series of tokens, each a tag byte: {@link #OPEN} and {@link #CLOSE} delimit lists and
+     * {@link #LITERAL} is followed by the literal's int value. A packet ends when its outermost list closes.
+     */
+    public void writeSnapshot(final List<Pair> pairs, final DataOutput output) throws IOException {
+        output.writeInt(pairs.size());
+        for(final var pair : pairs) {
+            writeTokens(pair.x(), output);
+            writeTokens(pair.y(), output);
+        }
+    }
+
+    public List<Pair> readSnapshot(final ByteBuffer input) {
+        final var pairs = new Pair[Snapshot.readCount(input, 4)];
+        for(int i = 0; i < pairs.length; i++) {
+            final var x = readTokens(input);
+            pairs[i] = new Pair(x, readTokens(input));
+        }
+        return List.of(pairs);
+    }
+
+    static final byte OPEN = 0;
+    static final byte CLOSE = 1;
+    static final byte LITERAL = 2;
+
+    protected static void writeTokens(final Item item, final DataOutput output) throws IOException {
+        if(item instanceof Literal literal) {
+            output.writeByte(LITERAL);
+            output.writeInt(literal.item());
+        } else {
+            output.writeByte(OPEN);
+            for(final var child : ((ListItem) item).items()) {
+                writeTokens(child, output);
+            }
+            output.writeByte(CLOSE);
+        }
+    }
+
+    /**
+     * @throws IllegalStateException if the tokens do not form a single list
+     */
+    protected static ListItem readTokens(final ByteBuffer input) {
+        final var stack = new ArrayDeque<ListItem>();
+        while(true) {
+            final var tag = input.get();
+            if(tag == OPEN) {
+                stack.push(new ListItem(new ArrayList<>()));
+            } else if(stack.isEmpty()) {
+                throw Snapshot.corrupt("packet does not start with a list at offset " + (input.position() - 1));
+            } else if(tag == CLOSE) {
+                final var completed = stack.pop();
+                if(stack.isEmpty()) {
+                    return completed;
+                }
+                stack.peek().items().add(completed);
+            } else if(tag == LITERAL) {
+                stack.peek().items().add(new Literal(input.getInt()));
+            } else {
+                throw Snapshot.corrupt("invalid tag " + tag + " at offset " + (input.position() - 1));
+            }
+        }
+    }
+
+    public Integer solvePart1(final List<Pair> pairs) {
         var result = 0;
         for(int i = 0; i < pairs.size(); i++) {
             final var pair = pairs.get(i);
@@ -140,12 +214,10 @@ public class Day13 {
                 result += i + 1;
             }
         }
-        System.out.println("Part 1: " + result);
+        return result;
     }
 
-    @Test
-    public final void part2() {
-        final var pairs = getInput();
+    public Integer solvePart2(final List<Pair> pairs) {
         final var packets = pairs.stream().flatMap(Pair::stream).sorted().toList();
         final int leftSearchResult = Collections.binarySearch(packets,
                 new ListItem(Collections.singletonList(new ListItem(Collections.singletonList(new Literal(2))))));
@@ -153,9 +225,99 @@ public class Day13 {
         final int rightSearchResult = Collections.binarySearch(packets,
                 new ListItem(Collections.singletonList(new ListItem(Collections.singletonList(new Literal(6))))));
         final int rightInsertionPoint = -(rightSearchResult + 1) + 2;
-        final int result = leftInsertionPoint * rightInsertionPoint;
+        return leftInsertionPoint * rightInsertionPoint;
+    }
+
+    @Test
+    public final void part1() {
+        final var result = solvePart1(getInput());
+        System.out.println("Part 1: " + result);
+    }
+
+    @Test
+    public final void part2() {
+        final var result = solvePart2(getInput());
 
         System.out.println("Part 2: " + result);
     }
 
+    @Test
+    public final void testSnapshotRoundTrip() throws IOException {
+        // given
+        final var packet = new ListItem(List.of(new Literal(-1), new ListItem(List.of(new Literal(-2))),
+                new ListItem(List.of())));
+        final var bytes = new ByteArrayOutputStream();
+        writeSnapshot(List.of(new Pair(packet, packet)), new DataOutputStream(bytes));
+
+        // when
+        final var result = readSnapshot(ByteBuffer.wrap(bytes.toByteArray()));
+
+        // then
+        Assertions.assertEquals(List.of(new Pair(packet, packet)), result);
+    }
+
+    @Test
+    public final void testCorruptSnapshotIsAMiss() throws IOException {
+        // given
+        final var snapshot = Files.createTempFile("day-13", ".snapshot");
+        try {
+            final var packet = new ListItem(List.of(new Literal(1)));
+            Snapshot.write(13, this, 1, 2, List.of(new Pair(packet, packet)), snapshot);
+            final var bytes = Files.readAllBytes(snapshot);
+            // replace the opening of the first packet with a stray close
+            bytes[bytes.length - 2 * (1 + 1 + Integer.BYTES + 1)] = CLOSE;
+            Files.write(snapshot, bytes);
+
+            // when
+            final var result = Snapshot.read(13, this, 1, 2, snapshot);
+
+            // then
+            Assertions.assertNull(result);
+        } finally {
+            Files.delete(snapshot);
+        }
+    }
+
+    /**
+     * Generates pairs of randomly nested packets.
+     *
+     * @param pairs    the number of pairs of packets
+     * @param maxDepth the deepest that lists may be nested
+     * @param maxWidth the most items in any one list
+     */
+    public record Generator(int pairs, int maxDepth, int maxWidth) implements InputGenerator {
+        public static Generator atScale(final int scale) {
+            return new Generator(150 * scale, 4, 5);
+        }
+
+        public void generate(final SplittableRandom random, final Writer output) throws IOException {
+            final var line = new StringBuilder();
+            for(int i = 0; i < pairs(); i++) {
+                if(i > 0) {
+                    output.write('\n');
+                }
+                for(int j = 2; --j >= 0; ) {
+                    line.setLength(0);
+                    appendList(random, line, 0);
+                    output.write(line.append('\n').toString());
+                }
+            }
+        }
+
+        protected void appendList(final SplittableRandom random, final StringBuilder line, final int depth) {
+            line.append('[');
+            for(int i = random.nextInt(maxWidth() + 1); --i >= 0; ) {
+                if(depth < maxDepth() && random.nextInt(3) == 0) {
+                    appendList(random, line, depth + 1);
+                } else {
+                    line.append(random.nextInt(11));
+                }
+                if(i > 0) {
+                    line.append(',');
+                }
+            }
+            line.append(']');
+        }
+    }
+
 }
\ No newline at end of file
@@ -1,25 +1,21 @@
 package com.macasaet;
 
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.stream.StreamSupport;
+import java.util.SplittableRandom;
 
 /**
  * --- Day 14: Regolith Reservoir ---
  * <a href="https://adventofcode.com/2022/day/14">https://adventofcode.com/2022/day/14</a>
  */
-public class Day14 {
-
-    public enum Cell {
-        ROCK,
-        SAND
-    }
+public class Day14 implements Puzzle<Day14.Cave> {
 
     record Coordinate(int verticalDepth, int horizontalOffset) {
 
@@ -31,23 +27,34 @@ public class Day14 {
         }
     }
 
-    public record Cave(Map<Integer, Map<Integer, Cell>> grid, int maxDepth, int minHorizontalOffset, int maxHorizontalOffset) {
+    /**
+     * @param rock     the cells containing rock, indexed by vertical depth then horizontal offset
+     * @param occupied the cells containing either rock or sand that has come to rest
+     */
+    public record Cave(BitGrid rock, BitGrid occupied, int maxDepth, int minHorizontalOffset, int maxHorizontalOffset) {
+
+        private static final int AT_REST = Integer.MIN_VALUE;
 
         public int pourSandIntoAbyss() {
             int settledSand = 0;
             while(true) {
-                var fallingSandCoordinate = new Coordinate(0, 500);
+                final var event = new PuzzleEvents.Grain();
+                event.begin();
+                int verticalDepth = 0;
+                int horizontalOffset = 500;
                 while(true) {
-                    final var next = getNextCoordinate(fallingSandCoordinate, null);
-                    if(next != null) {
-                        fallingSandCoordinate = next;
-                        if(fallingSandCoordinate.verticalDepth() >= maxDepth()) {
+                    final var next = getNextHorizontalOffset(verticalDepth, horizontalOffset, Integer.MAX_VALUE);
+                    if(next != AT_REST) {
+                        verticalDepth++;
+                        horizontalOffset = next;
+                        if(verticalDepth >= maxDepth()) {
+                            commit(event, verticalDepth);
                             return settledSand;
                         }
                     } else {
-                        final var row = grid.computeIfAbsent(fallingSandCoordinate.verticalDepth(), key -> new HashMap<>());
-                        row.put(fallingSandCoordinate.horizontalOffset(), Cell.SAND);
+                        occupied().set(verticalDepth, horizontalOffset);
                         settledSand++;
+                        commit(event, verticalDepth);
                         break;
                     }
                 }
@@ -55,20 +62,24 @@ public class Day14 {
         }
 
         public int fillAperture() {
+            final var floorDepth = floorDepth();
             int settledSand = 0;
             while(true) {
-                var fallingSandCoordinate = new Coordinate(0, 500);
+                final var event = new PuzzleEvents.Grain();
+                event.begin();
+                int verticalDepth = 0;
+                int horizontalOffset = 500;
                 while(true) {
-                    final var next = getNextCoordinate(fallingSandCoordinate, floorDepth());
-                    if(next != null) {
-                        fallingSandCoordinate = next;
+                    final var next = getNextHorizontalOffset(verticalDepth, horizontalOffset, floorDepth);
+                    if(next != AT_REST) {
+                        verticalDepth++;
+                        horizontalOffset = next;
                     } else {
-                        final var secondRow = grid().computeIfAbsent(1, key -> new HashMap<>());
-                        if(secondRow.containsKey(499) && secondRow.containsKey(500) && secondRow.containsKey(501)) {
+                        commit(event, verticalDepth);
+                        if(occupied().get(1, 499) && occupied().get(1, 500) && occupied().get(1, 501)) {
                             return settledSand + 1;
                         }
-                        final var row = grid.computeIfAbsent(fallingSandCoordinate.verticalDepth(), key -> new HashMap<>());
-                        row.put(fallingSandCoordinate.horizontalOffset(), Cell.SAND);
+                        occupied().set(verticalDepth, horizontalOffset);
                         settledSand++;
                         break;
                     }
@@ -76,25 +87,46 @@ public class Day14 {
             }
         }
 
+        /**
+         * @return a cave with the same contents as this one that can be filled with sand independently
+         */
+        public Cave copy() {
+            return new Cave(rock(), new BitGrid(occupied()), maxDepth(), minHorizontalOffset(), maxHorizontalOffset());
+        }
+
+        /**
+         * Sand only ever falls one row at a time, so the cells a grain touches are one per row it passes through.
+         */
+        static void commit(final PuzzleEvents.Grain event, final int depth) {
+            if(event.shouldCommit()) {
+                event.day = 14;
+                event.cellsTouched = depth + 1;
+                event.depth = depth;
+                event.commit();
+            }
+        }
+
         int floorDepth() {
             return maxDepth() + 2;
         }
 
-        Coordinate getNextCoordinate(final Coordinate start, Integer floorDepth) {
-            final var x = start.verticalDepth();
-            final var y = start.horizontalOffset();
-            if(floorDepth != null && x + 1 >= floorDepth) {
-                return null;
+        /**
+         * @return the horizontal offset of the cell in the row below into which a unit of falling sand moves or
+         * {@link #AT_REST} if it cannot move
+         */
+        int getNextHorizontalOffset(final int verticalDepth, final int horizontalOffset, final int floorDepth) {
+            final var x = verticalDepth + 1;
+            if(x >= floorDepth) {
+                return AT_REST;
             }
-            final var nextRow = grid().computeIfAbsent(x + 1, key -> new HashMap<>());
-            if(!nextRow.containsKey(y)) {
-                return new Coordinate(x + 1, y);
-            } else if(!nextRow.containsKey(y - 1)) {
-                return new Coordinate(x + 1, y - 1);
-            } else if(!nextRow.containsKey(y + 1)) {
-                return new Coordinate(x + 1, y + 1);
+            if(!occupied().get(x, horizontalOffset)) {
+                return horizontalOffset;
+            } else if(!occupied().get(x, horizontalOffset - 1)) {
+                return horizontalOffset - 1;
+            } else if(!occupied().get(x, horizontalOffset + 1)) {
+                return horizontalOffset + 1;
             }
-            return null;
+            return AT_REST;
         }
 
         public static Cave parse(final Collection<? extends String> lines) {
@@ -102,7 +134,7 @@ public class Day14 {
             int maxHorizontalOffset = Integer.MIN_VALUE;
             int minHorizontalOffset = Integer.MAX_VALUE;
 
-            final var grid = new HashMap<Integer, Map<Integer, Cell>>();
+            final var grid = new BitGrid();
             for(final var line : lines) {
                 final var rockPath = parseRockPaths(line);
                 var last = rockPath.get(0);
@@ -128,9 +160,8 @@ public class Day14 {
                             start = current.horizontalOffset();
                             end = last.horizontalOffset();
                         }
-                        final var row = grid.computeIfAbsent(last.verticalDepth(), key -> new HashMap<>());
                         for(int y = start; y <= end; y++) {
-                            row.put(y, Cell.ROCK);
+                            grid.set(last.verticalDepth(), y);
                         }
                     } else {
                         if(last.horizontalOffset() != current.horizontalOffset()) {
@@ -147,8 +178,7 @@ public class Day14 {
                             end = last.verticalDepth();
                         }
                         for(int x = start; x <= end; x++) {
-                            final var row = grid.computeIfAbsent(x, key -> new HashMap<>());
-                            row.put(last.horizontalOffset(), Cell.ROCK);
+                            grid.set(x, last.horizontalOffset());
                         }
                     }
                     if(current.verticalDepth() > maxDepth) {
@@ -163,7 +193,7 @@ public class Day14 {
                     last = current;
                 }
             }
-            return new Cave(grid, maxDepth, minHorizontalOffset, maxHorizontalOffset);
+            return new Cave(grid, new BitGrid(grid), maxDepth, minHorizontalOffset, maxHorizontalOffset);
         }
 
         static List<Coordinate> parseRockPaths(final String line) {
@@ -175,10 +205,8 @@ public class Day14 {
             final var buffer = new StringBuilder();
             for(int i = 0; i <= floorDepth(); i++) {
                 buffer.append(i).append(' ');
-                final var row = grid.getOrDefault(i, Collections.emptyMap());
                 for(int j = minHorizontalOffset(); j <= maxHorizontalOffset(); j++) {
-                    final var cell = row.get(j);
-                    final char marker = cell == null ? ' ' : Cell.ROCK.equals(cell) ? '#' : 'o';
+                    final char marker = rock().get(i, j) ? '#' : occupied().get(i, j) ? 'o' : ' ';
                     buffer.append(marker);
                 }
                 buffer.append('\n');
@@ -188,25 +216,134 @@ public class Day14 {
     }
 
     protected Cave getInput() {
-        final var lines = StreamSupport.stream(new LineSpliterator("day-14.txt"), false)
+        return parse(MappedInput.open("day-14.txt"));
+    }
+
+    public Cave parse(final MappedInput input) {
+        final var lines = input.lines()
+                .map(AsciiSequence::toString)
                 .toList();
         return Cave.parse(lines);
     }
 
+    public Integer solvePart1(final Cave cave) {
+        return cave.copy().pourSandIntoAbyss();
+    }
+
+    public Integer solvePart2(final Cave cave) {
+        return cave.copy().fillAperture();
+    }
+
     @Test
     public final void part1() {
-        final var cave = getInput();
-        final var result = cave.pourSandIntoAbyss();
+        final var result = solvePart1(getInput());
 
         System.out.println("Part 1: " + result);
     }
 
     @Test
     public final void part2() {
-        final var cave = getInput();
-        final var result = cave.fillAperture();
+        final var result = solvePart2(getInput());
 
         System.out.println("Part 2: " + result);
     }
 
+    @Test
+    public final void testBitGridGrowsInEveryDirection() {
+        // given
+        final var random = new SplittableRandom(14);
+        final var grid = new BitGrid(0, 0, 4, 4);
+        final var expected = new HashSet<Long>();
+
+        // when
+        for(int i = 0; i < 20_000; i++) {
+            // columns span several words on either side of zero
+            final var row = random.nextInt(-300, 300);
+            final var column = random.nextInt(-500, 500);
+            final var cell = Coordinates.pack(row, column);
+            if(random.nextInt(3) == 0) {
+                Assertions.assertEquals(expected.remove(cell), grid.clear(row, column));
+            } else {
+                Assertions.assertEquals(expected.add(cell), grid.set(row, column));
+            }
+        }
+
+        // then
+        Assertions.assertEquals(expected.size(), grid.cardinality());
+        final var copy = new BitGrid(grid);
+        for(int row = -310; row < 310; row++) {
+            int count = 0;
+            for(int column = -520; column < 520; column++) {
+                final var set = expected.contains(Coordinates.pack(row, column));
+                Assertions.assertEquals(set, grid.get(row, column));
+                Assertions.assertEquals(set, copy.get(row, column));
+                count += set ? 1 : 0;
+            }
+            Assertions.assertEquals(count, grid.cardinality(row));
+        }
+    }
+
+    @Test
+    public final void testBitGridAtExtremeCoordinates() {
+        // given
+        final var low = new BitGrid();
+        final var high = new BitGrid();
+
+        // when
+        low.set(Integer.MIN_VALUE + 1, Integer.MIN_VALUE + 70);
+        low.set(Integer.MIN_VALUE, Integer.MIN_VALUE);
+        high.set(Integer.MAX_VALUE - 1, Integer.MAX_VALUE - 70);
+        high.set(Integer.MAX_VALUE, Integer.MAX_VALUE);
+
+        // then
+        Assertions.assertTrue(low.get(Integer.MIN_VALUE, Integer.MIN_VALUE));
+        Assertions.assertTrue(low.get(Integer.MIN_VALUE + 1, Integer.MIN_VALUE + 70));
+        Assertions.assertFalse(low.get(Integer.MIN_VALUE, Integer.MIN_VALUE + 1));
+        Assertions.assertEquals(2, low.cardinality());
+        Assertions.assertTrue(high.get(Integer.MAX_VALUE, Integer.MAX_VALUE));
+        Assertions.assertTrue(high.get(Integer.MAX_VALUE - 1, Integer.MAX_VALUE - 70));
+        Assertions.assertFalse(high.get(Integer.MAX_VALUE, Integer.MAX_VALUE - 1));
+        Assertions.assertEquals(2, high.cardinality());
+    }
+
+    /**
+     * Generates rock paths scattered below the source of the sand.
+     *
+     * @param paths            the number of rock paths
+     * @param maxSegments      the most line segments in a single path
+     * @param maxSegmentLength the longest any one line segment may be
+     * @param width            the width of the region, centred on the source, in which rock may appear
+     * @param depth            the deepest rock
+     */
+    public record Generator(int paths, int maxSegments, int maxSegmentLength, int width, int depth)
+            implements InputGenerator {
+        public static Generator atScale(final int scale) {
+            final var factor = Math.sqrt(scale);
+            return new Generator(150 * scale, 5, 10, (int) Math.ceil(100 * factor), (int) Math.ceil(170 * factor));
+        }
+
+        public void generate(final SplittableRandom random, final Writer output) throws IOException {
+            final var minOffset = 500 - width() / 2;
+            final var maxOffset = minOffset + width();
+            final var line = new StringBuilder();
+            for(int i = paths(); --i >= 0; ) {
+                var horizontalOffset = random.nextInt(minOffset, maxOffset + 1);
+                var verticalDepth = random.nextInt(2, depth() + 1);
+                line.setLength(0);
+                line.append(horizontalOffset).append(',').append(verticalDepth);
+                var horizontal = random.nextBoolean();
+                for(int j = random.nextInt(1, maxSegments() + 1); --j >= 0; horizontal = !horizontal) {
+                    final var length = random.nextInt(-maxSegmentLength(), maxSegmentLength() + 1);
+                    if(horizontal) {
+                        horizontalOffset = Math.max(minOffset, Math.min(maxOffset, horizontalOffset + length));
+                    } else {
+                        verticalDepth = Math.max(2, Math.min(depth(), verticalDepth + length));
+                    }
+                    line.append(" -> ").append(horizontalOffset).append(',').append(verticalDepth);
+                }
+                output.write(line.append('\n').toString());
+            }
+        }
+    }
+
 }
\ No newline at end of file
@@ -1,21 +1,20 @@
 package com.macasaet;
 
-import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.HashMap;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
 import java.util.List;
-import java.util.Map;
+import java.util.SplittableRandom;
 import java.util.function.IntPredicate;
-import java.util.stream.StreamSupport;
 
 /**
  * --- Day 15: Beacon Exclusion Zone ---
  * <a href="https://adventofcode.com/2022/day/15">https://adventofcode.com/2022/day/15</a>
  */
-public class Day15 {
+public class Day15 implements Puzzle<List<Day15.Sensor>>, Snapshot.Codec<List<Day15.Sensor>> {
 
     record Coordinate(int x, int y) {
         static Coordinate parse(final String string) {
@@ -24,10 +23,6 @@ public class Day15 {
                     Integer.parseInt(components[0].replaceAll("^x=", "")));
         }
 
-        Map<Integer, Item> getRow(final Map<Integer, Map<Integer, Item>> grid) {
-            return grid.computeIfAbsent(x(), ignored -> new HashMap<>());
-        }
-
         int distanceTo(final Coordinate other) {
             return Math.abs(x() - other.x()) + Math.abs(y() - other.y());
         }
@@ -40,46 +35,37 @@ public class Day15 {
             return new Sensor(location, beaconLocation);
         }
 
-        void setSensor(final Map<Integer, Map<Integer, Item>> grid, IntPredicate includeRow, IntPredicate includeColumn) {
+        void setSensor(final BitGrid grid, IntPredicate includeRow, IntPredicate includeColumn) {
             if(includeRow.test(location().x()) && includeColumn.test(location().y())) {
-                location().getRow(grid).put(location().y(), Item.SENSOR);
+                grid.set(location().x(), location().y());
             }
         }
 
-        void setBeacon(final Map<Integer, Map<Integer, Item>> grid, IntPredicate includeRow, IntPredicate includeColumn) {
+        void setBeacon(final BitGrid grid, IntPredicate includeRow, IntPredicate includeColumn) {
             if(includeRow.test(beaconLocation().x()) && includeColumn.test(beaconLocation().y())) {
-                beaconLocation().getRow(grid).put(beaconLocation().y(), Item.BEACON);
+                grid.set(beaconLocation().x(), beaconLocation().y());
             }
         }
 
-        void setCoverageArea(final Map<Integer, Map<Integer, Item>> grid, IntPredicate includeRow, IntPredicate includeColumn) {
+        void setCoverageArea(final BitGrid grid, IntPredicate includeRow, IntPredicate includeColumn) {
             final var distance = distanceToBeacon();
             final var x = location().x();
             final var y = location().y();
 
             for(int i = 0; i <= distance; i++ ) {
-                if(!includeRow.test(x + i) && !includeRow.test(x - i)) {
+                final var includeLowerRow = includeRow.test(x + i);
+                final var includeUpperRow = includeRow.test(x - i);
+                if(!includeLowerRow && !includeUpperRow) {
                     continue;
                 }
-                final var lowerRow = includeRow.test(x + i)
-                        ? grid.computeIfAbsent(x + i, ignored -> new HashMap<>())
-                        : new HashMap<Integer, Item>();
-                final var upperRow = includeRow.test(x - i)
-                        ? grid.computeIfAbsent(x - i, ignored -> new HashMap<>())
-                        : new HashMap<Integer, Item>();
-                for(int j = 0; j <= distance - i; j++ ) {
-                    if(includeColumn.test(y + j)) {
-                        // SE
-                        lowerRow.putIfAbsent(y + j, Item.COVERED);
-                        // NE
-                        upperRow.putIfAbsent(y + j, Item.COVERED);
-                    }
-                    if(includeColumn.test(y - j)) {
-                        // SW
-                        lowerRow.putIfAbsent(y - j, Item.COVERED);
-
-                        // NW
-                        upperRow.putIfAbsent(y - j, Item.COVERED);
+                for(int j = y - (distance - i); j <= y + (distance - i); j++ ) {
+                    if(includeColumn.test(j)) {
+                        if(includeLowerRow) {
+                            grid.set(x + i, j);
+                        }
+                        if(includeUpperRow) {
+                            grid.set(x - i, j);
+                        }
                     }
                 }
             }
@@ -90,22 +76,14 @@ public class Day15 {
         }
     }
 
-    enum Item {
-        SENSOR,
-        BEACON,
-        COVERED
-    }
-    public record CaveMap(Map<Integer, Map<Integer, Item>> grid, int minX, int maxX, int minY, int maxY) {
+    /**
+     * @param covered cells within range of a sensor, including the sensors and beacons themselves
+     * @param beacons cells containing a beacon
+     * @param sensors cells containing a sensor
+     */
+    public record CaveMap(BitGrid covered, BitGrid beacons, BitGrid sensors, int minX, int maxX, int minY, int maxY) {
         public int countCoveredCellsInRow(final int x) {
-            final var row = grid().getOrDefault(x, Collections.emptyMap());
-            int result = 0;
-            for(int j = minY(); j <= maxY(); j++) {
-                final var cell = row.get(j);
-                if(cell != null && cell != Item.BEACON) {
-                    result++;
-                }
-            }
-            return result;
+            return covered().cardinality(x) - beacons().cardinality(x);
         }
 
         public static CaveMap fromSensors(final Iterable<? extends Sensor> sensors, IntPredicate includeRow, IntPredicate includeColumn) {
@@ -113,35 +91,35 @@ public class Day15 {
             int maxX = Integer.MIN_VALUE;
             int minY = Integer.MAX_VALUE;
             int maxY = Integer.MIN_VALUE;
-            final var grid = new HashMap<Integer, Map<Integer, Item>>();
+            final var covered = new BitGrid();
+            final var beacons = new BitGrid();
+            final var sensorGrid = new BitGrid();
             for(final var sensor : sensors) {
                 minX = Math.min(minX, sensor.location().x() - sensor.distanceToBeacon());
                 maxX = Math.max(maxX, sensor.location().x() + sensor.distanceToBeacon());
                 minY = Math.min(minY, sensor.location().y() - sensor.distanceToBeacon());
                 maxY = Math.max(maxY, sensor.location().y() + sensor.distanceToBeacon());
 
-                sensor.setCoverageArea(grid, includeRow, includeColumn);
-                sensor.setBeacon(grid, includeRow, includeColumn);
-                sensor.setSensor(grid, includeRow, includeColumn);
+                sensor.setCoverageArea(covered, includeRow, includeColumn);
+                sensor.setBeacon(beacons, includeRow, includeColumn);
+                sensor.setSensor(sensorGrid, includeRow, includeColumn);
             }
 
-            return new CaveMap(grid, minX, maxX, minY, maxY);
+            return new CaveMap(covered, beacons, sensorGrid, minX, maxX, minY, maxY);
         }
 
         public String toString() {
             final var builder = new StringBuilder();
             for(int i = minX(); i <= maxX(); i++) {
                 builder.append(i).append('\t');
-                final var row = grid().getOrDefault(i, Collections.emptyMap());
                 for(int j = minY(); j <= maxY(); j++) {
-                    final var item = row.get(j);
-                    final var marker = item == null
-                            ? '.'
-                            : item == Item.BEACON
-                            ? 'B'
-                            : item == Item.SENSOR
+                    final var marker = sensors().get(i, j)
                             ? 'S'
-                            : '#';
+                            : beacons().get(i, j)
+                            ? 'B'
+                            : covered().get(i, j)
+                            ? '#'
+                            : '.';
                     builder.append(marker);
                 }
                 builder.append('\n');
@@ -150,51 +128,84 @@ public class Day15 {
         }
     }
 
-    protected CaveMap getInput(final IntPredicate includeRow, IntPredicate includeColumn) {
-        final var sensors = getSensors();
-        return CaveMap.fromSensors(sensors, includeRow, includeColumn);
+    protected List<Sensor> getSensors() {
+        return parse(MappedInput.open("day-15.txt"));
     }
 
-    protected static List<Sensor> getSensors() {
-        return StreamSupport.stream(new LineSpliterator("day-15.txt"), false)
-                .map(Sensor::parse)
+    public List<Sensor> parse(final MappedInput input) {
+        return input.lines()
+                .map(line -> Sensor.parse(line.toString()))
                 .toList();
     }
 
-    @Test
-    public final void part1() {
-        final int rowOfInterest = 2_000_000;
-        final var map = getInput(row -> row == rowOfInterest, _column -> true);
-        final var result = map.countCoveredCellsInRow(rowOfInterest);
+    public int snapshotVersion() {
+        return 1;
+    }
 
-        System.out.println("Part 1: " + result);
+    /**
+     * Each sensor is four ints: its location then its beacon's location.
+     */
+    public void writeSnapshot(final List<Sensor> sensors, final DataOutput output) throws IOException {
+        output.writeInt(sensors.size());
+        for(final var sensor : sensors) {
+            output.writeInt(sensor.location().x());
+            output.writeInt(sensor.location().y());
+            output.writeInt(sensor.beaconLocation().x());
+            output.writeInt(sensor.beaconLocation().y());
+        }
     }
 
-    @Test
-    public final void part2() {
+    public List<Sensor> readSnapshot(final ByteBuffer input) {
+        final var sensors = new Sensor[Snapshot.readCount(input, 4 * Integer.BYTES)];
+        for(int i = 0; i < sensors.length; i++) {
+            final var location = new Coordinate(input.getInt(), input.getInt());
+            sensors[i] = new Sensor(location, new Coordinate(input.getInt(), input.getInt()));
+        }
+        return List.of(sensors);
+    }
+
+    public Integer solvePart1(final List<Sensor> sensors) {
+        final int rowOfInterest = 2_000_000;
+        final var map = CaveMap.fromSensors(sensors, row -> row == rowOfInterest, _column -> true);
+        return map.countCoveredCellsInRow(rowOfInterest);
+    }
+
+    public Long solvePart2(final List<Sensor> sensors) {
         final int max = 4_000_000;
-        final var sensors = getSensors();
-        for(final var sensor : sensors) {
-            final var x = sensor.location().x();
-            final var y = sensor.location().y();
-            final var reach = sensor.distanceToBeacon();
+        final var count = sensors.size();
+        final var xs = new int[count];
+        final var ys = new int[count];
+        final var reaches = new int[count];
+        for(int i = count; --i >= 0; ) {
+            final var sensor = sensors.get(i);
+            xs[i] = sensor.location().x();
+            ys[i] = sensor.location().y();
+            reaches[i] = sensor.distanceToBeacon();
+        }
+        for(int s = 0; s < count; s++) {
+            final var x = xs[s];
+            final var y = ys[s];
+            final var reach = reaches[s];
             // Find all the points just outside this sensor's reach
             for(int horizontalOffset = 0; horizontalOffset <= reach + 1; horizontalOffset++) {
                 final var verticalOffset = reach + 1 - horizontalOffset;
-                Assertions.assertEquals(horizontalOffset + verticalOffset, reach + 1);
-                for(final var candidate : Arrays.asList(new Coordinate(x + verticalOffset, y + horizontalOffset), // SE
-                        new Coordinate(x + verticalOffset, y - horizontalOffset), // SW
-                        new Coordinate(x - verticalOffset, y + horizontalOffset), // NE
-                        new Coordinate(x - verticalOffset, y - horizontalOffset))) { // NW
-                    if(candidate.x() < 0 || candidate.y() < 0 || candidate.x() > max || candidate.y() > max) {
+                // SE, SW, NE, NW
+                for(int corner = 0; corner < 4; corner++) {
+                    final var candidateX = (corner & 2) == 0 ? x + verticalOffset : x - verticalOffset;
+                    final var candidateY = (corner & 1) == 0 ? y + horizontalOffset : y - horizontalOffset;
+                    if(candidateX < 0 || candidateY < 0 || candidateX > max || candidateY > max) {
                         continue;
                     }
-                    Assertions.assertTrue(candidate.distanceTo(sensor.location()) > sensor.distanceToBeacon());
+                    if(Math.abs(candidateX - x) + Math.abs(candidateY - y) <= reach) {
+                        throw new IllegalStateException("Candidate is within the sensor's reach");
+                    }
                     // Check if the point is also outside the reach of every other sensor
-                    if(sensors.stream().allMatch(other -> candidate.distanceTo(other.location()) > other.distanceToBeacon())) {
-                        final long result = (long)candidate.y() * 4_000_000l + (long)candidate.x();
-                        System.out.println("Part 2: " + result);
-                        return;
+                    boolean uncovered = true;
+                    for(int other = 0; uncovered && other < count; other++) {
+                        uncovered = Math.abs(candidateX - xs[other]) + Math.abs(candidateY - ys[other]) > reaches[other];
+                    }
+                    if(uncovered) {
+                        return (long)candidateY * 4_000_000l + (long)candidateX;
                     }
                 }
             }
@@ -202,4 +213,66 @@ public class Day15 {
         throw new IllegalStateException("No uncovered point found");
     }
 
+    @Test
+    public final void part1() {
+        final var result = solvePart1(getSensors());
+
+        System.out.println("Part 1: " + result);
+    }
+
+    @Test
+    public final void part2() {
+        final var result = solvePart2(getSensors());
+        System.out.println("Part 2: " + result);
+    }
+
+    /**
+     * Generates sensor reports that leave exactly one position in the search area uncovered. A hidden distress beacon
+     * is placed first and every sensor's reach stops just short of it. Sensors in the four corners of the search area
+     * guarantee that every other position is covered.
+     *
+     * @param sensors the number of sensors, at least 4
+     * @param max     the largest coordinate of the search area
+     */
+    public record Generator(int sensors, int max) implements InputGenerator {
+        public Generator {
+            if(sensors < 4) {
+                throw new IllegalArgumentException("At least four sensors are required to isolate the beacon");
+            }
+        }
+
+        public static Generator atScale(final int scale) {
+            return new Generator(30 * scale, 4_000_000);
+        }
+
+        public void generate(final SplittableRandom random, final Writer output) throws IOException {
+            final var distressX = random.nextInt(1, max());
+            final var distressY = random.nextInt(1, max());
+            writeSensor(random, output, 0, 0, distressX + distressY - 1);
+            writeSensor(random, output, max(), 0, max() - distressX + distressY - 1);
+            writeSensor(random, output, 0, max(), distressX + max() - distressY - 1);
+            writeSensor(random, output, max(), max(), 2 * max() - distressX - distressY - 1);
+            for(int i = sensors() - 4; --i >= 0; ) {
+                int x;
+                int y;
+                int distance;
+                do {
+                    x = random.nextInt(max() + 1);
+                    y = random.nextInt(max() + 1);
+                    distance = Math.abs(x - distressX) + Math.abs(y - distressY);
+                } while(distance < 2);
+                writeSensor(random, output, x, y, random.nextInt(Math.max(1, distance / 2), distance));
+            }
+        }
+
+        protected void writeSensor(final SplittableRandom random, final Writer output, final int x, final int y,
+                                   final int reach) throws IOException {
+            final var horizontal = random.nextInt(reach + 1);
+            final var beaconX = x + (random.nextBoolean() ? horizontal : -horizontal);
+            final var beaconY = y + (random.nextBoolean() ? reach - horizontal : horizontal - reach);
+            output.write("Sensor at x=" + x + ", y=" + y + ": closest beacon is at x=" + beaconX + ", y=" + beaconY
+                    + "\n");
+        }
+    }
+
 }
\ No newline at end of file
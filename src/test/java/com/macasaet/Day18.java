@@ -1,45 +1,91 @@
 package com.macasaet;
 
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
-import java.util.ArrayDeque;
+import java.io.IOException;
+import java.io.Writer;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashSet;
-import java.util.stream.StreamSupport;
+import java.util.List;
+import java.util.SplittableRandom;
 
 /**
  * --- Day 18: Boiling Boulders ---
  * <a href="https://adventofcode.com/2022/day/18">https://adventofcode.com/2022/day/18</a>
  */
-public class Day18 {
+public class Day18 implements Puzzle<List<Day18.Cube>> {
 
-    public static final int SCAN_DIMENSION = 32;
+    protected List<Cube> getInput() {
+        return parse(MappedInput.open("day-18.txt"));
+    }
 
-    protected static Droplet getInput() {
-        final var cubeCoordinates = StreamSupport.stream(new LineSpliterator("day-18.txt"), false)
-                .map(Cube::parse)
+    public List<Cube> parse(final MappedInput input) {
+        return input.lines()
+                .map(line -> Cube.parse(line.toString()))
                 .toList();
-        return new Droplet(cubeCoordinates);
+    }
+
+    public Integer solvePart1(final List<Cube> cubes) {
+        final var droplet = new Droplet(cubes);
+        return droplet.surfaceArea(CubeType.Air);
+    }
+
+    public Integer solvePart2(final List<Cube> cubes) {
+        final var droplet = new Droplet(cubes);
+        droplet.immerse();
+        return droplet.surfaceArea(CubeType.Water);
     }
 
     @Test
     public final void part1() {
-        final var droplet = getInput();
-        final var result = droplet.surfaceArea(CubeType.Air);
+        final var result = solvePart1(getInput());
 
         System.out.println("Part 1: " + result);
     }
 
     @Test
     public final void part2() {
-        final var droplet = getInput();
-        droplet.immerse();
-        final var result = droplet.surfaceArea(CubeType.Water);
+        final var result = solvePart2(getInput());
 
         System.out.println("Part 2: " + result);
     }
 
+    @Test
+    public final void testBitGrid3DGrowsInEveryDirection() {
+        // given
+        final var random = new SplittableRandom(18);
+        final var grid = new BitGrid3D();
+        final var expected = new HashSet<List<Integer>>();
+
+        // when
+        for (int i = 0; i < 20_000; i++) {
+            // z spans several words on either side of zero
+            final var x = random.nextInt(-40, 40);
+            final var y = random.nextInt(-40, 40);
+            final var z = random.nextInt(-200, 200);
+            final var cell = List.of(x, y, z);
+            if (random.nextInt(3) == 0) {
+                Assertions.assertEquals(expected.remove(cell), grid.clear(x, y, z));
+            } else {
+                Assertions.assertEquals(expected.add(cell), grid.set(x, y, z));
+            }
+        }
+
+        // then
+        Assertions.assertEquals(expected.size(), grid.cardinality());
+        final var copy = new BitGrid3D(grid);
+        for (int x = -45; x < 45; x++) {
+            for (int y = -45; y < 45; y++) {
+                for (int z = -210; z < 210; z++) {
+                    final var set = expected.contains(List.of(x, y, z));
+                    Assertions.assertEquals(set, grid.get(x, y, z));
+                    Assertions.assertEquals(set, copy.get(x, y, z));
+                }
+            }
+        }
+    }
+
     public enum CubeType {
         Air,
         Lava,
@@ -52,124 +98,157 @@ public class Day18 {
             return new Cube(Integer.parseInt(components[0]), Integer.parseInt(components[1]), Integer.parseInt(components[2]));
         }
 
-        public CubeType getType(final CubeType[][][] grid) {
-            return grid[x()][y()][z()];
-        }
-
-        public void setType(final CubeType[][][] grid, final CubeType type) {
-            grid[x()][y()][z()] = type;
-        }
     }
 
+    /**
+     * A droplet of lava that may be surrounded by water. Everything that is neither lava nor water is air.
+     */
     public static class Droplet {
 
-        private final Collection<? extends Cube> cubes;
-        private final CubeType[][][] grid;
+        private final long[] cubes;
+        private final BitGrid3D lava = new BitGrid3D();
+        private final BitGrid3D water = new BitGrid3D();
+        private int minX = Integer.MAX_VALUE;
+        private int maxX = Integer.MIN_VALUE;
+        private int minY = Integer.MAX_VALUE;
+        private int maxY = Integer.MIN_VALUE;
+        private int minZ = Integer.MAX_VALUE;
+        private int maxZ = Integer.MIN_VALUE;
+        private boolean immersed = false;
 
         public Droplet(final Collection<? extends Cube> cubes) {
-            final CubeType[][][] grid = new CubeType[SCAN_DIMENSION][][];
-            for (int i = SCAN_DIMENSION; --i >= 0; ) {
-                grid[i] = new CubeType[SCAN_DIMENSION][];
-                for (int j = grid[i].length; --j >= 0; ) {
-                    grid[i][j] = new CubeType[SCAN_DIMENSION];
-                    for (int k = grid[i][j].length; --k >= 0; grid[i][j][k] = CubeType.Air);
-                }
-            }
+            this.cubes = new long[cubes.size()];
+            int i = 0;
             for (final var cube : cubes) {
-                cube.setType(grid, CubeType.Lava);
+                this.cubes[i++] = Coordinates.pack(cube.x(), cube.y(), cube.z());
+                lava.set(cube.x(), cube.y(), cube.z());
+                minX = Math.min(minX, cube.x());
+                maxX = Math.max(maxX, cube.x());
+                minY = Math.min(minY, cube.y());
+                maxY = Math.max(maxY, cube.y());
+                minZ = Math.min(minZ, cube.z());
+                maxZ = Math.max(maxZ, cube.z());
             }
-            this.grid = grid;
-            this.cubes = cubes;
         }
 
         public int surfaceArea(final CubeType element) {
             int result = 0;
-            for (final var cube : getCubes()) {
+            for (final var cube : cubes) {
                 result += exposedFaces(cube, element);
             }
             return result;
         }
 
+        /**
+         * Flood the region surrounding the droplet with water, leaving any air pockets trapped inside it.
+         */
         public void immerse() {
-            final var grid = getGrid();
-            final var queue = new ArrayDeque<Cube>();
-            final var encountered = new HashSet<Cube>();
-            final var origin = new Cube(0, 0, 0);
-            encountered.add(origin);
+            if (immersed || cubes.length == 0) {
+                immersed = true;
+                return;
+            }
+            final var queue = new LongQueue();
+            final var origin = Coordinates.pack(minX - 1, minY - 1, minZ - 1);
+            water.set(minX - 1, minY - 1, minZ - 1);
             queue.add(origin);
 
-            while (!queue.isEmpty()) {
-                final var cube = queue.remove();
-                for (final var neighbour : neighbours(cube).stream().filter(neighbour -> neighbour.getType(grid) == CubeType.Air).toList()) {
-                    if (!encountered.contains(neighbour)) {
-                        encountered.add(neighbour);
-                        queue.add(neighbour);
+            for (int depth = 0; !queue.isEmpty(); depth++) {
+                final var event = new PuzzleEvents.Expansion();
+                event.begin();
+                final var queueSize = queue.size();
+                for (int j = queueSize; --j >= 0; ) {
+                    final var cube = queue.remove();
+                    for (int i = 0; i < Coordinates.FACES; i++) {
+                        final var neighbour = Coordinates.faceNeighbour(cube, i);
+                        final var x = Coordinates.x3(neighbour);
+                        final var y = Coordinates.y3(neighbour);
+                        final var z = Coordinates.z3(neighbour);
+                        if (isInRegion(x, y, z) && !lava.get(x, y, z) && water.set(x, y, z)) {
+                            queue.add(neighbour);
+                        }
                     }
                 }
-                cube.setType(grid, CubeType.Water);
+                if (event.shouldCommit()) {
+                    event.day = 18;
+                    event.depth = depth;
+                    event.queueSize = queueSize;
+                    event.cellsTouched = queueSize * Coordinates.FACES;
+                    event.commit();
+                }
             }
+            immersed = true;
         }
 
-        protected Collection<? extends Cube> neighbours(final Cube cube) {
-            final var result = new HashSet<Cube>();
-            final var x = cube.x();
-            final var y = cube.y();
-            final var z = cube.z();
-            if (x > 0) {
-                result.add(new Cube(x - 1, y, z));
-            }
-            if (x < SCAN_DIMENSION - 1) {
-                result.add(new Cube(x + 1, y, z));
-            }
-            if (y > 0) {
-                result.add(new Cube(x, y - 1, z));
-            }
-            if (y < SCAN_DIMENSION - 1) {
-                result.add(new Cube(x, y + 1, z));
-            }
-            if (z > 0) {
-                result.add(new Cube(x, y, z - 1));
+        /**
+         * @param cube a {@link Coordinates packed coordinate}
+         */
+        public int exposedFaces(final long cube, final CubeType element) {
+            int result = 0;
+            for (int i = 0; i < Coordinates.FACES; i++) {
+                final var neighbour = Coordinates.faceNeighbour(cube, i);
+                if (getType(Coordinates.x3(neighbour), Coordinates.y3(neighbour), Coordinates.z3(neighbour)) == element) {
+                    result++;
+                }
             }
-            if (z < SCAN_DIMENSION - 1) {
-                result.add(new Cube(x, y, z + 1));
+            return result;
+        }
+
+        public CubeType getType(final int x, final int y, final int z) {
+            if (lava.get(x, y, z)) {
+                return CubeType.Lava;
+            } else if (immersed && (!isInRegion(x, y, z) || water.get(x, y, z))) {
+                return CubeType.Water;
             }
-            return Collections.unmodifiableSet(result);
+            return CubeType.Air;
         }
 
-        public int exposedFaces(final Cube cube, final CubeType element) {
-            final int x = cube.x();
-            final int y = cube.y();
-            final int z = cube.z();
-            final var grid = getGrid();
+        /**
+         * @return true if the cube is within the droplet's bounding box or one cube beyond it, the region that
+         * {@link #immerse()} floods
+         */
+        protected boolean isInRegion(final int x, final int y, final int z) {
+            return x >= minX - 1 && x <= maxX + 1 && y >= minY - 1 && y <= maxY + 1 && z >= minZ - 1 && z <= maxZ + 1;
+        }
+    }
 
-            int result = 0;
-            if (grid[x + 1][y][z] == element) {
-                result++;
-            }
-            if (x <= 0 || grid[x - 1][y][z] == element) {
-                result++;
-            }
-            if (grid[x][y + 1][z] == element) {
-                result++;
-            }
-            if (y == 0 || grid[x][y - 1][z] == element) {
-                result++;
-            }
-            if (grid[x][y][z + 1] == element) {
-                result++;
+    /**
+     * Generates a lumpy droplet by letting a random walk wander through the scanned region. The walk periodically
+     * restarts from a cube it has already visited, which leaves air pockets trapped inside the droplet.
+     *
+     * @param cubes  the number of distinct cubes, at most half of the region
+     * @param extent the largest coordinate; coordinates start at 1
+     */
+    public record Generator(int cubes, int extent) implements InputGenerator {
+        public Generator {
+            if(extent < 1 || extent > Coordinates.MAX_3D) {
+                throw new IllegalArgumentException("Extent must be between 1 and " + Coordinates.MAX_3D);
+            }
+            if(cubes < 1 || cubes > (long) extent * extent * extent / 2 + 1) {
+                throw new IllegalArgumentException("Too many cubes for the region: " + cubes);
             }
-            if (z == 0 || grid[x][y][z - 1] == element) {
-                result++;
-            }
-            return result;
         }
 
-        public Collection<? extends Cube> getCubes() {
-            return cubes;
+        public static Generator atScale(final int scale) {
+            final var extent = (int) Math.ceil(20 * Math.cbrt(scale));
+            return new Generator((int) Math.min(2_800L * scale, (long) extent * extent * extent * 2 / 5), extent);
         }
 
-        public CubeType[][][] getGrid() {
-            return grid;
+        public void generate(final SplittableRandom random, final Writer output) throws IOException {
+            final var occupied = new boolean[extent() + 1][extent() + 1][extent() + 1];
+            final var visited = new int[cubes()][];
+            var current = new int[]{extent() / 2 + 1, extent() / 2 + 1, extent() / 2 + 1};
+            for(int count = 0; count < cubes(); ) {
+                if(!occupied[current[0]][current[1]][current[2]]) {
+                    occupied[current[0]][current[1]][current[2]] = true;
+                    visited[count++] = current.clone();
+                    output.write(current[0] + "," + current[1] + "," + current[2] + "\n");
+                }
+                if(random.nextInt(16) == 0) {
+                    current = visited[random.nextInt(count)].clone();
+                }
+                final var axis = random.nextInt(3);
+                current[axis] = Math.max(1, Math.min(extent(), current[axis] + (random.nextBoolean() ? 1 : -1)));
+            }
         }
     }
 
@@ -2,6 +2,8 @@ package com.macasaet;
 
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.math.BigInteger;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
@@ -11,14 +13,13 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.stream.Stream;
-import java.util.stream.StreamSupport;
+import java.util.SplittableRandom;
 
 /**
  * --- Day 20: Grove Positioning System ---
  * <a href="https://adventofcode.com/2022/day/20">https://adventofcode.com/2022/day/20</a>
  */
-public class Day20 {
+public class Day20 implements Puzzle<List<Day20.Number>> {
 
     public record Number(int originalIndex, int value, BigInteger decryptedValue) {
         Number(int originalIndex, int value) {
@@ -26,9 +27,13 @@ public class Day20 {
         }
     }
 
-    protected static List<Number> getInput() {
-        final List<Integer> numbers = StreamSupport.stream(new LineSpliterator("day-20.txt"), false)
-                .mapToInt(Integer::parseInt)
+    protected List<Number> getInput() {
+        return parse(MappedInput.open("day-20.txt"));
+    }
+
+    public List<Number> parse(final MappedInput input) {
+        final List<Integer> numbers = input.lines()
+                .mapToInt(AsciiSequence::parseInt)
                 .collect(ArrayList::new, (x, y) -> x.add(y), (x, y) -> x.addAll(y));
         final var result = new ArrayList<Number>(numbers.size());
         for(int i = 0; i < numbers.size(); i++) {
@@ -37,9 +42,7 @@ public class Day20 {
         return Collections.unmodifiableList(result);
     }
 
-    @Test
-    public final void part1() {
-        final var numbers = getInput();
+    public Long solvePart1(final List<Number> numbers) {
         final var indexMap = new HashMap<Integer, Integer>(numbers.size());
         Number zero = null;
         for(final var number : numbers) {
@@ -50,6 +53,9 @@ public class Day20 {
         }
         final var workingSet = new ArrayList<>(numbers);
 
+        final var event = new PuzzleEvents.MixingPass();
+        event.begin();
+        long elementsShifted = 0;
         for(final var number : numbers) {
             final var originalIndex = workingSet.indexOf(number);
             workingSet.remove(originalIndex);
@@ -58,20 +64,18 @@ public class Day20 {
                 newIndex += numbers.size() - 1;
             }
             workingSet.add(newIndex, number);
+            elementsShifted += Math.abs(newIndex - originalIndex);
         }
+        commit(event, 1, numbers.size(), elementsShifted);
 
         final var x = workingSet.get((workingSet.indexOf(zero) + 1000) % workingSet.size()).value();
         final var y = workingSet.get((workingSet.indexOf(zero) + 2000) % workingSet.size()).value();
         final var z = workingSet.get((workingSet.indexOf(zero) + 3000) % workingSet.size()).value();
 
-        final var result = (long)x + (long)y + (long)z;
-
-        System.out.println("Part 1: " + result);
+        return (long)x + (long)y + (long)z;
     }
 
-    @Test
-    public final void part2() {
-        final var numbers = getInput();
+    public BigInteger solvePart2(final List<Number> numbers) {
         final var indexMap = new HashMap<Integer, Integer>(numbers.size());
         Number zero = null;
         for(final var number : numbers) {
@@ -82,7 +86,10 @@ public class Day20 {
         }
         final var workingSet = new ArrayList<>(numbers);
 
-        for(int i = 10; --i >= 0; ) {
+        for(int i = 1; i <= 10; i++) {
+            final var event = new PuzzleEvents.MixingPass();
+            event.begin();
+            long elementsShifted = 0;
             for (final var number : numbers) {
                 final var originalIndex = workingSet.indexOf(number);
                 workingSet.remove(originalIndex);
@@ -91,16 +98,67 @@ public class Day20 {
                     newIndex += numbers.size() - 1;
                 }
                 workingSet.add(newIndex, number);
+                elementsShifted += Math.abs(newIndex - originalIndex);
             }
+            commit(event, i, numbers.size(), elementsShifted);
         }
 
         final var x = workingSet.get((workingSet.indexOf(zero) + 1000) % workingSet.size()).decryptedValue();
         final var y = workingSet.get((workingSet.indexOf(zero) + 2000) % workingSet.size()).decryptedValue();
         final var z = workingSet.get((workingSet.indexOf(zero) + 3000) % workingSet.size()).decryptedValue();
 
-        final var result = x.add(y).add(z);
+        return x.add(y).add(z);
+    }
+
+    protected static void commit(final PuzzleEvents.MixingPass event, final int pass, final int numbers,
+                                 final long elementsShifted) {
+        if(event.shouldCommit()) {
+            event.day = 20;
+            event.pass = pass;
+            event.numbers = numbers;
+            event.elementsShifted = elementsShifted;
+            event.commit();
+        }
+    }
+
+    @Test
+    public final void part1() {
+        final var result = solvePart1(getInput());
+
+        System.out.println("Part 1: " + result);
+    }
+
+    @Test
+    public final void part2() {
+        final var result = solvePart2(getInput());
 
         System.out.println("Part 2: " + result);
     }
 
+    /**
+     * Generates an encrypted file containing exactly one zero.
+     *
+     * @param count        the number of numbers in the file, at least 1
+     * @param maxMagnitude the largest absolute value of any number
+     */
+    public record Generator(int count, int maxMagnitude) implements InputGenerator {
+        public static Generator atScale(final int scale) {
+            return new Generator(5_000 * scale, 10_000);
+        }
+
+        public void generate(final SplittableRandom random, final Writer output) throws IOException {
+            final var zeroIndex = random.nextInt(count());
+            for(int i = 0; i < count(); i++) {
+                var value = 0;
+                if(i != zeroIndex) {
+                    value = random.nextInt(1, maxMagnitude() + 1);
+                    if(random.nextBoolean()) {
+                        value = -value;
+                    }
+                }
+                output.write(value + "\n");
+            }
+        }
+    }
+
 }
\ No newline at end of file
@@ -2,16 +2,20 @@ package com.macasaet;
 
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.stream.StreamSupport;
+import java.util.SplittableRandom;
 
 /**
  * --- Day 21: Monkey Math ---
  * <a href="https://adventofcode.com/2022/day/21">https://adventofcode.com/2022/day/21</a>
  */
-public class Day21 {
+public class Day21 implements Puzzle<Map<String, Day21.Monkey>> {
 
     public record Monkey(String name, Job job) {
         public long yell(final Map<String, Monkey> monkeys, final Map<String, Long> results) {
@@ -283,26 +287,28 @@ public class Day21 {
         }
     }
 
-    protected static Map<String, Monkey> getInput() {
+    protected Map<String, Monkey> getInput() {
+        return parse(MappedInput.open("day-21.txt"));
+    }
+
+    public Map<String, Monkey> parse(final MappedInput input) {
         final Map<String, Monkey> result = new HashMap<>();
-        StreamSupport.stream(new LineSpliterator("day-21.txt"), false)
-                .map(Monkey::parse)
+        input.lines()
+                .map(line -> Monkey.parse(line.toString()))
                 .forEach(monkey -> result.put(monkey.name(), monkey));
         return Collections.unmodifiableMap(result);
     }
 
-    @Test
-    public final void part1() {
-        final var monkeys = getInput();
+    public Long solvePart1(final Map<String, Monkey> monkeys) {
         final var results = new HashMap<String, Long>();
-        final var result = monkeys.get("root").yell(monkeys, results);
-
-        System.out.println("Part 1: " + result);
+        return monkeys.get("root").yell(monkeys, results);
     }
 
-    @Test
-    public final void part2() {
-        final var monkeys = new HashMap<>(getInput());
+    /**
+     * @return the equation relating the number to yell to the value it must match
+     */
+    public Simplification solvePart2(final Map<String, Monkey> input) {
+        final var monkeys = new HashMap<>(input);
         final var results = new HashMap<String, Long>();
         final var oldRoot = monkeys.get("root");
         final var oldJob = (Math) oldRoot.job();
@@ -317,7 +323,141 @@ public class Day21 {
             }
             simplification = candidate;
         }
-        System.out.println("Part 2: " + simplification);
+        return simplification;
+    }
+
+    @Test
+    public final void part1() {
+        final var result = solvePart1(getInput());
+
+        System.out.println("Part 1: " + result);
+    }
+
+    @Test
+    public final void part2() {
+        final var result = solvePart2(getInput());
+
+        System.out.println("Part 2: " + result);
+    }
+
+    /**
+     * Generates a tree of monkeys. The tree is built from the top down by choosing the number each monkey must yell
+     * and then choosing operands that produce it, so every division is exact and both of the root's operands are
+     * equal. One leaf, somewhere below the root, is named "humn".
+     *
+     * @param monkeys the number of monkeys, an odd number of at least 3 since every monkey that does math has two
+     *                operands
+     */
+    public record Generator(int monkeys) implements InputGenerator {
+        private static final long MAX_VALUE = 1_000_000_000L;
+
+        public Generator {
+            if (monkeys < 3 || monkeys % 2 == 0) {
+                throw new IllegalArgumentException("Invalid number of monkeys: " + monkeys);
+            }
+        }
+
+        public static Generator atScale(final int scale) {
+            return new Generator(2_500 * scale + 1);
+        }
+
+        public void generate(final SplittableRandom random, final Writer output) throws IOException {
+            final var lines = new ArrayList<String>(monkeys());
+            final var operand = random.nextLong(1_000, MAX_VALUE / 10);
+            final var leftSize = 2 * random.nextInt((monkeys() - 1) / 2) + 1;
+            final var humanOnLeft = random.nextBoolean();
+            final var counter = new int[1];
+            final var left = build(random, operand, leftSize, humanOnLeft, counter, lines);
+            final var right = build(random, operand, monkeys() - 1 - leftSize, !humanOnLeft, counter, lines);
+            lines.add("root: " + left + " " + "+-*/".charAt(random.nextInt(4)) + " " + right);
+            for (int i = lines.size(); --i > 0; ) {
+                final var j = random.nextInt(i + 1);
+                final var swap = lines.get(i);
+                lines.set(i, lines.get(j));
+                lines.set(j, swap);
+            }
+            for (final var line : lines) {
+                output.write(line);
+                output.write('\n');
+            }
+        }
+
+        /**
+         * @param value   the number the monkey must yell, between 1 and {@link #MAX_VALUE}
+         * @param size    the number of monkeys in the subtree, an odd number
+         * @param human   whether the subtree must contain the human
+         * @param counter the number of names assigned so far
+         * @return the name of the monkey at the top of the subtree
+         */
+        protected String build(final SplittableRandom random, final long value, final int size, final boolean human,
+                               final int[] counter, final List<? super String> lines) {
+            final var name = human && size == 1 ? "humn" : name(counter);
+            if (size == 1) {
+                lines.add(name + ": " + value);
+                return name;
+            }
+            long x;
+            long y;
+            char operator;
+            while (true) {
+                final var choice = random.nextInt(4);
+                if (choice == 0 && value >= 2) {
+                    operator = '+';
+                    x = random.nextLong(1, value);
+                    y = value - x;
+                    break;
+                } else if (choice == 1 && value < MAX_VALUE) {
+                    operator = '-';
+                    y = random.nextLong(1, MAX_VALUE - value + 1);
+                    x = value + y;
+                    break;
+                } else if (choice == 2) {
+                    final var factor = random.nextInt(2, 10);
+                    if (value % factor == 0) {
+                        operator = '*';
+                        x = value / factor;
+                        y = factor;
+                        if (random.nextBoolean()) {
+                            y = x;
+                            x = factor;
+                        }
+                        break;
+                    }
+                } else if (choice == 3) {
+                    final var divisor = random.nextInt(2, 10);
+                    if (value * divisor <= MAX_VALUE) {
+                        operator = '/';
+                        x = value * divisor;
+                        y = divisor;
+                        break;
+                    }
+                }
+            }
+            final var leftSize = 2 * random.nextInt((size - 1) / 2) + 1;
+            final var humanOnLeft = human && random.nextBoolean();
+            final var left = build(random, x, leftSize, humanOnLeft, counter, lines);
+            final var right = build(random, y, size - 1 - leftSize, human && !humanOnLeft, counter, lines);
+            lines.add(name + ": " + left + " " + operator + " " + right);
+            return name;
+        }
+
+        /**
+         * @return a new name of at least four lowercase letters that is neither "root" nor "humn"
+         */
+        protected static String name(final int[] counter) {
+            while (true) {
+                var index = counter[0]++;
+                final var builder = new StringBuilder();
+                do {
+                    builder.append((char) ('a' + index % 26));
+                    index /= 26;
+                } while (index > 0 || builder.length() < 4);
+                final var result = builder.toString();
+                if (!"root".equals(result) && !"humn".equals(result)) {
+                    return result;
+                }
+            }
+        }
     }
 
 }
\ No newline at end of file
@@ -3,235 +3,191 @@ package com.macasaet;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
+import java.util.SplittableRandom;
 import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
 
 /**
  * --- Day 23: Unstable Diffusion ---
  * <a href="https://adventofcode.com/2022/day/23">https://adventofcode.com/2022/day/23</a>
  */
-public class Day23 {
+public class Day23 implements Puzzle<Day23.Crater> {
 
-    record Coordinate(int x, int y) {
-        public boolean hasElf(final Map<Integer, Map<Integer, Boolean>> grid) {
-            return grid.getOrDefault(x(), Collections.emptyMap()).getOrDefault(y(), false);
-        }
-
-        public Set<Coordinate> neighbours() {
-            final var neighbours = new HashSet<Coordinate>(8);
-            for (int i = x() - 1; i <= x() + 1; i++) {
-                for (int j = y() - 1; j <= y() + 1; j++) {
-                    if (i == x() && j == y()) {
-                        continue;
-                    }
-                    neighbours.add(new Coordinate(i, j));
+    enum Direction {
+        North(-1, 0),
+        East(0, 1),
+        South(1, 0),
+        West(0, -1);
+
+        private final int xOffset;
+        private final int yOffset;
+        /**
+         * The {@link Coordinates#adjacentNeighbour(long, int) adjacent neighbours} that must be clear in order to
+         * move in this direction, one bit per neighbour index
+         */
+        private final int neighbourMask;
+
+        Direction(final int xOffset, final int yOffset) {
+            this.xOffset = xOffset;
+            this.yOffset = yOffset;
+            int neighbourMask = 0;
+            final var origin = Coordinates.pack(0, 0);
+            for (int i = 0; i < Coordinates.ADJACENT; i++) {
+                final var neighbour = Coordinates.adjacentNeighbour(origin, i);
+                if (xOffset != 0 ? Coordinates.x(neighbour) == xOffset : Coordinates.y(neighbour) == yOffset) {
+                    neighbourMask |= 1 << i;
                 }
             }
-            return Collections.unmodifiableSet(neighbours);
+            this.neighbourMask = neighbourMask;
         }
-    }
-
-    enum Direction {
-        North {
-            public Set<Coordinate> relativeCoordinates(Coordinate reference) {
-                return Set.of(new Coordinate(reference.x() - 1, reference.y() - 1),
-                        adjacent(reference),
-                        new Coordinate(reference.x() - 1, reference.y() + 1));
-            }
 
-            public Coordinate adjacent(Coordinate reference) {
-                return new Coordinate(reference.x() - 1, reference.y());
-            }
-        },
-        East {
-            public Set<Coordinate> relativeCoordinates(Coordinate reference) {
-                return Set.of(new Coordinate(reference.x() - 1, reference.y() + 1),
-                        adjacent(reference),
-                        new Coordinate(reference.x() + 1, reference.y() + 1));
-            }
-
-            public Coordinate adjacent(Coordinate reference) {
-                return new Coordinate(reference.x(), reference.y() + 1);
-            }
-        },
-        South {
-            public Set<Coordinate> relativeCoordinates(Coordinate reference) {
-                return Set.of(new Coordinate(reference.x() + 1, reference.y() - 1),
-                        adjacent(reference),
-                        new Coordinate(reference.x() + 1, reference.y() + 1));
-            }
-
-            public Coordinate adjacent(Coordinate reference) {
-                return new Coordinate(reference.x() + 1, reference.y());
-            }
-        },
-        West {
-            public Set<Coordinate> relativeCoordinates(Coordinate reference) {
-                return Set.of(new Coordinate(reference.x() - 1, reference.y() - 1),
-                        adjacent(reference),
-                        new Coordinate(reference.x() + 1, reference.y() - 1));
-            }
-
-            public Coordinate adjacent(Coordinate reference) {
-                return new Coordinate(reference.x(), reference.y() - 1);
-            }
-        };
-
-        public abstract Set<Coordinate> relativeCoordinates(Coordinate reference);
+        public boolean isClear(final int occupiedNeighbours) {
+            return (occupiedNeighbours & neighbourMask) == 0;
+        }
 
-        public abstract Coordinate adjacent(Coordinate reference);
+        public long adjacent(final long reference) {
+            return Coordinates.translate(reference, xOffset, yOffset);
+        }
     }
 
     public static class Crater {
 
-        private final Map<Integer, Map<Integer, Boolean>> grid;
+        private final BitGrid grid;
+        /**
+         * The {@link Coordinates packed coordinate} of each Elf
+         */
+        private final long[] elves;
+        private final long[] proposals;
+        private final LongIntMap destinations;
         private int minX;
         private int maxX;
         private int minY;
         private int maxY;
+        private int rounds = 0;
         private List<Direction> movementPriority =
                 new ArrayList<>(Arrays.asList(Direction.North, Direction.South, Direction.West, Direction.East));
 
-        public Crater(final Map<Integer, Map<Integer, Boolean>> grid, int minX, int maxX, int minY, int maxY) {
+        /**
+         * @param grid  the tiles occupied by an Elf
+         * @param elves the {@link Coordinates packed coordinate} of each Elf, which must agree with the grid
+         */
+        public Crater(final BitGrid grid, final long[] elves) {
             this.grid = grid;
-            setMinX(minX);
-            setMinY(minY);
-            setMaxX(maxX);
-            setMaxY(maxY);
+            this.elves = elves;
+            this.proposals = new long[elves.length];
+            this.destinations = new LongIntMap(elves.length);
+            updateBounds();
         }
 
+        /**
+         * @return the number of Elves that proposed a move, whether or not they were able to make it
+         */
         public int round() {
-            final var destinations = new HashMap<Coordinate, Set<Coordinate>>();
-            final var moves = new HashMap<Coordinate, Coordinate>();
+            final var event = new PuzzleEvents.Round();
+            event.begin();
+            final var priority = getMovementPriority().toArray(new Direction[0]);
+            destinations.clear();
+            int proposed = 0;
             // first half of round: planning phase
-            for (int i = getMinX(); i <= getMaxX(); i++) {
-                final var row = getGrid().get(i);
-                for (int j = getMinY(); j <= getMaxY(); j++) {
-                    final var from = new Coordinate(i, j);
-                    if (row.getOrDefault(j, false)) {
-                        // determine destination
-                        final var hasNeighbour = from.neighbours()
-                                .stream()
-                                .anyMatch(c -> getGrid().getOrDefault(c.x(), Collections.emptyMap())
-                                        .getOrDefault(c.y(), false));
-                        if (!hasNeighbour) {
-                            // "If no other Elves are in one of those eight positions, the Elf does not do anything
-                            // during this round."
-                            continue;
-                        }
-                        for (final var direction : getMovementPriority()) {
-                            final var clear = direction.relativeCoordinates(from)
-                                    .stream()
-                                    .noneMatch(neighbour -> neighbour.hasElf(getGrid()));
-                            if (clear) {
-                                final var to = direction.adjacent(from);
-                                destinations.computeIfAbsent(to, _row -> new HashSet<>()).add(from);
-                                moves.put(from, to);
-                                break;
-                            }
-                        }
+            for (int i = elves.length; --i >= 0; ) {
+                final var from = elves[i];
+                // an Elf that stays put proposes its own tile
+                proposals[i] = from;
+                int occupiedNeighbours = 0;
+                for (int j = 0; j < Coordinates.ADJACENT; j++) {
+                    final var neighbour = Coordinates.adjacentNeighbour(from, j);
+                    if (grid.get(Coordinates.x(neighbour), Coordinates.y(neighbour))) {
+                        occupiedNeighbours |= 1 << j;
+                    }
+                }
+                if (occupiedNeighbours == 0) {
+                    // "If no other Elves are in one of those eight positions, the Elf does not do anything
+                    // during this round."
+                    continue;
+                }
+                for (final var direction : priority) {
+                    if (direction.isClear(occupiedNeighbours)) {
+                        final var to = direction.adjacent(from);
+                        destinations.addTo(to, 1);
+                        proposals[i] = to;
+                        proposed++;
+                        break;
                     }
                 }
             }
 
             // second half of round: movement phase
-            for (final var move : moves.entrySet()) {
-                final var from = move.getKey();
-                final var to = move.getValue();
+            int moved = 0;
+            for (int i = elves.length; --i >= 0; ) {
+                final var from = elves[i];
+                final var to = proposals[i];
                 // "each Elf moves to their proposed destination tile if they were the only Elf to propose moving to
                 // that position. If two or more Elves propose moving to the same position, none of those Elves move."
-                if (destinations.get(to).size() == 1) {
-                    getGrid().computeIfAbsent(to.x(), _row -> new HashMap<>()).put(to.y(), true);
-                    getGrid().get(from.x()).put(from.y(), false);
-                    setMinX(Math.min(getMinX(), to.x()));
-                    setMaxX(Math.max(getMaxX(), to.x()));
-                    setMinY(Math.min(getMinY(), to.y()));
-                    setMaxY(Math.max(getMaxY(), to.y()));
+                if (to != from && destinations.get(to, 0) == 1) {
+                    grid.clear(Coordinates.x(from), Coordinates.y(from));
+                    grid.set(Coordinates.x(to), Coordinates.y(to));
+                    elves[i] = to;
+                    moved++;
                 }
             }
-            // prune edges
-            // minX
-            final var highestRow = getGrid().get(getMinX());
-            if (highestRow.values().stream().noneMatch(hasElf -> hasElf)) {
-                getGrid().remove(getMinX());
-                setMinX(getMinX() + 1);
-            }
-            // maxX
-            final var lowestRow = getGrid().get(getMaxX());
-            if (lowestRow.values().stream().noneMatch(hasElf -> hasElf)) {
-                getGrid().remove(getMaxX());
-                setMaxX(getMaxX() - 1);
-            }
-            // minY
-            if (getGrid().values().stream().map(row -> row.get(getMinY())).noneMatch(hasElf -> hasElf != null && hasElf)) {
-                for (final var row : getGrid().values()) {
-                    row.remove(getMinY());
-                }
-                setMinY(getMinY() + 1);
-            }
-            // maxY
-            if (getGrid().values().stream().map(row -> row.get(getMaxY())).noneMatch(hasElf -> hasElf != null && hasElf)) {
-                for (final var row : getGrid().values()) {
-                    row.remove(getMaxY());
-                }
-                setMaxY(getMaxY() + 1);
+            updateBounds();
+            rounds++;
+            if (event.shouldCommit()) {
+                event.day = 23;
+                event.round = rounds;
+                event.moves = moved;
+                // every Elf looks at its eight neighbours and every move clears one tile and fills another
+                event.cellsTouched = (long) elves.length * Coordinates.ADJACENT + 2L * moved;
+                event.commit();
             }
 
             // "Finally, at the end of the round, the first direction the Elves considered is moved to the end of the
             // list of directions."
             final var previousFirst = getMovementPriority().remove(0);
             getMovementPriority().add(previousFirst);
-            return moves.size();
+            return proposed;
+        }
+
+        /**
+         * @return a crater in the same state as this one that can be simulated independently
+         */
+        public Crater copy() {
+            final var result = new Crater(new BitGrid(grid), elves.clone());
+            result.setMovementPriority(new ArrayList<>(getMovementPriority()));
+            result.rounds = rounds;
+            return result;
         }
 
         public int countEmptyGroundTiles() {
-            int result = 0;
-            for (int i = getMinX(); i <= getMaxX(); i++) {
-                final var row = getGrid().getOrDefault(i, Collections.emptyMap());
-                for (int j = getMinY(); j <= getMaxY(); j++) {
-                    if (!row.getOrDefault(j, false)) {
-                        result++;
-                    }
-                }
+            if (elves.length == 0) {
+                return 0;
             }
-            return result;
+            return (getMaxX() - getMinX() + 1) * (getMaxY() - getMinY() + 1) - elves.length;
         }
 
         public static Crater fromString(final String block) {
             final var lines = block.split("\n");
-            final Map<Integer, Map<Integer, Boolean>> grid = new HashMap<>(lines.length);
-            int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
-            int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
-            for (int i = lines.length; --i >= 0; ) {
+            final var grid = new BitGrid(0, 0, lines.length, lines.length == 0 ? 0 : lines[0].length());
+            var elves = new long[16];
+            int count = 0;
+            for (int i = 0; i < lines.length; i++) {
                 final var line = lines[i];
-                final var chars = line.toCharArray();
-                final Map<Integer, Boolean> row = new HashMap<>(chars.length);
-                boolean rowHasElf = false;
-                for (int j = chars.length; --j >= 0; ) {
-                    if (chars[j] == '#') {
-                        minY = Math.min(minY, j);
-                        maxY = Math.max(maxY, j);
-                        row.put(j, true);
-                        rowHasElf |= true;
-                    } else {
-                        row.put(j, false);
+                for (int j = 0; j < line.length(); j++) {
+                    if (line.charAt(j) == '#') {
+                        grid.set(i, j);
+                        if (count == elves.length) {
+                            elves = Arrays.copyOf(elves, count * 2);
+                        }
+                        elves[count++] = Coordinates.pack(i, j);
                     }
                 }
-                grid.put(i, row);
-                if (rowHasElf) {
-                    minX = Math.min(minX, i);
-                    maxX = Math.max(maxX, i);
-                }
             }
-            return new Crater(grid, minX, maxX, minY, maxY);
+            return new Crater(grid, Arrays.copyOf(elves, count));
         }
 
         public String toString() {
@@ -245,9 +201,8 @@ public class Day23 {
 
         protected void appendGrid(final StringBuilder builder) {
             for (int i = getMinX(); i <= getMaxX(); i++) {
-                final var row = getGrid().getOrDefault(i, Collections.emptyMap());
                 for (int j = getMinY(); j <= getMaxY(); j++) {
-                    final var c = row.getOrDefault(j, false)
+                    final var c = grid.get(i, j)
                             ? '#'
                             : '.';
                     builder.append(c);
@@ -256,42 +211,40 @@ public class Day23 {
             }
         }
 
-        protected Map<Integer, Map<Integer, Boolean>> getGrid() {
-            return grid;
+        /**
+         * Shrink the bounds to the smallest rectangle that contains every Elf.
+         */
+        protected void updateBounds() {
+            int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+            int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+            for (final var elf : elves) {
+                minX = Math.min(minX, Coordinates.x(elf));
+                maxX = Math.max(maxX, Coordinates.x(elf));
+                minY = Math.min(minY, Coordinates.y(elf));
+                maxY = Math.max(maxY, Coordinates.y(elf));
+            }
+            this.minX = minX;
+            this.maxX = maxX;
+            this.minY = minY;
+            this.maxY = maxY;
         }
 
         protected int getMinX() {
             return minX;
         }
 
-        protected void setMinX(int minX) {
-            this.minX = minX;
-        }
-
         protected int getMaxX() {
             return maxX;
         }
 
-        protected void setMaxX(int maxX) {
-            this.maxX = maxX;
-        }
-
         protected int getMinY() {
             return minY;
         }
 
-        protected void setMinY(int minY) {
-            this.minY = minY;
-        }
-
         protected int getMaxY() {
             return maxY;
         }
 
-        protected void setMaxY(int maxY) {
-            this.maxY = maxY;
-        }
-
         protected List<Direction> getMovementPriority() {
             return movementPriority;
         }
@@ -301,17 +254,39 @@ public class Day23 {
         }
     }
 
-    protected static Crater getInput() {
-        final var lines = StreamSupport.stream(new LineSpliterator("day-23.txt"), false)
+    protected Crater getInput() {
+        return parse(MappedInput.open("day-23.txt"));
+    }
+
+    public Crater parse(final MappedInput input) {
+        final var lines = input.lines()
+                .map(AsciiSequence::toString)
                 .collect(Collectors.joining("\n"));
         return Crater.fromString(lines);
     }
 
+    public Integer solvePart1(final Crater initialState) {
+        final var crater = initialState.copy();
+        for (int i = 10; --i >= 0; crater.round()) ;
+        return crater.countEmptyGroundTiles();
+    }
+
+    public Integer solvePart2(final Crater initialState) {
+        final var crater = initialState.copy();
+        int rounds = 0;
+        while (true) {
+            final var moves = crater.round();
+            rounds++;
+            if (moves == 0) {
+                break;
+            }
+        }
+        return rounds;
+    }
+
     @Test
     public final void part1() {
-        final var crater = getInput();
-        for (int i = 10; --i >= 0; crater.round()) ;
-        final var result = crater.countEmptyGroundTiles();
+        final var result = solvePart1(getInput());
 
         System.out.println("Part 1: " + result);
     }
@@ -629,16 +604,88 @@ public class Day23 {
 
     @Test
     public final void part2() {
-        final var crater = getInput();
-        int rounds = 0;
-        while (true) {
-            final var moves = crater.round();
-            rounds++;
-            if (moves == 0) {
-                break;
+        final var result = solvePart2(getInput());
+
+        System.out.println("Part 2: " + result);
+    }
+
+    @Test
+    public final void testLongIntMapMatchesHashMap() {
+        // given
+        final var random = new SplittableRandom(23);
+        final var map = new LongIntMap();
+        final var expected = new HashMap<Long, Integer>();
+
+        // when
+        for (int i = 0; i < 100_000; i++) {
+            // a small range of keys makes collisions, and removals from the middle of clusters, common
+            final var key = random.nextInt(16) == 0 ? Long.MIN_VALUE : random.nextLong(-256, 256);
+            final var value = random.nextInt(-8, 8);
+            switch (random.nextInt(5)) {
+                case 0 -> {
+                    map.put(key, value);
+                    expected.put(key, value);
+                }
+                case 1 -> Assertions.assertEquals((int) expected.merge(key, value, Integer::sum),
+                        map.addTo(key, value));
+                case 2 -> Assertions.assertEquals(expected.remove(key) != null, map.remove(key));
+                case 3 -> Assertions.assertEquals(expected.containsKey(key), map.containsKey(key));
+                default -> Assertions.assertEquals((int) expected.getOrDefault(key, 99), map.get(key, 99));
+            }
+            Assertions.assertEquals(expected.size(), map.size());
+        }
+
+        // then
+        final var entries = new HashMap<Long, Integer>();
+        map.forEach((key, value) -> Assertions.assertNull(entries.put(key, value)));
+        Assertions.assertEquals(expected, entries);
+    }
+
+    @Test
+    public final void testLongIntMapRemovesAcrossWrapAround() {
+        // given three keys whose home is the last slot, so their probe sequence wraps to the start
+        final var map = new LongIntMap(8);
+        final var mask = LongHashSet.capacityFor(8) - 1;
+        final var keys = new ArrayList<Long>();
+        for (long candidate = 0; keys.size() < 3; candidate++) {
+            if (((int) LongHashSet.mix(candidate) & mask) == mask) {
+                keys.add(candidate);
+            }
+        }
+        for (int i = 0; i < keys.size(); i++) {
+            map.put(keys.get(i), i + 1);
+        }
+
+        // when
+        final var removed = map.remove(keys.get(0));
+
+        // then
+        Assertions.assertTrue(removed);
+        Assertions.assertFalse(map.containsKey(keys.get(0)));
+        Assertions.assertEquals(2, map.get(keys.get(1), 0));
+        Assertions.assertEquals(3, map.get(keys.get(2), 0));
+        Assertions.assertEquals(2, map.size());
+    }
+
+    /**
+     * Generates a square scan of the grove with Elves scattered at random.
+     *
+     * @param size    the number of tiles along each edge of the scan
+     * @param density the approximate proportion of tiles occupied by an Elf
+     */
+    public record Generator(int size, double density) implements InputGenerator {
+        public static Generator atScale(final int scale) {
+            return new Generator((int) Math.ceil(72 * Math.sqrt(scale)), 0.5);
+        }
+
+        public void generate(final SplittableRandom random, final Writer output) throws IOException {
+            final var line = new char[size() + 1];
+            line[size()] = '\n';
+            for (int i = size(); --i >= 0; ) {
+                for (int j = size(); --j >= 0; line[j] = random.nextDouble() < density() ? '#' : '.') ;
+                output.write(line);
             }
         }
-        System.out.println("Part 2: " + rounds);
     }
 
 }
\ No newline at end of file
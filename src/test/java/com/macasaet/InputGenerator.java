@@ -0,0 +1,103 @@
+package com.macasaet;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+/**
+ * Produces a valid puzzle input of arbitrary size so that solutions can be exercised far beyond the size of a real
+ * puzzle. Output is fully determined by the random number generator, so a given seed always yields the same input.
+ */
+public interface InputGenerator {
+
+    /**
+     * @param random the only source of randomness
+     * @param output the destination for the generated input
+     * @throws IOException if the input cannot be written
+     */
+    void generate(SplittableRandom random, Writer output) throws IOException;
+
+    /**
+     * @param day   the day of the Advent calendar
+     * @param scale the approximate size relative to a real puzzle input (1 is roughly the size of a real input)
+     * @return a generator for that day's input
+     */
+    static InputGenerator forDay(final int day, final int scale) {
+        if (scale < 1) {
+            throw new IllegalArgumentException("Scale must be positive: " + scale);
+        }
+        return switch (day) {
+            case 1 -> Day01.Generator.atScale(scale);
+            case 2 -> Day02.Generator.atScale(scale);
+            case 3 -> Day03.Generator.atScale(scale);
+            case 4 -> Day04.Generator.atScale(scale);
+            case 5 -> Day05.Generator.atScale(scale);
+            case 6 -> Day06.Generator.atScale(scale);
+            case 7 -> Day07.Generator.atScale(scale);
+            case 8 -> Day08.Generator.atScale(scale);
+            case 9 -> Day09.Generator.atScale(scale);
+            case 10 -> Day10.Generator.atScale(scale);
+            case 11 -> Day11.Generator.atScale(scale);
+            case 12 -> Day12.Generator.atScale(scale);
+            case 13 -> Day13.Generator.atScale(scale);
+            case 14 -> Day14.Generator.atScale(scale);
+            case 15 -> Day15.Generator.atScale(scale);
+            case 18 -> Day18.Generator.atScale(scale);
+            case 20 -> Day20.Generator.atScale(scale);
+            case 21 -> Day21.Generator.atScale(scale);
+            case 23 -> Day23.Generator.atScale(scale);
+            default -> throw new IllegalArgumentException("No generator for day " + day);
+        };
+    }
+
+    /**
+     * Generate a day's input into a directory using the conventional file name.
+     *
+     * @param day       the day of the Advent calendar
+     * @param generator the generator for that day
+     * @param seed      the seed shared by every day in an input set
+     * @param directory the destination directory, which will be created if necessary
+     * @return the generated file
+     * @throws IOException if the file cannot be written
+     */
+    static Path write(final int day, final InputGenerator generator, final long seed, final Path directory)
+            throws IOException {
+        Files.createDirectories(directory);
+        final var path = directory.resolve(Puzzle.inputName(day));
+        // give each day its own stream so that one day's input does not depend on which other days were generated
+        final var random = new SplittableRandom(seed ^ (day * 0x9E3779B97F4A7C15L));
+        try (var writer = Files.newBufferedWriter(path)) {
+            generator.generate(random, writer);
+        }
+        return path;
+    }
+
+    /**
+     * Generate inputs from the command line.
+     *
+     * <pre>InputGenerator directory [scale [seed [day ...]]]</pre>
+     */
+    static void main(final String... arguments) throws IOException {
+        if (arguments.length < 1) {
+            System.err.println("Usage: InputGenerator directory [scale [seed [day ...]]]");
+            System.exit(1);
+        }
+        final var directory = Path.of(arguments[0]);
+        final var scale = arguments.length > 1 ? Integer.parseInt(arguments[1]) : 1;
+        final var seed = arguments.length > 2 ? Long.parseLong(arguments[2]) : 0L;
+        final int[] days;
+        if (arguments.length > 3) {
+            days = new int[arguments.length - 3];
+            for (int i = days.length; --i >= 0; days[i] = Integer.parseInt(arguments[i + 3])) ;
+        } else {
+            days = Puzzle.DAYS;
+        }
+        for (final var day : days) {
+            final var path = write(day, forDay(day, scale), seed, directory);
+            System.err.println("Wrote " + path + " (" + Files.size(path) + " bytes)");
+        }
+    }
+
+}
\ No newline at end of file
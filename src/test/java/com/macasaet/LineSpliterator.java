@@ -1,6 +1,10 @@
 package com.macasaet;
 
 import java.io.*;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Objects;
 import java.util.Properties;
 import java.util.Spliterator;
@@ -9,6 +13,7 @@ import java.util.function.Consumer;
 public class LineSpliterator implements Spliterator<String>, AutoCloseable {
 
     private static final String prefix;
+    private static final Path directory;
     private final BufferedReader reader;
 
     static {
@@ -19,6 +24,9 @@ public class LineSpliterator implements Spliterator<String>, AutoCloseable {
         } catch (final IOException ignored) {
         }
         prefix = properties.getProperty("prefix", "/sample");
+        // a directory on disk, e.g. of generated inputs, takes precedence over the classpath
+        final var configuredDirectory = System.getProperty("inputDirectory", properties.getProperty("directory"));
+        directory = configuredDirectory == null || configuredDirectory.isBlank() ? null : Path.of(configuredDirectory);
     }
 
     public LineSpliterator(final BufferedReader reader) {
@@ -35,7 +43,38 @@ public class LineSpliterator implements Spliterator<String>, AutoCloseable {
     }
 
     public LineSpliterator(final String fileName) {
-        this(LineSpliterator.class.getResourceAsStream(prefix + "/" + fileName));
+        this(openResource(fileName));
+    }
+
+    /**
+     * @param fileName the input file name, e.g. "day-01.txt"
+     * @return the location of the input in the configured input set or null if it does not exist
+     */
+    static URL resource(final String fileName) {
+        if (directory != null) {
+            final var path = directory.resolve(fileName);
+            if (!Files.isRegularFile(path)) {
+                return null;
+            }
+            try {
+                return path.toUri().toURL();
+            } catch (final MalformedURLException mue) {
+                throw new IllegalArgumentException("Invalid input location: " + path, mue);
+            }
+        }
+        return LineSpliterator.class.getResource(prefix + "/" + fileName);
+    }
+
+    private static InputStream openResource(final String fileName) {
+        final var url = resource(fileName);
+        if (url == null) {
+            throw new IllegalArgumentException("No such input: " + fileName);
+        }
+        try {
+            return url.openStream();
+        } catch (final IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
     }
 
     public boolean tryAdvance(final Consumer<? super String> action) {
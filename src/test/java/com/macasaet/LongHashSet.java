@@ -0,0 +1,191 @@
+package com.macasaet;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * A set of primitive {@code long}s, such as {@link Coordinates packed coordinates}, that does not box its elements.
+ * Elements are stored in a single array using open addressing with linear probing.
+ */
+public class LongHashSet {
+
+    private static final long FREE = Long.MIN_VALUE;
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] slots;
+    private int mask;
+    private int size;
+    private boolean containsFree;
+
+    public LongHashSet() {
+        this(MIN_CAPACITY / 2);
+    }
+
+    /**
+     * @param expectedSize the number of elements the set can hold before it needs to grow
+     */
+    public LongHashSet(final int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    public LongHashSet(final LongHashSet other) {
+        this.slots = other.slots.clone();
+        this.mask = other.mask;
+        this.size = other.size;
+        this.containsFree = other.containsFree;
+    }
+
+    /**
+     * @return true if the element was not already in the set
+     */
+    public boolean add(final long element) {
+        if (element == FREE) {
+            if (containsFree) {
+                return false;
+            }
+            containsFree = true;
+            size++;
+            return true;
+        }
+        int slot = slot(element);
+        for (long existing; (existing = slots[slot]) != FREE; slot = (slot + 1) & mask) {
+            if (existing == element) {
+                return false;
+            }
+        }
+        slots[slot] = element;
+        if (++size > (slots.length >>> 1)) {
+            rehash(slots.length << 1);
+        }
+        return true;
+    }
+
+    public boolean contains(final long element) {
+        if (element == FREE) {
+            return containsFree;
+        }
+        for (int slot = slot(element); ; slot = (slot + 1) & mask) {
+            final var existing = slots[slot];
+            if (existing == element) {
+                return true;
+            } else if (existing == FREE) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * @return true if the element was in the set
+     */
+    public boolean remove(final long element) {
+        if (element == FREE) {
+            if (!containsFree) {
+                return false;
+            }
+            containsFree = false;
+            size--;
+            return true;
+        }
+        int slot = slot(element);
+        for (long existing; (existing = slots[slot]) != element; slot = (slot + 1) & mask) {
+            if (existing == FREE) {
+                return false;
+            }
+        }
+        // close the gap by moving back any later element of the same probe sequence
+        int gap = slot;
+        for (int current = (gap + 1) & mask; slots[current] != FREE; current = (current + 1) & mask) {
+            final var home = slot(slots[current]);
+            if (((current - home) & mask) >= ((current - gap) & mask)) {
+                slots[gap] = slots[current];
+                gap = current;
+            }
+        }
+        slots[gap] = FREE;
+        size--;
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(slots, FREE);
+        size = 0;
+        containsFree = false;
+    }
+
+    public void forEach(final LongConsumer action) {
+        if (containsFree) {
+            action.accept(FREE);
+        }
+        for (final var element : slots) {
+            if (element != FREE) {
+                action.accept(element);
+            }
+        }
+    }
+
+    public long[] toArray() {
+        final var result = new long[size];
+        int i = 0;
+        if (containsFree) {
+            result[i++] = FREE;
+        }
+        for (final var element : slots) {
+            if (element != FREE) {
+                result[i++] = element;
+            }
+        }
+        return result;
+    }
+
+    protected int slot(final long element) {
+        return (int) mix(element) & mask;
+    }
+
+    protected void rehash(final int capacity) {
+        final var old = slots;
+        allocate(capacity);
+        for (final var element : old) {
+            if (element != FREE) {
+                int slot = slot(element);
+                while (slots[slot] != FREE) {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = element;
+            }
+        }
+    }
+
+    protected void allocate(final int capacity) {
+        slots = new long[capacity];
+        Arrays.fill(slots, FREE);
+        mask = capacity - 1;
+    }
+
+    /**
+     * @return a power of two with room for the given number of elements at a load factor of one half
+     */
+    static int capacityFor(final int expectedSize) {
+        final var minimum = Math.max(MIN_CAPACITY, (long) expectedSize * 2);
+        if (minimum > 1 << 30) {
+            throw new IllegalArgumentException("Too many elements: " + expectedSize);
+        }
+        return Integer.highestOneBit((int) minimum - 1) << 1;
+    }
+
+    /**
+     * Spread the bits of an element so that nearby coordinates do not collide.
+     */
+    static long mix(long element) {
+        element *= 0x9E37_79B9_7F4A_7C15L;
+        return element ^ (element >>> 32);
+    }
+
+}
\ No newline at end of file
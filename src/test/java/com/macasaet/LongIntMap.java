@@ -0,0 +1,206 @@
+package com.macasaet;
+
+import java.util.Arrays;
+
+/**
+ * A map from primitive {@code long}s, such as {@link Coordinates packed coordinates}, to primitive {@code int}s that
+ * boxes neither. Entries are stored in parallel arrays using open addressing with linear probing.
+ */
+public class LongIntMap {
+
+    /**
+     * Receives each entry of a map.
+     */
+    @FunctionalInterface
+    public interface Visitor {
+        void visit(long key, int value);
+    }
+
+    private static final long FREE = Long.MIN_VALUE;
+
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+    private boolean containsFree;
+    private int freeValue;
+
+    public LongIntMap() {
+        this(8);
+    }
+
+    /**
+     * @param expectedSize the number of entries the map can hold before it needs to grow
+     */
+    public LongIntMap(final int expectedSize) {
+        allocate(LongHashSet.capacityFor(expectedSize));
+    }
+
+    public int get(final long key, final int defaultValue) {
+        if (key == FREE) {
+            return containsFree ? freeValue : defaultValue;
+        }
+        for (int slot = slot(key); ; slot = (slot + 1) & mask) {
+            final var existing = keys[slot];
+            if (existing == key) {
+                return values[slot];
+            } else if (existing == FREE) {
+                return defaultValue;
+            }
+        }
+    }
+
+    public boolean containsKey(final long key) {
+        if (key == FREE) {
+            return containsFree;
+        }
+        for (int slot = slot(key); ; slot = (slot + 1) & mask) {
+            final var existing = keys[slot];
+            if (existing == key) {
+                return true;
+            } else if (existing == FREE) {
+                return false;
+            }
+        }
+    }
+
+    public void put(final long key, final int value) {
+        final var slot = insertionSlot(key);
+        if (slot < 0) {
+            freeValue = value;
+        } else {
+            values[slot] = value;
+        }
+    }
+
+    /**
+     * Add to the value associated with a key, treating a missing key as zero.
+     *
+     * @return the new value
+     */
+    public int addTo(final long key, final int delta) {
+        final var slot = insertionSlot(key);
+        if (slot < 0) {
+            return freeValue += delta;
+        }
+        return values[slot] += delta;
+    }
+
+    /**
+     * @return true if the key was in the map
+     */
+    public boolean remove(final long key) {
+        if (key == FREE) {
+            if (!containsFree) {
+                return false;
+            }
+            containsFree = false;
+            freeValue = 0;
+            size--;
+            return true;
+        }
+        int slot = slot(key);
+        for (long existing; (existing = keys[slot]) != key; slot = (slot + 1) & mask) {
+            if (existing == FREE) {
+                return false;
+            }
+        }
+        // close the gap by moving back any later entry of the same probe sequence
+        int gap = slot;
+        for (int current = (gap + 1) & mask; keys[current] != FREE; current = (current + 1) & mask) {
+            final var home = slot(keys[current]);
+            if (((current - home) & mask) >= ((current - gap) & mask)) {
+                keys[gap] = keys[current];
+                values[gap] = values[current];
+                gap = current;
+            }
+        }
+        keys[gap] = FREE;
+        values[gap] = 0;
+        size--;
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, FREE);
+        Arrays.fill(values, 0);
+        size = 0;
+        containsFree = false;
+        freeValue = 0;
+    }
+
+    public void forEach(final Visitor visitor) {
+        if (containsFree) {
+            visitor.visit(FREE, freeValue);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != FREE) {
+                visitor.visit(keys[i], values[i]);
+            }
+        }
+    }
+
+    /**
+     * Find the slot for a key, adding the key with a value of zero if it is missing.
+     *
+     * @return the key's slot or -1 if the key is the one stored outside of the table
+     */
+    protected int insertionSlot(final long key) {
+        if (key == FREE) {
+            if (!containsFree) {
+                containsFree = true;
+                size++;
+            }
+            return -1;
+        }
+        int slot = slot(key);
+        for (long existing; (existing = keys[slot]) != FREE; slot = (slot + 1) & mask) {
+            if (existing == key) {
+                return slot;
+            }
+        }
+        keys[slot] = key;
+        if (++size > (keys.length >>> 1)) {
+            rehash(keys.length << 1);
+            return insertionSlot(key);
+        }
+        return slot;
+    }
+
+    protected int slot(final long key) {
+        return (int) LongHashSet.mix(key) & mask;
+    }
+
+    protected void rehash(final int capacity) {
+        final var oldKeys = keys;
+        final var oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            final var key = oldKeys[i];
+            if (key != FREE) {
+                int slot = slot(key);
+                while (keys[slot] != FREE) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    protected void allocate(final int capacity) {
+        keys = new long[capacity];
+        Arrays.fill(keys, FREE);
+        values = new int[capacity];
+        mask = capacity - 1;
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,65 @@
+package com.macasaet;
+
+import java.util.NoSuchElementException;
+
+/**
+ * A first-in-first-out queue of primitive {@code long}s, such as the frontier of a breadth-first search over
+ * {@link Coordinates packed coordinates}. It is backed by a ring buffer that doubles whenever it fills up.
+ */
+public class LongQueue {
+
+    private long[] elements;
+    private int head;
+    private int size;
+
+    public LongQueue() {
+        this(16);
+    }
+
+    /**
+     * @param expectedSize the number of elements the queue can hold before it needs to grow
+     */
+    public LongQueue(final int expectedSize) {
+        elements = new long[Integer.highestOneBit(Math.max(expectedSize, 2) - 1) << 1];
+    }
+
+    public void add(final long element) {
+        if (size == elements.length) {
+            final var grown = new long[elements.length << 1];
+            final var tail = elements.length - head;
+            System.arraycopy(elements, head, grown, 0, tail);
+            System.arraycopy(elements, 0, grown, tail, head);
+            elements = grown;
+            head = 0;
+        }
+        elements[(head + size++) & (elements.length - 1)] = element;
+    }
+
+    /**
+     * @return the oldest element, which is removed from the queue
+     * @throws NoSuchElementException if the queue is empty
+     */
+    public long remove() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        final var result = elements[head];
+        head = (head + 1) & (elements.length - 1);
+        size--;
+        return result;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        head = 0;
+        size = 0;
+    }
+
+}
\ No newline at end of file
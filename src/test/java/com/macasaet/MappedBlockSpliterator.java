@@ -0,0 +1,137 @@
+package com.macasaet;
+
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * A {@link Spliterator} over the records of a {@link MappedInput} in which each record is a group of consecutive
+ * non-blank lines, such as an Elf's inventory or a monkey's description. Splits only ever occur immediately after a
+ * blank line so that no record is divided between two halves.
+ */
+public class MappedBlockSpliterator implements Spliterator<AsciiSequence> {
+
+    private static final int SAMPLE_SIZE = 4096;
+    private static final long MIN_SPLIT_BYTES = 1 << 12;
+
+    private final MappedInput input;
+    private final double bytesPerBlock;
+    private long position;
+    private final long end;
+
+    public MappedBlockSpliterator(final MappedInput input) {
+        this(input, 0, input.size(), estimateBytesPerBlock(input));
+    }
+
+    /**
+     * @param position the offset of the first line to consider; it must follow a blank line or be the start of the
+     *                 input
+     * @param end      the offset after the last line to consider; it must follow a blank line or be the end of the
+     *                 input
+     */
+    protected MappedBlockSpliterator(final MappedInput input, final long position, final long end,
+                                     final double bytesPerBlock) {
+        Objects.requireNonNull(input);
+        this.input = input;
+        this.position = position;
+        this.end = end;
+        this.bytesPerBlock = bytesPerBlock;
+    }
+
+    public boolean tryAdvance(final Consumer<? super AsciiSequence> action) {
+        while (position < end && isBlank(position, input.nextLineStart(position))) {
+            position = input.nextLineStart(position);
+        }
+        if (position >= end) {
+            return false;
+        }
+        final var blockStart = position;
+        long contentEnd = blockStart;
+        while (position < end) {
+            final var next = input.nextLineStart(position);
+            if (isBlank(position, next)) {
+                break;
+            }
+            final var index = input.segmentIndex(position);
+            final var offset = input.segmentOffset(index);
+            final var segment = input.segment(index);
+            contentEnd = offset + MappedInput.lineEnd(segment, (int) (position - offset), (int) (next - offset));
+            position = next;
+        }
+        action.accept(sequence(blockStart, contentEnd));
+        return true;
+    }
+
+    public Spliterator<AsciiSequence> trySplit() {
+        if (end - position < MIN_SPLIT_BYTES) {
+            return null;
+        }
+        // find the first blank line after the midpoint; the next record cannot start before the line following it
+        for (long line = input.nextLineStart(position + (end - position) / 2 - 1); line < end; ) {
+            final var next = input.nextLineStart(line);
+            if (isBlank(line, next)) {
+                if (next >= end) {
+                    return null;
+                }
+                final var prefix = new MappedBlockSpliterator(input, position, next, bytesPerBlock);
+                this.position = next;
+                return prefix;
+            }
+            line = next;
+        }
+        return null;
+    }
+
+    public long estimateSize() {
+        return (long) Math.ceil((end - position) / bytesPerBlock);
+    }
+
+    public int characteristics() {
+        return ORDERED | NONNULL | IMMUTABLE;
+    }
+
+    /**
+     * @param start the offset of the start of a line
+     * @param next  the offset of the start of the following line
+     */
+    protected boolean isBlank(final long start, final long next) {
+        return input.isBlank(start, next);
+    }
+
+    protected AsciiSequence sequence(final long start, final long end) {
+        final var index = input.segmentIndex(start);
+        final var offset = input.segmentOffset(index);
+        final var segment = input.segment(index);
+        if (end <= offset + segment.limit()) {
+            return new AsciiSequence(segment, (int) (start - offset), (int) (end - start));
+        }
+        // the record straddles two mappings, which can only happen at a 2GiB boundary, so copy it
+        final var bytes = new byte[(int) (end - start)];
+        int copied = 0;
+        for (int i = index; copied < bytes.length; i++) {
+            final var source = input.segment(i);
+            final var from = i == index ? (int) (start - offset) : 0;
+            final var length = Math.min(source.limit() - from, bytes.length - copied);
+            source.get(from, bytes, copied, length);
+            copied += length;
+        }
+        return new AsciiSequence(ByteBuffer.wrap(bytes), 0, bytes.length);
+    }
+
+    protected static double estimateBytesPerBlock(final MappedInput input) {
+        if (input.segmentCount() == 0) {
+            return 1;
+        }
+        final var first = input.segment(0);
+        final var sampleSize = Math.min(first.limit(), SAMPLE_SIZE);
+        int separators = 0;
+        for (int i = 0; i + 1 < sampleSize; i++) {
+            if (first.get(i) == '\n' && first.get(i + 1) == '\n') {
+                separators++;
+            }
+        }
+        return Math.max(1.0, (double) sampleSize / (separators + 1));
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,418 @@
+package com.macasaet;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * An ASCII puzzle input that is memory-mapped rather than read through a {@link java.io.Reader}. Lines are found by
+ * scanning the raw bytes for newlines and are exposed as {@link AsciiSequence} views (or as plain offsets via
+ * {@link #forEachLine(LineVisitor)}) so that no bytes are decoded or copied unless a caller asks for them.
+ *
+ * <p>A single {@link ByteBuffer} can address at most 2GiB, so larger files are mapped as several segments. Every
+ * segment except the last ends immediately after a newline, so a line never straddles two segments.</p>
+ */
+public class MappedInput {
+
+    static final int MAX_SEGMENT_SIZE = Integer.MAX_VALUE - 8;
+
+    private static final long NEWLINES = 0x0A0A0A0A0A0A0A0AL;
+    private static final long LOW_BITS = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    private final ByteBuffer[] segments;
+    private final long[] segmentOffsets;
+    private final long size;
+
+    protected MappedInput(final ByteBuffer[] segments) {
+        this.segments = segments;
+        this.segmentOffsets = new long[segments.length];
+        long offset = 0;
+        for (int i = 0; i < segments.length; i++) {
+            segments[i].order(ByteOrder.LITTLE_ENDIAN);
+            segmentOffsets[i] = offset;
+            offset += segments[i].limit();
+        }
+        this.size = offset;
+    }
+
+    /**
+     * Memory-map a file.
+     *
+     * @param path the file to map
+     * @return a read-only view of the file
+     * @throws IOException if the file cannot be opened or mapped
+     */
+    public static MappedInput open(final Path path) throws IOException {
+        return open(path, MAX_SEGMENT_SIZE);
+    }
+
+    static MappedInput open(final Path path, final int maxSegmentSize) throws IOException {
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final var size = channel.size();
+            final var segments = new ArrayList<ByteBuffer>();
+            long position = 0;
+            while (position < size) {
+                final var length = (int) Math.min(size - position, maxSegmentSize);
+                ByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                if (position + length < size) {
+                    final var lastNewline = lastNewline(segment);
+                    if (lastNewline < 0) {
+                        throw new IllegalArgumentException("Line at offset " + position + " is longer than "
+                                + maxSegmentSize + " bytes");
+                    }
+                    segment = segment.slice(0, lastNewline + 1);
+                }
+                segments.add(segment);
+                position += segment.limit();
+            }
+            return new MappedInput(segments.toArray(new ByteBuffer[0]));
+        }
+    }
+
+    /**
+     * Open a puzzle input from the same location used by {@link LineSpliterator#LineSpliterator(String)}. The
+     * resource is mapped directly if it lives on the file system, otherwise it is read onto the heap.
+     *
+     * @param fileName the input file name, e.g. "day-04.txt"
+     * @return a read-only view of the input
+     */
+    public static MappedInput open(final String fileName) {
+        final var url = LineSpliterator.resource(fileName);
+        if (url == null) {
+            throw new IllegalArgumentException("No such input: " + fileName);
+        }
+        try {
+            if ("file".equals(url.getProtocol())) {
+                return open(Paths.get(url.toURI()));
+            }
+            try (var stream = url.openStream()) {
+                return wrap(stream.readAllBytes());
+            }
+        } catch (final IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        } catch (final URISyntaxException use) {
+            throw new IllegalArgumentException("Invalid input location: " + url, use);
+        }
+    }
+
+    /**
+     * @param bytes ASCII input already on the heap
+     * @return a view of the bytes (not a copy)
+     */
+    public static MappedInput wrap(final byte[] bytes) {
+        return new MappedInput(new ByteBuffer[]{ByteBuffer.wrap(bytes)});
+    }
+
+    /**
+     * @return the total number of bytes in the input
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Feed every byte of the input to a digest, e.g. to fingerprint it.
+     *
+     * @param digest the digest to update
+     */
+    public void update(final MessageDigest digest) {
+        for (final var segment : segments) {
+            digest.update(segment.duplicate().rewind());
+        }
+    }
+
+    protected int segmentCount() {
+        return segments.length;
+    }
+
+    protected ByteBuffer segment(final int index) {
+        return segments[index];
+    }
+
+    protected long segmentOffset(final int index) {
+        return segmentOffsets[index];
+    }
+
+    /**
+     * @param position an offset into the input
+     * @return the index of the segment containing <code>position</code> (the last segment if it is at the end)
+     */
+    protected int segmentIndex(final long position) {
+        int low = 0;
+        int high = segments.length - 1;
+        while (low < high) {
+            final var mid = (low + high + 1) >>> 1;
+            if (segmentOffsets[mid] <= position) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @param position an offset into the input
+     * @return the offset just after the first newline at or after <code>position</code>, or the input size if there
+     * is none
+     */
+    protected long nextLineStart(final long position) {
+        if (position >= size) {
+            return size;
+        }
+        final var index = segmentIndex(position);
+        final var segment = segments[index];
+        final var newline = indexOfNewline(segment, (int) (position - segmentOffsets[index]), segment.limit());
+        return segmentOffsets[index] + (newline < 0 ? segment.limit() : newline + 1);
+    }
+
+    /**
+     * Divide the input into ranges of roughly equal size for concurrent processing, e.g. with
+     * {@link #forEachLine(long, long, LineVisitor)}. Every range begins at the start of a line, so no line is divided
+     * between two ranges.
+     *
+     * @param minRangeBytes the smallest range worth handing to another thread
+     * @param maxRanges     the most ranges to create
+     * @return the boundaries of the ranges, starting with zero and ending with the input size, so that range
+     * <code>i</code> is <code>[result[i], result[i + 1])</code>
+     */
+    public long[] lineRanges(final long minRangeBytes, final int maxRanges) {
+        final var ranges = (int) Math.max(1, Math.min(size / minRangeBytes, maxRanges));
+        final var result = new long[ranges + 1];
+        for (int i = 1; i < ranges; i++) {
+            result[i] = nextLineStart(size * i / ranges - 1);
+        }
+        result[ranges] = size;
+        return result;
+    }
+
+    /**
+     * Scan the whole input once and record where every line starts. This enables exact sizing and splitting of a
+     * {@link MappedLineSpliterator} at the cost of eight bytes per line.
+     *
+     * @return the offset of every line, followed by the input size
+     */
+    public long[] lineIndex() {
+        var result = new long[1024];
+        int count = 0;
+        for (long position = 0; position < size; position = nextLineStart(position)) {
+            if (count + 1 >= result.length) {
+                result = Arrays.copyOf(result, result.length * 2);
+            }
+            result[count++] = position;
+        }
+        result[count++] = size;
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * @return every line in the input, without line terminators
+     */
+    public Stream<AsciiSequence> lines() {
+        return StreamSupport.stream(new MappedLineSpliterator(this), false);
+    }
+
+    /**
+     * @return every group of consecutive non-blank lines in the input, each as a single sequence that includes the
+     * newlines separating its lines but not the trailing one
+     */
+    public Stream<AsciiSequence> blocks() {
+        return StreamSupport.stream(new MappedBlockSpliterator(this), false);
+    }
+
+    /**
+     * @param position an offset into the input
+     * @return the offset of the first line at or after <code>position</code> that follows a blank line, i.e. the
+     * start of a group that {@link #blocks()} would not divide, or the input size if there is none; zero maps to
+     * itself
+     */
+    public long nextBlockStart(final long position) {
+        if (position <= 0) {
+            return 0;
+        }
+        for (long line = nextLineStart(position - 1); line < size; ) {
+            final var next = nextLineStart(line);
+            if (isBlank(line, next)) {
+                return next;
+            }
+            line = next;
+        }
+        return size;
+    }
+
+    /**
+     * @param start the offset of the start of a line
+     * @param next  the offset of the start of the following line
+     * @return true if the line contains only whitespace
+     */
+    protected boolean isBlank(final long start, final long next) {
+        final var index = segmentIndex(start);
+        final var offset = segmentOffsets[index];
+        final var segment = segments[index];
+        for (int i = (int) (start - offset), limit = (int) (next - offset); i < limit; i++) {
+            if (!isBlank(segment.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the byte is whitespace that may pad a line or make up a blank line: a space, tab, carriage
+     * return or newline
+     */
+    public static boolean isBlank(final byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+
+    /**
+     * Visit every line in the input without allocating any per-line objects.
+     *
+     * @param visitor receives the segment containing each line along with the line's bounds
+     */
+    public void forEachLine(final LineVisitor visitor) {
+        forEachLine(0, size, visitor);
+    }
+
+    /**
+     * Visit every line in a range of the input without allocating any per-line objects. Disjoint ranges may be
+     * visited concurrently.
+     *
+     * @param from    the offset of the start of the first line to visit (inclusive)
+     * @param to      the offset of the start of the line after the last one to visit, or the input size (exclusive)
+     * @param visitor receives the segment containing each line along with the line's bounds
+     */
+    public void forEachLine(final long from, final long to, final LineVisitor visitor) {
+        if (from >= to) {
+            return;
+        }
+        for (int i = segmentIndex(from); i < segments.length && segmentOffsets[i] < to; i++) {
+            final var segment = segments[i];
+            final var limit = (int) Math.min(segment.limit(), to - segmentOffsets[i]);
+            for (int start = (int) Math.max(0, from - segmentOffsets[i]); start < limit; ) {
+                final var newline = indexOfNewline(segment, start, limit);
+                final var next = newline < 0 ? limit : newline + 1;
+                visitor.visit(segment, start, lineEnd(segment, start, next));
+                start = next;
+            }
+        }
+    }
+
+    /**
+     * Receives the location of a single line.
+     */
+    @FunctionalInterface
+    public interface LineVisitor {
+        /**
+         * @param buffer the bytes containing the line
+         * @param start the index of the first character in the line (inclusive)
+         * @param end the index after the last character in the line, excluding any line terminator (exclusive)
+         */
+        void visit(ByteBuffer buffer, int start, int end);
+    }
+
+    /**
+     * Find the next newline using a word-at-a-time scan.
+     *
+     * @return the index of the first '\n' in <code>[from, to)</code> or -1 if there is none
+     */
+    static int indexOfNewline(final ByteBuffer buffer, final int from, final int to) {
+        int i = from;
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            final var word = buffer.getLong(i) ^ NEWLINES;
+            final var matches = (word - LOW_BITS) & ~word & HIGH_BITS;
+            if (matches != 0) {
+                // the lowest flagged byte is always a true match
+                return i + (Long.numberOfTrailingZeros(matches) >>> 3);
+            }
+        }
+        for (; i < to; i++) {
+            if (buffer.get(i) == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param start the first byte of the line
+     * @param next the first byte after the line's terminator
+     * @return the end of the line's content, excluding "\n" or "\r\n"
+     */
+    static int lineEnd(final ByteBuffer buffer, final int start, final int next) {
+        int end = next;
+        if (end > start && buffer.get(end - 1) == '\n') {
+            end--;
+        }
+        if (end > start && buffer.get(end - 1) == '\r') {
+            end--;
+        }
+        return end;
+    }
+
+    static int lastNewline(final ByteBuffer buffer) {
+        for (int i = buffer.limit(); --i >= 0; ) {
+            if (buffer.get(i) == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Parse a signed decimal integer without decoding the bytes into a {@link String}.
+     *
+     * @param from the index of the first digit or sign (inclusive)
+     * @param to the index after the last digit (exclusive)
+     * @throws NumberFormatException if the range is not a valid decimal integer
+     */
+    static int parseInt(final ByteBuffer buffer, final int from, final int to) {
+        Objects.requireNonNull(buffer);
+        if (from >= to) {
+            throw new NumberFormatException("Empty number at index " + from);
+        }
+        int i = from;
+        final var first = buffer.get(i);
+        final var negative = first == '-';
+        if (negative || first == '+') {
+            i++;
+            if (i >= to) {
+                throw new NumberFormatException("Sign without digits at index " + from);
+            }
+        }
+        // accumulate negatively so that Integer.MIN_VALUE can be represented
+        int result = 0;
+        for (; i < to; i++) {
+            final var digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("Invalid digit '" + (char) buffer.get(i) + "' at index " + i);
+            }
+            if (result < (Integer.MIN_VALUE + digit) / 10) {
+                throw new NumberFormatException("Number out of range at index " + from);
+            }
+            result = result * 10 - digit;
+        }
+        if (negative) {
+            return result;
+        }
+        if (result == Integer.MIN_VALUE) {
+            throw new NumberFormatException("Number out of range at index " + from);
+        }
+        return -result;
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,134 @@
+package com.macasaet;
+
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * A {@link Spliterator} over the lines of a {@link MappedInput}. Each line is a view over the mapped bytes, so
+ * advancing does not copy or decode anything.
+ *
+ * <p>The spliterator covers a range of bytes that starts and ends on line boundaries. Splitting divides the range in
+ * half and moves the split point forward to the start of the next line, so both halves can be scanned independently
+ * by a parallel stream. The number of lines in a byte range is not known without scanning it, so
+ * {@link #estimateSize()} is only an estimate. Supplying a line index (see {@link MappedInput#lineIndex()}) trades
+ * a single up-front scan for exact {@link #SIZED} and {@link #SUBSIZED} splits.</p>
+ */
+public class MappedLineSpliterator implements Spliterator<AsciiSequence> {
+
+    private static final int SAMPLE_SIZE = 4096;
+    private static final long MIN_SPLIT_BYTES = 1 << 12;
+
+    private final MappedInput input;
+    private final long[] lineStarts;
+    private final double bytesPerLine;
+    private long position;
+    private long end;
+    private int segmentIndex;
+
+    /**
+     * Iterate over every line in the input.
+     */
+    public MappedLineSpliterator(final MappedInput input) {
+        this(input, null, 0, input.size(), estimateBytesPerLine(input));
+    }
+
+    /**
+     * Iterate over every line in the input, using a precomputed index to report exact sizes.
+     *
+     * @param lineStarts the offset of every line followed by the input size, as returned by
+     *                   {@link MappedInput#lineIndex()}
+     */
+    public MappedLineSpliterator(final MappedInput input, final long[] lineStarts) {
+        this(input, lineStarts, 0, lineStarts.length - 1, 0);
+    }
+
+    /**
+     * @param position the first line to return (a byte offset, or a line number when indexed)
+     * @param end      the line after the last one to return (a byte offset, or a line number when indexed)
+     */
+    protected MappedLineSpliterator(final MappedInput input, final long[] lineStarts, final long position,
+                                    final long end, final double bytesPerLine) {
+        Objects.requireNonNull(input);
+        this.input = input;
+        this.lineStarts = lineStarts;
+        this.position = position;
+        this.end = end;
+        this.bytesPerLine = bytesPerLine;
+        this.segmentIndex = input.segmentIndex(lineStarts == null ? position : lineStarts[(int) position]);
+    }
+
+    public boolean tryAdvance(final Consumer<? super AsciiSequence> action) {
+        if (position >= end) {
+            return false;
+        }
+        final long start;
+        final long next;
+        if (lineStarts != null) {
+            start = lineStarts[(int) position];
+            next = lineStarts[(int) position + 1];
+            position++;
+        } else {
+            start = position;
+            next = input.nextLineStart(start);
+            position = next;
+        }
+        while (start >= input.segmentOffset(segmentIndex) + input.segment(segmentIndex).limit()) {
+            segmentIndex++;
+        }
+        final var segment = input.segment(segmentIndex);
+        final var localStart = (int) (start - input.segmentOffset(segmentIndex));
+        final var localEnd = MappedInput.lineEnd(segment, localStart, (int) (next - input.segmentOffset(segmentIndex)));
+        action.accept(new AsciiSequence(segment, localStart, localEnd - localStart));
+        return true;
+    }
+
+    public Spliterator<AsciiSequence> trySplit() {
+        final long split;
+        if (lineStarts != null) {
+            if (end - position < 2) {
+                return null;
+            }
+            split = position + (end - position) / 2;
+        } else {
+            if (end - position < MIN_SPLIT_BYTES) {
+                return null;
+            }
+            split = input.nextLineStart(position + (end - position) / 2 - 1);
+            if (split >= end) {
+                return null;
+            }
+        }
+        final var prefix = new MappedLineSpliterator(input, lineStarts, position, split, bytesPerLine);
+        this.position = split;
+        this.segmentIndex = input.segmentIndex(lineStarts == null ? split : lineStarts[(int) split]);
+        return prefix;
+    }
+
+    public long estimateSize() {
+        if (lineStarts != null) {
+            return end - position;
+        }
+        return (long) Math.ceil((end - position) / bytesPerLine);
+    }
+
+    public int characteristics() {
+        final var sized = lineStarts != null ? SIZED | SUBSIZED : 0;
+        return ORDERED | NONNULL | IMMUTABLE | sized;
+    }
+
+    protected static double estimateBytesPerLine(final MappedInput input) {
+        if (input.segmentCount() == 0) {
+            return 1;
+        }
+        final ByteBuffer first = input.segment(0);
+        final var sampleSize = Math.min(first.limit(), SAMPLE_SIZE);
+        int lines = 0;
+        for (int i = 0; (i = MappedInput.indexOfNewline(first, i, sampleSize)) >= 0; i++) {
+            lines++;
+        }
+        return Math.max(1.0, (double) sampleSize / Math.max(lines, 1));
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,103 @@
+package com.macasaet;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * The cost of running a single phase of a puzzle, such as parsing or solving one part.
+ *
+ * <p>Allocation is tracked for every live thread rather than just the caller so that work done by parallel streams
+ * is included. Allocation by threads that terminate during the phase is not counted. Peak heap usage is the sum of
+ * each heap pool's peak, which can slightly exceed the true peak since pools need not peak at the same moment.</p>
+ *
+ * @param result         the phase's output
+ * @param nanos          the elapsed wall-clock time
+ * @param allocatedBytes the bytes allocated on the heap while the phase ran, or -1 if the JVM cannot report it
+ * @param peakHeapBytes  the most heap in use at any point while the phase ran
+ * @param <T>            the type of output
+ */
+public record Measurement<T>(T result, long nanos, long allocatedBytes, long peakHeapBytes) {
+
+    private static final List<MemoryPoolMXBean> heapPools = ManagementFactory.getMemoryPoolMXBeans()
+            .stream()
+            .filter(pool -> pool.getType() == MemoryType.HEAP)
+            .toList();
+
+    /**
+     * Run and measure a phase. Phases measured concurrently will see each other's allocations and heap usage.
+     *
+     * @param phase the work to measure
+     * @return the phase's output along with its cost
+     */
+    public static <T> Measurement<T> of(final Supplier<? extends T> phase) {
+        for (final var pool : heapPools) {
+            pool.resetPeakUsage();
+        }
+        final var allocatedBefore = allocatedBytesByThread();
+        final var start = System.nanoTime();
+
+        final T result = phase.get();
+
+        final var nanos = System.nanoTime() - start;
+        final var allocatedAfter = allocatedBytesByThread();
+        long peakHeapBytes = 0;
+        for (final var pool : heapPools) {
+            peakHeapBytes += pool.getPeakUsage().getUsed();
+        }
+        long allocatedBytes = -1;
+        if (allocatedBefore != null && allocatedAfter != null) {
+            allocatedBytes = 0;
+            for (final var entry : allocatedAfter.entrySet()) {
+                allocatedBytes += entry.getValue() - allocatedBefore.getOrDefault(entry.getKey(), 0L);
+            }
+        }
+        return new Measurement<>(result, nanos, allocatedBytes, peakHeapBytes);
+    }
+
+    /**
+     * Run and measure a phase of a puzzle, also recording it as a {@link PuzzleEvents.Phase} flight recorder event.
+     *
+     * @param day   the day of the Advent calendar
+     * @param phase "parse", "part1" or "part2"
+     * @param work  the work to measure
+     * @return the phase's output along with its cost
+     */
+    public static <T> Measurement<T> of(final int day, final String phase, final Supplier<? extends T> work) {
+        final var event = new PuzzleEvents.Phase();
+        event.begin();
+        try {
+            return of(work);
+        } finally {
+            if (event.shouldCommit()) {
+                event.day = day;
+                event.phase = phase;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * @return the total bytes allocated so far by each live thread, or null if allocation tracking is unavailable
+     */
+    protected static Map<Long, Long> allocatedBytesByThread() {
+        if (!(ManagementFactory.getThreadMXBean() instanceof final com.sun.management.ThreadMXBean threads)
+                || !threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled()) {
+            return null;
+        }
+        final var ids = threads.getAllThreadIds();
+        final var allocated = threads.getThreadAllocatedBytes(ids);
+        final var result = new HashMap<Long, Long>(ids.length * 2);
+        for (int i = ids.length; --i >= 0; ) {
+            if (allocated[i] >= 0) {
+                result.put(ids[i], allocated[i]);
+            }
+        }
+        return result;
+    }
+
+}
\ No newline at end of file
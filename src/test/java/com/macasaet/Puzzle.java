@@ -0,0 +1,72 @@
+package com.macasaet;
+
+/**
+ * A day's puzzle, separated into a parsing phase and a compute kernel for each part so that every phase can be run
+ * and measured on its own. Kernels must not modify the parsed model; any simulation state they need is derived from
+ * it so that both parts (and repeated runs) can share a single parse.
+ *
+ * @param <M> the parsed representation of the puzzle input
+ */
+public interface Puzzle<M> {
+
+    /**
+     * The days for which there is a solution
+     */
+    int[] DAYS = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 18, 20, 21, 23};
+
+    /**
+     * @param input the raw puzzle input
+     * @return the parsed model
+     */
+    M parse(MappedInput input);
+
+    /**
+     * @param model the parsed input, which will not be modified
+     * @return the answer to the first part
+     */
+    Object solvePart1(M model);
+
+    /**
+     * @param model the parsed input, which will not be modified
+     * @return the answer to the second part
+     */
+    Object solvePart2(M model);
+
+    /**
+     * @param day the day of the Advent calendar
+     * @return the conventional input file name for that day, e.g. "day-01.txt"
+     */
+    static String inputName(final int day) {
+        return String.format("day-%02d.txt", day);
+    }
+
+    /**
+     * @param day the day of the Advent calendar
+     * @return a new instance of that day's solution
+     */
+    static Puzzle<?> forDay(final int day) {
+        return switch (day) {
+            case 1 -> new Day01();
+            case 2 -> new Day02();
+            case 3 -> new Day03();
+            case 4 -> new Day04();
+            case 5 -> new Day05();
+            case 6 -> new Day06();
+            case 7 -> new Day07();
+            case 8 -> new Day08();
+            case 9 -> new Day09();
+            case 10 -> new Day10();
+            case 11 -> new Day11();
+            case 12 -> new Day12();
+            case 13 -> new Day13();
+            case 14 -> new Day14();
+            case 15 -> new Day15();
+            case 18 -> new Day18();
+            case 20 -> new Day20();
+            case 21 -> new Day21();
+            case 23 -> new Day23();
+            default -> throw new IllegalArgumentException("No solution for day " + day);
+        };
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,119 @@
+package com.macasaet;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder events emitted while solving puzzles. Record them with e.g.:
+ *
+ * <pre>java -XX:StartFlightRecording=filename=advent.jfr -cp ... com.macasaet.Runner</pre>
+ *
+ * <p>The events cost next to nothing when no recording is running. The per-iteration events can be numerous, so
+ * they do not capture stack traces.</p>
+ */
+public final class PuzzleEvents {
+
+    private static final String CATEGORY = "Advent of Code";
+
+    private PuzzleEvents() {
+    }
+
+    @Name("com.macasaet.Phase")
+    @Label("Puzzle Phase")
+    @Description("Parsing a day's input or solving one of its parts")
+    @Category(CATEGORY)
+    public static class Phase extends Event {
+        @Label("Day")
+        public int day;
+
+        @Label("Phase")
+        @Description("\"parse\", \"part1\" or \"part2\"")
+        public String phase;
+    }
+
+    @Name("com.macasaet.Round")
+    @Label("Simulation Round")
+    @Description("A single round of a simulation")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class Round extends Event {
+        @Label("Day")
+        public int day;
+
+        @Label("Round")
+        public int round;
+
+        @Label("Moves")
+        @Description("The state changes made during the round, such as Elves moved or items thrown")
+        public long moves;
+
+        @Label("Cells Touched")
+        @Description("The grid cells read or written during the round, or zero for puzzles without a grid")
+        public long cellsTouched;
+    }
+
+    @Name("com.macasaet.Grain")
+    @Label("Sand Grain")
+    @Description("A single unit of sand falling until it comes to rest or falls into the abyss")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class Grain extends Event {
+        @Label("Day")
+        public int day;
+
+        @Label("Cells Touched")
+        @Description("The cells the grain fell through")
+        public int cellsTouched;
+
+        @Label("Resting Depth")
+        @Description("The depth at which the grain came to rest or left the cave")
+        public int depth;
+    }
+
+    @Name("com.macasaet.MixingPass")
+    @Label("Mixing Pass")
+    @Description("Moving every number in a file once")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class MixingPass extends Event {
+        @Label("Day")
+        public int day;
+
+        @Label("Pass")
+        public int pass;
+
+        @Label("Numbers")
+        public int numbers;
+
+        @Label("Elements Shifted")
+        @Description("The total distance the numbers moved within the file")
+        public long elementsShifted;
+    }
+
+    @Name("com.macasaet.Expansion")
+    @Label("Search Expansion")
+    @Description("Expanding one layer of a breadth-first search")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class Expansion extends Event {
+        @Label("Day")
+        public int day;
+
+        @Label("Depth")
+        @Description("The distance of the layer from where the search started")
+        public int depth;
+
+        @Label("Queue Size")
+        @Description("The number of cells in the layer")
+        public int queueSize;
+
+        @Label("Cells Touched")
+        @Description("The neighbouring cells examined while expanding the layer")
+        public int cellsTouched;
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,246 @@
+package com.macasaet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * A persistent cache of puzzle answers. Each entry is keyed by the SHA-256 of the input bytes, the day, the part and
+ * a fingerprint of the solver's code and the shared code it is built on, so changing either the input or that code
+ * is a miss. Changes to anything outside the puzzle's package, such as a library upgrade, are not detected; delete the
+ * cache directory to invalidate it explicitly.
+ *
+ * <p>Every entry is a small file named after its key. Entries are written to a temporary file and then moved into
+ * place atomically, so a concurrent reader never sees a partial answer. Reading an entry refreshes its modification
+ * time, and when the entries outgrow the size cap the least recently used ones are deleted.</p>
+ */
+public class ResultCache {
+
+    /**
+     * 1 MiB, enough for tens of thousands of answers
+     */
+    public static final long DEFAULT_MAX_BYTES = 1 << 20;
+
+    private static final String SUFFIX = ".answer";
+    private static final Map<Class<?>, String> solverVersions = new ConcurrentHashMap<>();
+    private static final Pattern DAY = Pattern.compile("Day\\d+");
+
+    /**
+     * An answer found in the cache.
+     *
+     * @param result the answer as it was originally printed
+     */
+    public record Hit(String result) {
+        public String toString() {
+            return result();
+        }
+    }
+
+    private final Path directory;
+    private final long maxBytes;
+
+    /**
+     * @param directory where to keep the entries, created if necessary
+     * @param maxBytes  the most space the entries may use
+     */
+    public ResultCache(final Path directory, final long maxBytes) {
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("Invalid cache size: " + maxBytes);
+        }
+        try {
+            this.directory = Files.createDirectories(directory);
+        } catch (final IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return the SHA-256 of the input's bytes
+     */
+    public static byte[] digest(final MappedInput input) {
+        final var digest = sha256();
+        input.update(digest);
+        return digest.digest();
+    }
+
+    /**
+     * @param inputDigest the {@link #digest(MappedInput) digest} of the day's input
+     * @return the name of the entry holding the answer
+     */
+    public String key(final int day, final int part, final Puzzle<?> puzzle, final byte[] inputDigest) {
+        final var digest = sha256();
+        digest.update(inputDigest);
+        digest.update((day + ":" + part + ":" + solverVersion(puzzle)).getBytes(StandardCharsets.US_ASCII));
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * @return the cached answer or null if there is none, or if the entry is empty or not valid UTF-8, in which case
+     * it is deleted
+     */
+    public Hit get(final String key) {
+        final var entry = entry(key);
+        try {
+            final String result;
+            try {
+                result = Files.readString(entry, StandardCharsets.UTF_8);
+            } catch (final CharacterCodingException cce) {
+                Files.deleteIfExists(entry);
+                return null;
+            }
+            if (result.isEmpty()) {
+                Files.deleteIfExists(entry);
+                return null;
+            }
+            try {
+                Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+            } catch (final IOException ioe) {
+                // the entry was evicted after it was read, the answer is still good
+            }
+            return new Hit(result);
+        } catch (final NoSuchFileException nsfe) {
+            return null;
+        } catch (final IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    /**
+     * Store an answer then evict the least recently used entries if the cache is too large.
+     */
+    public void put(final String key, final Object result) {
+        final var entry = entry(key);
+        try {
+            final var temporary = Files.createTempFile(directory, key, ".tmp");
+            try {
+                Files.writeString(temporary, String.valueOf(result), StandardCharsets.UTF_8);
+                try {
+                    Files.move(temporary, entry, StandardCopyOption.ATOMIC_MOVE);
+                } catch (final AtomicMoveNotSupportedException amnse) {
+                    Files.move(temporary, entry, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+            evict();
+        } catch (final IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    /**
+     * @return the file holding the answer for <code>key</code>, which may not exist
+     */
+    protected Path entry(final String key) {
+        return directory.resolve(key + SUFFIX);
+    }
+
+        protected void evict() throws IOException {
+        record Entry(Path path, long size, FileTime lastModified) {
+        }
+        final var entries = new ArrayList<Entry>();
+        long total = 0;
+        try (var stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (final var path : stream) {
+                try {
+                    final var attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                    entries.add(new Entry(path, attributes.size(), attributes.lastModifiedTime()));
+                    total += attributes.size();
+                } catch (final NoSuchFileException nsfe) {
+                    // evicted concurrently
+                }
+            }
+        }
+        if (total <= maxBytes) {
+            return;
+        }
+        entries.sort(Comparator.comparing(Entry::lastModified));
+        for (final var entry : entries) {
+            if (total <= maxBytes) {
+                break;
+            }
+            Files.deleteIfExists(entry.path());
+            total -= entry.size();
+        }
+    }
+
+    /**
+     * @return a fingerprint of the bytecode the solver may depend on: the puzzle class, every class nested within it
+     * and every shared class in its package, such as {@link MappedInput}. Other days' puzzles are excluded, so
+     * changing one day does not invalidate the answers of the others. When the classes are packaged in an archive,
+     * the whole archive is fingerprinted instead.
+     */
+    protected static String solverVersion(final Puzzle<?> puzzle) {
+        return solverVersions.computeIfAbsent(puzzle.getClass(), type -> {
+            final var digest = sha256();
+            try {
+                final var location = Path.of(type.getProtectionDomain().getCodeSource().getLocation().toURI());
+                if (!Files.isDirectory(location)) {
+                    try (InputStream stream = Files.newInputStream(location)) {
+                        digest.update(stream.readAllBytes());
+                    }
+                    return HexFormat.of().formatHex(digest.digest());
+                }
+                final var host = type.getNestHost().getSimpleName();
+                final var packageDirectory = location.resolve(type.getPackageName().replace('.', '/'));
+                final List<Path> classes;
+                try (var files = Files.list(packageDirectory)) {
+                    classes = files.filter(path -> isSolverClass(path.getFileName().toString(), host))
+                            .sorted()
+                            .toList();
+                }
+                for (final var path : classes) {
+                    digest.update(path.getFileName().toString().getBytes(StandardCharsets.UTF_8));
+                    digest.update(Files.readAllBytes(path));
+                }
+            } catch (final IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            } catch (final URISyntaxException use) {
+                throw new IllegalStateException("Unable to locate the classes of " + type.getName(), use);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        });
+    }
+
+    /**
+     * @param fileName the name of a class file in the puzzle's package
+     * @param host     the simple name of the puzzle class
+     * @return true unless the file is not a class or belongs to a different day's puzzle
+     */
+    protected static boolean isSolverClass(final String fileName, final String host) {
+        if (!fileName.endsWith(".class")) {
+            return false;
+        }
+        final var topLevel = fileName.substring(0, fileName.length() - ".class".length()).split("\\$", 2)[0];
+        return !DAY.matcher(topLevel).matches() || topLevel.equals(host);
+    }
+
+    protected static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (final NoSuchAlgorithmException nsae) {
+            throw new IllegalStateException("SHA-256 is required by every JVM", nsae);
+        }
+    }
+
+}
\ No newline at end of file
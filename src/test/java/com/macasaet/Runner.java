@@ -0,0 +1,269 @@
+package com.macasaet;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Runs puzzles outside of the test harness. Each day's input is parsed once and shared by the parts. The cost of
+ * every phase is written to standard output as a single line of JSON, e.g.:
+ *
+ * <pre>{"day":1,"phase":"part1","nanos":81234,"allocatedBytes":52112,"peakHeapBytes":8388608,"result":"24000"}</pre>
+ *
+ * <p>Usage:</p>
+ * <pre>Runner [--input file-or-directory] [--parts 1,2] [--concurrent] [--cache directory [--cache-size bytes]]
+ *        [--snapshots directory] [day ...]</pre>
+ *
+ * <p>A directory must contain inputs named like "day-01.txt". A file may only be used with a single day. Without
+ * an input, each day's input is found the same way the tests find it. Without any days, every day is run. With
+ * "--concurrent", every day and part is run at once by a {@link Scheduler}, so the measurements of overlapping
+ * phases include each other's allocations. The last line reports the total elapsed time.</p>
+ *
+ * <p>With "--cache directory", answers are kept in a {@link ResultCache} that holds at most "--cache-size" bytes.
+ * Each input is hashed first, reported as a "hash" phase. A part whose answer is cached is not solved and its
+ * measurement, marked <code>"cached":true</code>, is the cost of the lookup. A day whose parts are all cached is
+ * not parsed either.</p>
+ *
+ * <p>With "--snapshots directory", each day that supports it loads its model from a binary {@link Snapshot} kept
+ * in the directory, parsing the text input and writing the snapshot only if it is missing or stale.</p>
+ */
+public class Runner {
+
+    private final Path input;
+    private final int[] parts;
+    private final PrintStream output;
+    private final ResultCache cache;
+    private final Path snapshots;
+
+    public Runner(final Path input, final int[] parts, final PrintStream output) {
+        this(input, parts, output, null, null);
+    }
+
+    /**
+     * @param input  a file or directory of inputs, or null to use the inputs the tests use
+     * @param parts  the parts to solve (1 and/or 2)
+     * @param output the destination for the measurements
+     * @param cache     answers from previous runs, or null to always solve
+     * @param snapshots a directory of binary snapshots of parsed inputs, or null to always parse the text
+     */
+    public Runner(final Path input, final int[] parts, final PrintStream output, final ResultCache cache,
+                  final Path snapshots) {
+        for (final var part : parts) {
+            if (part != 1 && part != 2) {
+                throw new IllegalArgumentException("Invalid part: " + part);
+            }
+        }
+        this.input = input;
+        this.parts = parts;
+        this.output = output;
+        this.cache = cache;
+        this.snapshots = snapshots;
+    }
+
+    public static void main(final String... arguments) {
+        run(System.out, arguments);
+    }
+
+    /**
+     * Run the days named by command-line arguments, as described above.
+     *
+     * @param output    the destination for the measurements
+     * @param arguments the command-line arguments
+     */
+    protected static void run(final PrintStream output, final String... arguments) {
+        Path input = null;
+        int[] parts = {1, 2};
+        int[] days = Puzzle.DAYS;
+        boolean concurrent = false;
+        Path cacheDirectory = null;
+        long cacheSize = ResultCache.DEFAULT_MAX_BYTES;
+        Path snapshots = null;
+        for (int i = 0; i < arguments.length; i++) {
+            switch (arguments[i]) {
+                case "--input" -> input = Path.of(value(arguments, ++i));
+                case "--parts" -> parts = parseList(value(arguments, ++i));
+                case "--concurrent" -> concurrent = true;
+                case "--cache" -> cacheDirectory = Path.of(value(arguments, ++i));
+                case "--cache-size" -> cacheSize = Long.parseLong(value(arguments, ++i));
+                case "--snapshots" -> snapshots = Path.of(value(arguments, ++i));
+                default -> {
+                    days = Arrays.stream(arguments, i, arguments.length).mapToInt(Integer::parseInt).toArray();
+                    i = arguments.length;
+                }
+            }
+        }
+        if (input != null && !Files.isDirectory(input) && days.length != 1) {
+            throw new IllegalArgumentException("An input file can only be used with a single day");
+        }
+        final var cache = cacheDirectory == null ? null : new ResultCache(cacheDirectory, cacheSize);
+        final var runner = new Runner(input, parts, output, cache, snapshots);
+        final var start = System.nanoTime();
+        if (concurrent) {
+            runner.runConcurrently(days);
+        } else {
+            for (final var day : days) {
+                runner.run(day);
+            }
+        }
+        output.println("{\"phase\":\"total\",\"nanos\":" + (System.nanoTime() - start) + "}");
+    }
+
+    /**
+     * Parse a day's input then solve each requested part, reporting each phase. Parts with a cached answer are not
+     * solved, and the input is only parsed if some part is not cached.
+     *
+     * @param day the day of the Advent calendar
+     */
+    public void run(final int day) {
+        @SuppressWarnings("unchecked") final var puzzle = (Puzzle<Object>) Puzzle.forDay(day);
+        final var mappedInput = openInput(day);
+        byte[] inputDigest = null;
+        if (cache != null) {
+            final var hashed = Measurement.of(day, "hash", () -> ResultCache.digest(mappedInput));
+            report(day, "hash", hashed, false);
+            inputDigest = hashed.result();
+        }
+        Measurement<Object> parsed = null;
+        for (final var part : parts) {
+            final var phase = "part" + part;
+            final var key = cache == null ? null : cache.key(day, part, puzzle, inputDigest);
+            if (key != null) {
+                final var lookup = Measurement.of(day, phase, () -> cache.get(key));
+                if (lookup.result() != null) {
+                    report(day, phase, lookup, true);
+                    continue;
+                }
+            }
+            if (parsed == null) {
+                parsed = Measurement.of(day, "parse", () -> parse(day, puzzle, mappedInput));
+                report(day, "parse", parsed, false);
+            }
+            final var model = parsed.result();
+            final var solution = Measurement.of(day, phase, () -> part == 1
+                    ? puzzle.solvePart1(model)
+                    : puzzle.solvePart2(model));
+            report(day, phase, solution, true);
+            if (key != null) {
+                cache.put(key, solution.result());
+            }
+        }
+    }
+
+    /**
+     * Parse each day's input then solve each requested part, running every day and part at once.
+     *
+     * @param days the days of the Advent calendar
+     */
+    public void runConcurrently(final int[] days) {
+        try (var scheduler = new Scheduler(this::openInput, Runtime.getRuntime().availableProcessors(), cache,
+                this::parse)) {
+            scheduler.run(days, parts, (day, phase, measurement) -> report(day, phase, measurement,
+                    phase.startsWith("part")));
+        }
+    }
+
+    /**
+     * Build a day's model from its snapshot if snapshots are enabled and the input is a file, otherwise parse it.
+     */
+    protected Object parse(final int day, final Puzzle<Object> puzzle, final MappedInput mappedInput) {
+        final var source = inputPath(day);
+        if (snapshots == null || source == null) {
+            return puzzle.parse(mappedInput);
+        }
+        return Snapshot.load(day, puzzle, source, snapshots.resolve(Puzzle.inputName(day) + ".snapshot"));
+    }
+
+    /**
+     * @return the file holding the day's input or null if it is not on the file system
+     */
+    protected Path inputPath(final int day) {
+        final var fileName = Puzzle.inputName(day);
+        if (input != null) {
+            return Files.isDirectory(input) ? input.resolve(fileName) : input;
+        }
+        final var url = LineSpliterator.resource(fileName);
+        if (url == null || !"file".equals(url.getProtocol())) {
+            return null;
+        }
+        try {
+            return Path.of(url.toURI());
+        } catch (final URISyntaxException use) {
+            return null;
+        }
+    }
+
+    protected MappedInput openInput(final int day) {
+        final var fileName = Puzzle.inputName(day);
+        if (input == null) {
+            return MappedInput.open(fileName);
+        }
+        try {
+            return MappedInput.open(Files.isDirectory(input) ? input.resolve(fileName) : input);
+        } catch (final IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    protected void report(final int day, final String phase, final Measurement<?> measurement,
+                          final boolean includeResult) {
+        final var builder = new StringBuilder();
+        builder.append("{\"day\":").append(day)
+                .append(",\"phase\":\"").append(phase).append('"')
+                .append(",\"nanos\":").append(measurement.nanos())
+                .append(",\"allocatedBytes\":").append(measurement.allocatedBytes())
+                .append(",\"peakHeapBytes\":").append(measurement.peakHeapBytes());
+        if (includeResult) {
+            builder.append(",\"result\":");
+            appendString(builder, String.valueOf(measurement.result()));
+            if (measurement.result() instanceof ResultCache.Hit) {
+                builder.append(",\"cached\":true");
+            }
+        }
+        builder.append('}');
+        synchronized (output) {
+            output.println(builder);
+        }
+    }
+
+    protected static void appendString(final StringBuilder builder, final String string) {
+        builder.append('"');
+        for (int i = 0; i < string.length(); i++) {
+            final var c = string.charAt(i);
+            switch (c) {
+                case '"' -> builder.append("\\\"");
+                case '\\' -> builder.append("\\\\");
+                case '\n' -> builder.append("\\n");
+                case '\r' -> builder.append("\\r");
+                case '\t' -> builder.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        builder.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        builder.append(c);
+                    }
+                }
+            }
+        }
+        builder.append('"');
+    }
+
+    /**
+     * @param index the position of an option's value, just after the option's name
+     * @return the option's value
+     */
+    protected static String value(final String[] arguments, final int index) {
+        if (index >= arguments.length) {
+            throw new IllegalArgumentException("Missing value for " + arguments[index - 1]);
+        }
+        return arguments[index];
+    }
+
+    protected static int[] parseList(final String list) {
+        return Arrays.stream(list.split(",")).map(String::strip).mapToInt(Integer::parseInt).toArray();
+    }
+
+}
\ No newline at end of file
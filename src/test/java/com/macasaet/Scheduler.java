@@ -0,0 +1,173 @@
+package com.macasaet;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+/**
+ * Runs many days and parts at once. Every (day, part) pair gets its own lightweight task, each input is parsed only
+ * once no matter how many parts need it (and not at all if a {@link ResultCache} already has the answers), and the
+ * CPU-bound work (hashing, parsing and the compute kernels) is confined to a bounded pool of platform threads so
+ * that running every day at once does not oversubscribe the processors.
+ *
+ * <p>Tasks run on virtual threads when the JVM provides them. Otherwise they fall back to ordinary threads, which
+ * is harmless since the tasks only ever wait on the bounded pool.</p>
+ */
+public class Scheduler implements AutoCloseable {
+
+    /**
+     * Receives the cost of each phase as soon as it completes. It may be called concurrently.
+     */
+    @FunctionalInterface
+    public interface Listener {
+        /**
+         * @param day         the day of the Advent calendar
+         * @param phase       "hash", "parse", "part1" or "part2"
+         * @param measurement the phase's output and cost
+         */
+        void completed(int day, String phase, Measurement<?> measurement);
+    }
+
+    /**
+     * Turns a day's input into its model, e.g. by {@link Puzzle#parse(MappedInput) parsing} it.
+     */
+    @FunctionalInterface
+    public interface Parser {
+        Object parse(int day, Puzzle<Object> puzzle, MappedInput input);
+    }
+
+    private final IntFunction<? extends MappedInput> inputs;
+    private final ResultCache cache;
+    private final Parser parser;
+    private final ExecutorService tasks = newVirtualThreadExecutor();
+    private final ExecutorService kernels;
+    private final Map<Integer, MappedInput> openInputs = new ConcurrentHashMap<>();
+    private final Map<Integer, CompletableFuture<byte[]>> digests = new ConcurrentHashMap<>();
+    private final Map<Integer, CompletableFuture<Object>> models = new ConcurrentHashMap<>();
+
+    /**
+     * @param inputs  the raw input for each day
+     * @param threads the most CPU-bound phases to run at once
+     * @param cache   answers from previous runs, or null to always solve
+     * @param parser  how to build each day's model from its input
+     */
+    public Scheduler(final IntFunction<? extends MappedInput> inputs, final int threads, final ResultCache cache,
+                     final Parser parser) {
+        this.inputs = inputs;
+        this.cache = cache;
+        this.parser = parser;
+        final var count = new AtomicInteger();
+        this.kernels = Executors.newFixedThreadPool(threads, runnable -> {
+            final var thread = new Thread(runnable, "kernel-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public Scheduler(final IntFunction<? extends MappedInput> inputs, final int threads) {
+        this(inputs, threads, null, (day, puzzle, input) -> puzzle.parse(input));
+    }
+
+    public Scheduler(final IntFunction<? extends MappedInput> inputs) {
+        this(inputs, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Solve every requested part of every requested day and wait for them all to finish.
+     *
+     * @param days     the days of the Advent calendar
+     * @param parts    the parts to solve (1 and/or 2)
+     * @param listener notified as each phase completes
+     * @throws CompletionException if any phase fails
+     */
+    public void run(final int[] days, final int[] parts, final Listener listener) {
+        final var pending = new ArrayList<CompletableFuture<Void>>(days.length * parts.length);
+        for (final var day : days) {
+            @SuppressWarnings("unchecked") final var puzzle = (Puzzle<Object>) Puzzle.forDay(day);
+            for (final var part : parts) {
+                pending.add(CompletableFuture.runAsync(() -> solve(day, part, puzzle, listener), tasks));
+            }
+        }
+        CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new)).join();
+    }
+
+    public void close() {
+        tasks.shutdown();
+        kernels.shutdown();
+    }
+
+    /**
+     * Solve one part of a day, or look up its answer if the cache has one, in which case the input is not parsed.
+     * This blocks until the answer is ready, so it should run on a lightweight task thread.
+     */
+    protected void solve(final int day, final int part, final Puzzle<Object> puzzle, final Listener listener) {
+        final var phase = "part" + part;
+        final var key = cache == null ? null : cache.key(day, part, puzzle, digest(day, listener).join());
+        if (key != null) {
+            final var lookup = Measurement.of(day, phase, () -> cache.get(key));
+            if (lookup.result() != null) {
+                listener.completed(day, phase, lookup);
+                return;
+            }
+        }
+        final var model = model(day, puzzle, listener).join();
+        final var solution = CompletableFuture.supplyAsync(() -> Measurement.of(day, phase, () -> part == 1
+                ? puzzle.solvePart1(model)
+                : puzzle.solvePart2(model)), kernels).join();
+        listener.completed(day, phase, solution);
+        if (key != null) {
+            cache.put(key, solution.result());
+        }
+    }
+
+    /**
+     * @return the SHA-256 of the day's input, which is computed by whichever part asks for it first
+     */
+    protected CompletableFuture<byte[]> digest(final int day, final Listener listener) {
+        return digests.computeIfAbsent(day, key -> CompletableFuture.supplyAsync(() -> {
+            final var hashed = Measurement.of(day, "hash", () -> ResultCache.digest(input(day)));
+            listener.completed(day, "hash", hashed);
+            return hashed.result();
+        }, kernels));
+    }
+
+    /**
+     * @return the day's parsed input, which is parsed by whichever part asks for it first
+     */
+    protected CompletableFuture<Object> model(final int day, final Puzzle<Object> puzzle, final Listener listener) {
+        return models.computeIfAbsent(day, key -> CompletableFuture.supplyAsync(() -> {
+            final var input = input(day);
+            final var parsed = Measurement.of(day, "parse", () -> parser.parse(day, puzzle, input));
+            listener.completed(day, "parse", parsed);
+            return parsed.result();
+        }, kernels));
+    }
+
+    protected MappedInput input(final int day) {
+        return openInputs.computeIfAbsent(day, inputs::apply);
+    }
+
+    /**
+     * @return an executor that starts a virtual thread per task if the JVM supports them, otherwise one that pools
+     * platform threads
+     */
+    protected static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (final ReflectiveOperationException | UnsupportedOperationException e) {
+            // virtual threads are either absent or a preview feature that has not been enabled
+            return Executors.newCachedThreadPool(runnable -> {
+                final var thread = new Thread(runnable);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,197 @@
+package com.macasaet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A compact binary image of a day's parsed model. The first time an input is parsed its model is written out, and
+ * later runs map the image back in without doing any text parsing.
+ *
+ * <p>Layout, big-endian:</p>
+ * <pre>
+ * int  magic, "AOCS"
+ * int  format version, {@link #FORMAT_VERSION}
+ * int  day
+ * int  layout version of the day's model, {@link Codec#snapshotVersion()}
+ * long size of the text input in bytes
+ * long last-modified time of the text input in milliseconds
+ * ...  the model, as written by {@link Codec#writeSnapshot(Object, DataOutput)}
+ * </pre>
+ *
+ * <p>A snapshot is stale if any of the header fields do not match, in which case the text input is parsed and the
+ * snapshot rewritten. Snapshots are written to a temporary file and moved into place atomically.</p>
+ */
+public final class Snapshot {
+
+    public static final int FORMAT_VERSION = 1;
+
+    private static final int MAGIC = 0x414F4353;
+
+    /**
+     * Converts a day's parsed model to and from a snapshot. Implemented by the {@link Puzzle} for days whose parsing
+     * is expensive.
+     *
+     * @param <M> the parsed model
+     */
+    public interface Codec<M> {
+        /**
+         * @return a number that must change whenever the layout written by {@link #writeSnapshot} changes
+         */
+        int snapshotVersion();
+
+        void writeSnapshot(M model, DataOutput output) throws IOException;
+
+        /**
+         * @param input the bytes following the header
+         * @throws IllegalStateException if the snapshot is corrupt, see {@link #corrupt(String)}
+         */
+        M readSnapshot(ByteBuffer input);
+    }
+
+    private Snapshot() {
+    }
+
+    /**
+     * Load a day's model from its snapshot or, if there is no usable snapshot, parse the text input and write one.
+     *
+     * @param day      the day of the Advent calendar
+     * @param puzzle   the day's solver, which is only used to parse if it is not a {@link Codec}
+     * @param source   the text input
+     * @param snapshot where the snapshot is, or should be, kept
+     * @return the parsed model
+     */
+    public static <M> M load(final int day, final Puzzle<M> puzzle, final Path source, final Path snapshot) {
+        try {
+            if (!(puzzle instanceof Codec<?>)) {
+                return puzzle.parse(MappedInput.open(source));
+            }
+            @SuppressWarnings("unchecked") final var codec = (Codec<M>) puzzle;
+            final var size = Files.size(source);
+            final var lastModified = Files.getLastModifiedTime(source).toMillis();
+            final var existing = read(day, codec, size, lastModified, snapshot);
+            if (existing != null) {
+                return existing;
+            }
+            final var model = puzzle.parse(MappedInput.open(source));
+            write(day, codec, size, lastModified, model, snapshot);
+            return model;
+        } catch (final IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    /**
+     * @return the model or null if the snapshot is missing, stale, truncated or corrupt
+     */
+    static <M> M read(final int day, final Codec<M> codec, final long size, final long lastModified,
+                      final Path snapshot) throws IOException {
+        final ByteBuffer buffer;
+        try (var channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (final NoSuchFileException nsfe) {
+            return null;
+        }
+        try {
+            if (buffer.getInt() != MAGIC
+                    || buffer.getInt() != FORMAT_VERSION
+                    || buffer.getInt() != day
+                    || buffer.getInt() != codec.snapshotVersion()
+                    || buffer.getLong() != size
+                    || buffer.getLong() != lastModified) {
+                return null;
+            }
+            return codec.readSnapshot(buffer);
+        } catch (final BufferUnderflowException | IllegalStateException e) {
+            return null;
+        }
+    }
+
+    static <M> void write(final int day, final Codec<M> codec, final long size, final long lastModified,
+                          final M model, final Path snapshot) throws IOException {
+        final var directory = snapshot.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        final var temporary = Files.createTempFile(directory, snapshot.getFileName().toString(), ".tmp");
+        try {
+            try (var output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                output.writeInt(MAGIC);
+                output.writeInt(FORMAT_VERSION);
+                output.writeInt(day);
+                output.writeInt(codec.snapshotVersion());
+                output.writeLong(size);
+                output.writeLong(lastModified);
+                codec.writeSnapshot(model, output);
+            }
+            try {
+                Files.move(temporary, snapshot, StandardCopyOption.ATOMIC_MOVE);
+            } catch (final AtomicMoveNotSupportedException amnse) {
+                Files.move(temporary, snapshot, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * @param reason what is wrong with the snapshot
+     * @return an exception for a {@link Codec} to throw when a snapshot cannot be decoded, which {@link #load} treats
+     * as a missing snapshot
+     */
+    public static IllegalStateException corrupt(final String reason) {
+        return new IllegalStateException("Corrupt snapshot: " + reason);
+    }
+
+    /**
+     * Read the number of elements that follow.
+     *
+     * @param minElementBytes the fewest bytes each element occupies
+     * @return a count that the remaining bytes can hold
+     * @throws IllegalStateException if the count is negative or too large
+     */
+    public static int readCount(final ByteBuffer input, final int minElementBytes) {
+        final var count = input.getInt();
+        if (count < 0 || (long) count * minElementBytes > input.remaining()) {
+            throw corrupt("invalid count " + count + " at offset " + (input.position() - Integer.BYTES));
+        }
+        return count;
+    }
+
+    /**
+     * Write a number as its two's-complement bytes preceded by their count. Null is written as a count of zero.
+     */
+    public static void writeBigInteger(final DataOutput output, final BigInteger value) throws IOException {
+        if (value == null) {
+            output.writeInt(0);
+            return;
+        }
+        final var bytes = value.toByteArray();
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    /**
+     * @return a number written by {@link #writeBigInteger(DataOutput, BigInteger)}, possibly null
+     */
+    public static BigInteger readBigInteger(final ByteBuffer input) {
+        final var length = readCount(input, 1);
+        if (length == 0) {
+            return null;
+        }
+        final var bytes = new byte[length];
+        input.get(bytes);
+        return new BigInteger(bytes);
+    }
+
+}
\ No newline at end of file